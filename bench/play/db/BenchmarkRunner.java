@@ -0,0 +1,26 @@
+package play.db;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs JMH benchmarks with allocation profiling, once per thread count.
+ *
+ * <p>Accepts usual JMH command line options, thread counts are taken from
+ * system property "bench.threads" (default "1"), e.g.
+ * {@code ant benchmark -Dbench.threads=1,4,16 -Dbench.args=JdbcStackBenchmark}
+ */
+public class BenchmarkRunner {
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+    for (String threads : System.getProperty("bench.threads", "1").split(",")) {
+      new Runner(new OptionsBuilder()
+          .parent(commandLineOptions)
+          .threads(Integer.parseInt(threads.trim()))
+          .addProfiler(GCProfiler.class)
+          .build()).run();
+    }
+  }
+}
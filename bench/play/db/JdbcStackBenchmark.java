@@ -0,0 +1,92 @@
+package play.db;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static play.db.LoggingConnectionDecorator.loggingConnectionDataSourceProxy;
+
+/**
+ * Cost of a typical request - get connection, prepare, bind, execute, close -
+ * with and without each layer play-db puts around the pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JdbcStackBenchmark {
+  @Param({"stub", "h2"})
+  public String database;
+
+  @Param({"pool", "logging", "lazy", "lazy+logging"})
+  public String layers;
+
+  private JdbcConnectionPool pool;
+  private DataSource dataSource;
+
+  @Setup
+  public void setUp() throws SQLException {
+    DataSource target;
+    if ("h2".equals(database)) {
+      pool = JdbcConnectionPool.create("jdbc:h2:mem:stack;DB_CLOSE_DELAY=-1", "sa", "");
+      pool.setMaxConnections(64);
+      try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+        statement.execute("create table if not exists person (id bigint primary key, name varchar(100))");
+        statement.execute("merge into person key(id) values (1, 'John')");
+      }
+      target = pool;
+    }
+    else {
+      target = new StubDataSource();
+    }
+
+    dataSource = layers.startsWith("lazy") ? new LazyConnectionDataSourceProxy(target) : target;
+    if (layers.endsWith("logging")) {
+      dataSource = loggingConnectionDataSourceProxy(dataSource);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (pool != null) pool.dispose();
+    SlowSQLHelper.reset("job");
+  }
+
+  @State(Scope.Thread)
+  public static class Invocation {
+    @Setup(Level.Iteration)
+    public void start() {
+      SlowSQLHelper.startInvocation();
+    }
+
+    @TearDown(Level.Iteration)
+    public void end() {
+      SlowSQLHelper.endInvocation();
+    }
+  }
+
+  @Benchmark
+  public long query(Invocation invocation) throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      connection.setAutoCommit(false);
+      long result = 0;
+      try (PreparedStatement statement = connection.prepareStatement("select id, name from person where id=?")) {
+        statement.setLong(1, 1L);
+        try (ResultSet resultSet = statement.executeQuery()) {
+          while (resultSet.next()) result += resultSet.getLong(1);
+        }
+      }
+      connection.commit();
+      return result;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package play.db;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares lazy Connection handles implemented as JDK dynamic proxies
+ * with {@link LazyConnection}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyConnectionBenchmark {
+  @Param({"true", "false"})
+  public boolean dynamicProxy;
+
+  private JdbcConnectionPool pool;
+  private LazyConnectionDataSourceProxy dataSource;
+
+  @Setup
+  public void setUp() {
+    pool = JdbcConnectionPool.create("jdbc:h2:mem:lazy;DB_CLOSE_DELAY=-1", "sa", "");
+    dataSource = new LazyConnectionDataSourceProxy(pool);
+    dataSource.setUseDynamicProxy(dynamicProxy);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.dispose();
+  }
+
+  @Benchmark
+  public boolean transactionWithoutStatements() throws SQLException {
+    Connection connection = dataSource.getConnection();
+    try {
+      connection.setAutoCommit(false);
+      connection.setReadOnly(true);
+      connection.commit();
+      return connection.getAutoCommit();
+    }
+    finally {
+      connection.close();
+    }
+  }
+
+  @Benchmark
+  public boolean transactionWithStatement() throws SQLException {
+    Connection connection = dataSource.getConnection();
+    try {
+      connection.setAutoCommit(false);
+      boolean result;
+      try (PreparedStatement statement = connection.prepareStatement("select 1")) {
+        result = statement.execute();
+      }
+      connection.commit();
+      return result;
+    }
+    finally {
+      connection.close();
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package play.db;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording one execution of an already seen SQL.
+ * Run with {@code -prof gc} to see allocations per operation ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlowSQLHelperBenchmark {
+  private final String sql = "select person0_.id as id1_0_, person0_.name as name2_0_, person0_.email as email3_0_ " +
+      "from person person0_ where person0_.company_id=? and person0_.active=? order by person0_.name";
+
+  @Param({"true", "false"})
+  public boolean insideInvocation;
+
+  @Setup(Level.Iteration)
+  public void startInvocation() {
+    if (insideInvocation) SlowSQLHelper.startInvocation();
+  }
+
+  @TearDown(Level.Iteration)
+  public void endInvocation() {
+    SlowSQLHelper.endInvocation();
+    SlowSQLHelper.reset("job");
+  }
+
+  @Benchmark
+  public void addSlowSQLLog() {
+    SlowSQLHelper.addSlowSQLLog(sql, 1234);
+  }
+}
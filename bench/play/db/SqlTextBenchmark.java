@@ -0,0 +1,36 @@
+package play.db;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of processing SQL text: fingerprinting and shortening for display.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlTextBenchmark {
+  private final String sql = "select person0_.id as id1_0_, person0_.name as name2_0_, person0_.email as email3_0_, " +
+      "person0_.company_id as company4_0_ from person person0_ where person0_.company_id in (?, ?, ?, ?) " +
+      "and person0_.active=1 and person0_.name like 'J%' order by person0_.name";
+  private final String fingerprint = SqlFingerprint.normalize(sql);
+
+  @Benchmark
+  public String fingerprint() {
+    return SqlFingerprint.normalize(sql);
+  }
+
+  @Benchmark
+  public String memoizedFingerprint() {
+    return SqlFingerprint.of(sql);
+  }
+
+  @Benchmark
+  public String shortenedSQL() {
+    return new LogEntry(fingerprint, "[job]", "job").getShortenedSQL();
+  }
+}
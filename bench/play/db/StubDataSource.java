@@ -0,0 +1,118 @@
+package play.db;
+
+import org.h2.tools.SimpleResultSet;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.logging.Logger;
+
+/**
+ * DataSource that does nothing, to measure the cost of play-db layers alone.
+ */
+class StubDataSource implements DataSource {
+  @Override public Connection getConnection() {
+    return new StubConnection();
+  }
+
+  @Override public Connection getConnection(String username, String password) {
+    return new StubConnection();
+  }
+
+  @Override public PrintWriter getLogWriter() {
+    return null;
+  }
+
+  @Override public void setLogWriter(PrintWriter out) {
+  }
+
+  @Override public void setLoginTimeout(int seconds) {
+  }
+
+  @Override public int getLoginTimeout() {
+    return 0;
+  }
+
+  @Override public Logger getParentLogger() {
+    return Logger.getGlobal();
+  }
+
+  @Override public <T> T unwrap(Class<T> iface) {
+    return null;
+  }
+
+  @Override public boolean isWrapperFor(Class<?> iface) {
+    return false;
+  }
+
+  static class StubConnection extends DelegatingConnection {
+    private boolean autoCommit = true;
+    private boolean closed;
+
+    StubConnection() {
+      super(null);
+    }
+
+    @Override public PreparedStatement prepareStatement(String sql) {
+      return new StubStatement(this);
+    }
+
+    @Override public void setAutoCommit(boolean autoCommit) {
+      this.autoCommit = autoCommit;
+    }
+
+    @Override public boolean getAutoCommit() {
+      return autoCommit;
+    }
+
+    @Override public int getTransactionIsolation() {
+      return TRANSACTION_READ_COMMITTED;
+    }
+
+    @Override public void setReadOnly(boolean readOnly) {
+    }
+
+    @Override public void commit() {
+    }
+
+    @Override public void rollback() {
+    }
+
+    @Override public void close() {
+      closed = true;
+    }
+
+    @Override public boolean isClosed() {
+      return closed;
+    }
+  }
+
+  static class StubStatement extends DelegatingPreparedStatement {
+    private final Connection connection;
+
+    StubStatement(Connection connection) {
+      super(null);
+      this.connection = connection;
+    }
+
+    @Override public void setLong(int parameterIndex, long x) {
+    }
+
+    @Override public ResultSet executeQuery() {
+      return new SimpleResultSet();
+    }
+
+    @Override public int executeUpdate() {
+      return 1;
+    }
+
+    @Override public Connection getConnection() {
+      return connection;
+    }
+
+    @Override public void close() {
+    }
+  }
+}
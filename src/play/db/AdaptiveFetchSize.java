@@ -0,0 +1,100 @@
+package play.db;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.Integer.parseInt;
+
+/**
+ * Picks JDBC fetch size of a query from the number of rows previously read with the same
+ * {@link SqlFingerprint fingerprint}, configurable in application.conf:
+ * <pre>
+ * db.fetchSize.adaptive=true
+ * db.fetchSize.min=10
+ * db.fetchSize.max=500
+ * </pre>
+ * Drivers fetch a fixed number of rows per network round-trip (Oracle: 10), so reading
+ * 1000 rows takes 100 round-trips. Fetch size is only changed for statements whose fetch size
+ * was not set by the application, and not for drivers fetching all rows at once by default
+ * (fetch size 0: PostgreSQL, MySQL, H2).
+ *
+ * <p>Expected number of rows follows a growing result immediately and a shrinking one slowly,
+ * so that a single small result does not make the next big one expensive.
+ */
+final class AdaptiveFetchSize {
+  private static final String PREFIX = "db.fetchSize.";
+
+  static volatile AdaptiveFetchSize current = load(new Properties());
+
+  private static final ConcurrentMap<String, Shape> shapes = new ConcurrentHashMap<>();
+  private static final LongAdder roundTrips = new LongAdder();
+  private static final LongAdder roundTripsWithDefaultFetchSize = new LongAdder();
+
+  final boolean enabled;
+  final int min;
+  final int max;
+
+  private AdaptiveFetchSize(Properties configuration) {
+    enabled = "true".equals(configuration.getProperty(PREFIX + "adaptive", "false"));
+    min = parseInt(configuration.getProperty(PREFIX + "min", "10").trim());
+    max = parseInt(configuration.getProperty(PREFIX + "max", "500").trim());
+  }
+
+  static AdaptiveFetchSize load(Properties configuration) {
+    return new AdaptiveFetchSize(configuration);
+  }
+
+  /**
+   * @return fetch size for the next execution of given SQL, or 0 if nothing is known about it yet
+   */
+  int fetchSize(String fingerprint) {
+    Shape shape = shapes.get(fingerprint);
+    if (shape == null) return 0;
+    // one more row than expected lets the driver see the end of results in the same round-trip
+    return Math.max(min, Math.min(max, shape.expectedRows + 1));
+  }
+
+  /**
+   * @param defaultFetchSize fetch size the driver would have used
+   * @param fetchSize fetch size actually used
+   */
+  static void resultSetRead(String fingerprint, int rows, int defaultFetchSize, int fetchSize) {
+    Shape shape = shapes.get(fingerprint);
+    if (shape == null) {
+      if (shapes.size() >= SqlFingerprint.MAX_MEMO_SIZE) shapes.clear();
+      shape = shapes.computeIfAbsent(fingerprint, sql -> new Shape());
+    }
+    shape.update(rows);
+    roundTrips.add(roundTrips(rows, fetchSize));
+    roundTripsWithDefaultFetchSize.add(roundTrips(rows, defaultFetchSize));
+  }
+
+  private static long roundTrips(int rows, int fetchSize) {
+    return fetchSize <= 0 ? 1 : rows / fetchSize + 1;
+  }
+
+  static long roundTrips() {
+    return roundTrips.sum();
+  }
+
+  static long roundTripsSaved() {
+    return roundTripsWithDefaultFetchSize.sum() - roundTrips.sum();
+  }
+
+  static void reset() {
+    shapes.clear();
+    roundTrips.reset();
+    roundTripsWithDefaultFetchSize.reset();
+  }
+
+  private static final class Shape {
+    private volatile int expectedRows;
+
+    void update(int rows) {
+      int expected = expectedRows;
+      expectedRows = rows >= expected ? rows : expected - (expected - rows) / 4;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package play.db;
+
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import static java.lang.Integer.parseInt;
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * Turns repeated executions of the same DML statement within a transaction into a JDBC batch,
+ * configurable in application.conf:
+ * <pre>
+ * db.batching.enabled=true
+ * db.batching.size=50
+ * db.batching.ignoreUpdateCount=(?i)^update audit_log\b
+ * </pre>
+ * {@code executeUpdate} of a batchable statement only adds its parameters to the batch and returns 1.
+ * The batch is executed before any other statement of the connection is executed, when it reaches
+ * the configured size, and before commit, savepoints and close. Rollback discards it.
+ *
+ * <p>Single-row inserts ({@code insert into ... values (...)}) are batchable, as they always insert
+ * exactly one row. Inserts that may change no row or several, like {@code insert ignore},
+ * {@code on conflict do nothing} or {@code on duplicate key update}, are not. Updates and deletes are batchable only if they match "ignoreUpdateCount",
+ * i.e. the application doesn't look at the number of rows they changed.
+ * Errors (e.g. constraint violations) of batched statements are thrown by the operation that
+ * executes the batch, not by {@code executeUpdate}.
+ *
+ * <p>Connections in auto-commit mode are never batched, neither are connections after they
+ * create a plain or callable statement, which would not see rows of the batch.
+ *
+ * <p>"db.batching.enabled" rather than "db.batching", which Play would take for the URL of a db named "batching".
+ *
+ * @see BatchingStatementDecorator
+ */
+final class AutoBatching {
+  private static final String PREFIX = "db.batching";
+  // no modifiers like "insert ignore" or "insert or replace", which may change 0 or 2 rows
+  private static final Pattern INSERT_INTO = Pattern.compile("^insert\\s+into\\s");
+
+  private static final ConcurrentMap<String, Boolean> batchable = new ConcurrentHashMap<>();
+
+  static volatile AutoBatching current = load(new Properties());
+
+  final boolean enabled;
+  final int size;
+  private final Pattern ignoreUpdateCount;
+
+  private AutoBatching(Properties configuration) {
+    enabled = "true".equals(configuration.getProperty(PREFIX + ".enabled", "false"));
+    size = parseInt(configuration.getProperty(PREFIX + ".size", "50").trim());
+    String regex = configuration.getProperty(PREFIX + ".ignoreUpdateCount");
+    ignoreUpdateCount = isBlank(regex) ? null : Pattern.compile(regex.trim());
+  }
+
+  static AutoBatching load(Properties configuration) {
+    batchable.clear();
+    return new AutoBatching(configuration);
+  }
+
+  boolean isBatchable(String sql) {
+    Boolean result = batchable.get(sql);
+    if (result == null) {
+      result = isSingleRowInsert(sql) || ignoreUpdateCount != null && SqlTables.modified(sql) != null && ignoreUpdateCount.matcher(sql).find();
+      if (batchable.size() >= SqlFingerprint.MAX_MEMO_SIZE) batchable.clear();
+      batchable.put(sql, result);
+    }
+    return result;
+  }
+
+  /**
+   * @return whether SQL is an insert of a single list of values, without modifiers, returning clause, upsert etc.
+   */
+  static boolean isSingleRowInsert(String sql) {
+    String lower = sql.toLowerCase(Locale.ROOT).trim();
+    if (!INSERT_INTO.matcher(lower).find() || SqlTables.modified(lower) == null) return false;
+    int values = lower.indexOf(" values");
+    int select = lower.indexOf("select");
+    if (values < 0 || select >= 0 && select < values) return false;
+
+    int i = values + 7;
+    while (i < lower.length() && Character.isWhitespace(lower.charAt(i))) i++;
+    if (i >= lower.length() || lower.charAt(i) != '(') return false;
+    int depth = 0;
+    for (; i < lower.length(); i++) {
+      char c = lower.charAt(i);
+      if (c == '\'') {
+        int end = i + 1;
+        while (end < lower.length() && (lower.charAt(end) != '\'' || end + 1 < lower.length() && lower.charAt(end + 1) == '\'')) {
+          end += lower.charAt(end) == '\'' ? 2 : 1;
+        }
+        i = end;
+      }
+      else if (c == '(') depth++;
+      else if (c == ')' && --depth == 0) break;
+    }
+    return depth == 0 && i < lower.length() && lower.substring(i + 1).trim().isEmpty();
+  }
+}
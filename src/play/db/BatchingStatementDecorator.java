@@ -0,0 +1,46 @@
+package play.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Statement of DML that {@link AutoBatching} may add to a batch instead of executing.
+ *
+ * <p>While a batch is pending, its statement stays open after the application closes it,
+ * and the next statement prepared with the same SQL reuses it.
+ */
+class BatchingStatementDecorator extends OptimizingStatementDecorator {
+  private final OptimizingConnectionDecorator connection;
+  private final String sql;
+  private boolean closed;
+
+  BatchingStatementDecorator(OptimizingConnectionDecorator connection, PreparedStatement statement, String sql) {
+    super(connection, statement, sql);
+    this.connection = connection;
+    this.sql = sql;
+  }
+
+  @Override public int executeUpdate() throws SQLException {
+    return connection.addToBatch(statement, sql) ? 1 : super.executeUpdate();
+  }
+
+  @Override public long executeLargeUpdate() throws SQLException {
+    return connection.addToBatch(statement, sql) ? 1 : super.executeLargeUpdate();
+  }
+
+  @Override public void addBatch() throws SQLException {
+    // rows added by the application must not be executed together with rows of a pending batch
+    connection.flushBatch();
+    statement.addBatch();
+  }
+
+  @Override public boolean isClosed() throws SQLException {
+    return closed || statement.isClosed();
+  }
+
+  @Override public void close() throws SQLException {
+    if (closed) return;
+    closed = true;
+    connection.closeBatchable(statement);
+  }
+}
@@ -0,0 +1,81 @@
+package play.db;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.Integer.parseInt;
+
+/**
+ * Keeps bound parameters of slow executions, configurable in application.conf:
+ * <pre>
+ * trackSlowSQL.binds=true
+ * trackSlowSQL.binds.threshold=500ms
+ * trackSlowSQL.binds.worst=5
+ * trackSlowSQL.binds.maxLength=100
+ * trackSlowSQL.binds.mask=password,card_number,iban
+ * </pre>
+ * Statements record parameters into reusable {@link BindSlots}; they are formatted only for
+ * an execution slower than the threshold, and kept with its {@link LogEntry} among the
+ * "worst" slowest executions. Values are truncated to "maxLength" characters. Values compared
+ * with, assigned to or inserted into masked columns are shown as {@code ***}.
+ */
+final class BindCapture {
+  private static final String PREFIX = "trackSlowSQL.binds";
+  private static final boolean[] NOTHING_MASKED = new boolean[0];
+
+  private static final ConcurrentMap<String, boolean[]> masked = new ConcurrentHashMap<>();
+
+  static volatile BindCapture current = load(new Properties());
+
+  final boolean enabled;
+  final int worst;
+  private final long thresholdNanos;
+  private final int maxLength;
+  private final Set<String> maskedColumns = new HashSet<>();
+
+  private BindCapture(Properties configuration) {
+    enabled = "true".equals(configuration.getProperty(PREFIX, "false"));
+    thresholdNanos = SlowSQLThresholds.parseNanos(configuration.getProperty(PREFIX + ".threshold", "500ms"));
+    worst = parseInt(configuration.getProperty(PREFIX + ".worst", "5").trim());
+    maxLength = parseInt(configuration.getProperty(PREFIX + ".maxLength", "100").trim());
+    for (String column : configuration.getProperty(PREFIX + ".mask", "").split(",")) {
+      if (!column.trim().isEmpty()) maskedColumns.add(column.trim().toLowerCase(Locale.ROOT));
+    }
+  }
+
+  static BindCapture load(Properties configuration) {
+    masked.clear();
+    return new BindCapture(configuration);
+  }
+
+  /**
+   * @param binds parameters of the execution, may be null
+   * @return formatted parameters if the execution was slow, otherwise null
+   */
+  String[] capture(String sql, long durationNanos, BindSlots binds) {
+    if (binds == null || durationNanos < thresholdNanos) return null;
+    return binds.format(maskedParameters(sql), maxLength);
+  }
+
+  private boolean[] maskedParameters(String sql) {
+    if (maskedColumns.isEmpty()) return null;
+    boolean[] result = masked.get(sql);
+    if (result == null) {
+      String[] columns = SqlTables.parameterColumns(sql);
+      result = NOTHING_MASKED;
+      for (int i = 0; i < columns.length; i++) {
+        if (columns[i] != null && maskedColumns.contains(columns[i])) {
+          if (result == NOTHING_MASKED) result = new boolean[columns.length];
+          result[i] = true;
+        }
+      }
+      if (masked.size() >= SqlFingerprint.MAX_MEMO_SIZE) masked.clear();
+      masked.put(sql, result);
+    }
+    return result;
+  }
+}
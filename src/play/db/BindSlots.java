@@ -0,0 +1,131 @@
+package play.db;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Parameters bound to a statement, recorded for {@link BindCapture}: primitives in a long array,
+ * objects by reference, so recording a value allocates nothing. Instances are reused through
+ * a small per-thread pool, values are formatted only when an execution turns out to be slow.
+ */
+final class BindSlots {
+  private static final int POOL_SIZE = 8;
+  private static final ThreadLocal<ArrayDeque<BindSlots>> pool = ThreadLocal.withInitial(() -> new ArrayDeque<>(POOL_SIZE));
+
+  private static final byte UNSET = 0;
+  private static final byte NULL = 1;
+  private static final byte LONG = 2;
+  private static final byte DOUBLE = 3;
+  private static final byte BOOLEAN = 4;
+  private static final byte OBJECT = 5;
+  private static final byte OPAQUE = 6;
+
+  private byte[] kinds = new byte[8];
+  private long[] longs = new long[8];
+  private Object[] objects = new Object[8];
+  private int count;
+
+  private BindSlots() {
+  }
+
+  static BindSlots acquire() {
+    BindSlots slots = pool.get().pollFirst();
+    return slots != null ? slots : new BindSlots();
+  }
+
+  /**
+   * Forget values and return to the pool of the current thread.
+   */
+  void release() {
+    clear();
+    ArrayDeque<BindSlots> free = pool.get();
+    if (free.size() < POOL_SIZE) free.addFirst(this);
+  }
+
+  void clear() {
+    Arrays.fill(kinds, 0, count, UNSET);
+    Arrays.fill(objects, 0, count, null);
+    count = 0;
+  }
+
+  void setNull(int parameterIndex) {
+    slot(parameterIndex, NULL);
+  }
+
+  void setLong(int parameterIndex, long value) {
+    int i = slot(parameterIndex, LONG);
+    if (i >= 0) longs[i] = value;
+  }
+
+  void setDouble(int parameterIndex, double value) {
+    int i = slot(parameterIndex, DOUBLE);
+    if (i >= 0) longs[i] = Double.doubleToRawLongBits(value);
+  }
+
+  void setBoolean(int parameterIndex, boolean value) {
+    int i = slot(parameterIndex, BOOLEAN);
+    if (i >= 0) longs[i] = value ? 1 : 0;
+  }
+
+  void setObject(int parameterIndex, Object value) {
+    int i = slot(parameterIndex, value == null ? NULL : OBJECT);
+    if (i >= 0) objects[i] = value;
+  }
+
+  /**
+   * Record a value that can't be shown (stream, LOB etc.), described by given constant.
+   */
+  void setOpaque(int parameterIndex, String description) {
+    int i = slot(parameterIndex, OPAQUE);
+    if (i >= 0) objects[i] = description;
+  }
+
+  private int slot(int parameterIndex, byte kind) {
+    if (parameterIndex < 1) return -1;
+    int i = parameterIndex - 1;
+    if (i >= kinds.length) {
+      int capacity = Math.max(parameterIndex, 2 * kinds.length);
+      kinds = Arrays.copyOf(kinds, capacity);
+      longs = Arrays.copyOf(longs, capacity);
+      objects = Arrays.copyOf(objects, capacity);
+    }
+    kinds[i] = kind;
+    if (kind != OBJECT && kind != OPAQUE) objects[i] = null;
+    count = Math.max(count, parameterIndex);
+    return i;
+  }
+
+  /**
+   * @param masked parameters whose values must not be shown, may be null or shorter than the parameters
+   * @return values formatted for display, strings quoted and truncated to {@code maxLength}
+   */
+  String[] format(boolean[] masked, int maxLength) {
+    String[] result = new String[count];
+    for (int i = 0; i < count; i++) {
+      if (masked != null && i < masked.length && masked[i] && kinds[i] != NULL) {
+        result[i] = "***";
+        continue;
+      }
+      switch (kinds[i]) {
+        case UNSET: result[i] = "?"; break;
+        case NULL: result[i] = "null"; break;
+        case LONG: result[i] = String.valueOf(longs[i]); break;
+        case DOUBLE: result[i] = String.valueOf(Double.longBitsToDouble(longs[i])); break;
+        case BOOLEAN: result[i] = String.valueOf(longs[i] != 0); break;
+        case OPAQUE: result[i] = "<" + objects[i] + ">"; break;
+        default: result[i] = format(objects[i], maxLength);
+      }
+    }
+    return result;
+  }
+
+  private static String format(Object value, int maxLength) {
+    if (value instanceof byte[]) return "<" + ((byte[]) value).length + " bytes>";
+    String text = truncate(String.valueOf(value), maxLength);
+    return value instanceof String || value instanceof Character ? "'" + text + "'" : text;
+  }
+
+  private static String truncate(String text, int maxLength) {
+    return text.length() <= maxLength ? text : text.substring(0, maxLength) + "...";
+  }
+}
@@ -0,0 +1,233 @@
+package play.db;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Rows of a query result kept by {@link QueryResultCache}, stored by column: integral and
+ * floating-point columns in primitive arrays (with a null bitmap), others as objects.
+ * Dates, times and timestamps are read with the typed getters, in the default time zone,
+ * so that they are JDBC types rather than driver-specific ones (e.g. oracle.sql.TIMESTAMP).
+ */
+final class CachedResult {
+  private static final int LONG = 0;
+  private static final int DOUBLE = 1;
+  private static final int OBJECT = 2;
+
+  final CachedResultSetMetaData metaData;
+  final int rows;
+  private final int[] kinds;
+  private final String[] classNames;
+  private final long[][] longs;
+  private final double[][] doubles;
+  private final Object[][] objects;
+  private final BitSet[] nulls;
+  private final long estimatedBytes;
+
+  private CachedResult(CachedResultSetMetaData metaData, int rows, int[] kinds, String[] classNames,
+                       long[][] longs, double[][] doubles, Object[][] objects, BitSet[] nulls) {
+    this.metaData = metaData;
+    this.rows = rows;
+    this.kinds = kinds;
+    this.classNames = classNames;
+    this.longs = longs;
+    this.doubles = doubles;
+    this.objects = objects;
+    this.nulls = nulls;
+    this.estimatedBytes = estimateBytes();
+  }
+
+  /**
+   * @return whether all columns of the result can be copied, i.e. there are no LOBs, arrays, cursors etc.
+   */
+  static boolean isCacheable(CachedResultSetMetaData metaData) throws SQLException {
+    for (int column = 1; column <= metaData.getColumnCount(); column++) {
+      switch (metaData.getColumnType(column)) {
+        case Types.BLOB: case Types.CLOB: case Types.NCLOB: case Types.ARRAY: case Types.STRUCT: case Types.REF:
+        case Types.REF_CURSOR: case Types.DATALINK: case Types.ROWID: case Types.SQLXML: case Types.JAVA_OBJECT:
+        case Types.DISTINCT: case Types.OTHER: case Types.TIME_WITH_TIMEZONE: case Types.TIMESTAMP_WITH_TIMEZONE:
+          return false;
+        default:
+          // vendor-specific types, e.g. Oracle TIMESTAMP WITH (LOCAL) TIME ZONE, are only read as driver classes
+          if (metaData.getColumnType(column) < Types.LONGNVARCHAR) return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Read all rows of given result set.
+   *
+   * @return the rows, or null if there are more than {@code maxRows} of them
+   */
+  static CachedResult read(ResultSet resultSet, CachedResultSetMetaData metaData, int maxRows) throws SQLException {
+    int columns = metaData.getColumnCount();
+    int[] kinds = new int[columns];
+    String[] classNames = new String[columns];
+    long[][] longs = new long[columns][];
+    double[][] doubles = new double[columns][];
+    Object[][] objects = new Object[columns][];
+    BitSet[] nulls = new BitSet[columns];
+    int capacity = 16;
+    for (int i = 0; i < columns; i++) {
+      classNames[i] = metaData.getColumnClassName(i + 1);
+      kinds[i] = kind(classNames[i], metaData.getPrecision(i + 1), metaData.getScale(i + 1));
+      if (kinds[i] == LONG) longs[i] = new long[capacity];
+      else if (kinds[i] == DOUBLE) doubles[i] = new double[capacity];
+      else objects[i] = new Object[capacity];
+      nulls[i] = new BitSet();
+    }
+
+    int row = 0;
+    while (resultSet.next()) {
+      if (row == maxRows) return null;
+      if (row == capacity) {
+        capacity *= 2;
+        for (int i = 0; i < columns; i++) {
+          if (longs[i] != null) longs[i] = Arrays.copyOf(longs[i], capacity);
+          else if (doubles[i] != null) doubles[i] = Arrays.copyOf(doubles[i], capacity);
+          else objects[i] = Arrays.copyOf(objects[i], capacity);
+        }
+      }
+      for (int i = 0; i < columns; i++) {
+        if (kinds[i] == LONG) longs[i][row] = resultSet.getLong(i + 1);
+        else if (kinds[i] == DOUBLE) doubles[i][row] = resultSet.getDouble(i + 1);
+        else objects[i][row] = value(resultSet, i + 1, metaData.getColumnType(i + 1));
+        if (resultSet.wasNull()) nulls[i].set(row);
+      }
+      row++;
+    }
+
+    for (int i = 0; i < columns; i++) {
+      if (longs[i] != null) longs[i] = Arrays.copyOf(longs[i], row);
+      else if (doubles[i] != null) doubles[i] = Arrays.copyOf(doubles[i], row);
+      else objects[i] = Arrays.copyOf(objects[i], row);
+    }
+    return new CachedResult(metaData, row, kinds, classNames, longs, doubles, objects, nulls);
+  }
+
+  private static int kind(String className, int precision, int scale) {
+    switch (className == null ? "" : className) {
+      case "java.lang.Byte": case "java.lang.Short": case "java.lang.Integer": case "java.lang.Long":
+        return LONG;
+      case "java.math.BigDecimal":
+        return scale == 0 && precision > 0 && precision <= 18 ? LONG : OBJECT;
+      case "java.lang.Float": case "java.lang.Double":
+        return DOUBLE;
+      default:
+        return OBJECT;
+    }
+  }
+
+  private static Object value(ResultSet resultSet, int column, int type) throws SQLException {
+    switch (type) {
+      case Types.DATE: return resultSet.getDate(column);
+      case Types.TIME: return resultSet.getTime(column);
+      case Types.TIMESTAMP: return resultSet.getTimestamp(column);
+      default: return isText(type) ? resultSet.getString(column) : resultSet.getObject(column);
+    }
+  }
+
+  private static boolean isText(int type) {
+    return type == Types.CHAR || type == Types.VARCHAR || type == Types.LONGVARCHAR ||
+        type == Types.NCHAR || type == Types.NVARCHAR || type == Types.LONGNVARCHAR;
+  }
+
+  boolean isNull(int column, int row) {
+    return nulls[column - 1].get(row);
+  }
+
+  long getLong(int column, int row) throws SQLException {
+    switch (kinds[column - 1]) {
+      case LONG: return longs[column - 1][row];
+      case DOUBLE: return (long) doubles[column - 1][row];
+      default: return toNumber(objects[column - 1][row]).longValue();
+    }
+  }
+
+  double getDouble(int column, int row) throws SQLException {
+    switch (kinds[column - 1]) {
+      case LONG: return longs[column - 1][row];
+      case DOUBLE: return doubles[column - 1][row];
+      default: return toNumber(objects[column - 1][row]).doubleValue();
+    }
+  }
+
+  BigDecimal getBigDecimal(int column, int row) throws SQLException {
+    switch (kinds[column - 1]) {
+      case LONG: return BigDecimal.valueOf(longs[column - 1][row]);
+      case DOUBLE: return BigDecimal.valueOf(doubles[column - 1][row]);
+      default:
+        Object value = objects[column - 1][row];
+        return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(toNumber(value).toString());
+    }
+  }
+
+  /**
+   * @return value of the same type as the driver returned for the original result set,
+   * except for dates, times and timestamps, which are {@code java.sql} types
+   */
+  Object getObject(int column, int row) {
+    if (isNull(column, row)) return null;
+    switch (kinds[column - 1]) {
+      case LONG:
+        long value = longs[column - 1][row];
+        switch (classNames[column - 1]) {
+          case "java.lang.Byte": return (byte) value;
+          case "java.lang.Short": return (short) value;
+          case "java.lang.Integer": return (int) value;
+          case "java.math.BigDecimal": return BigDecimal.valueOf(value);
+          default: return value;
+        }
+      case DOUBLE:
+        double doubleValue = doubles[column - 1][row];
+        return "java.lang.Float".equals(classNames[column - 1]) ? (Object) (float) doubleValue : (Object) doubleValue;
+      default:
+        Object object = objects[column - 1][row];
+        if (object instanceof byte[]) return ((byte[]) object).clone();
+        return object instanceof java.util.Date ? ((java.util.Date) object).clone() : object;
+    }
+  }
+
+  String getString(int column, int row) {
+    Object value = getObject(column, row);
+    return value == null ? null : value.toString();
+  }
+
+  private static Number toNumber(Object value) throws SQLException {
+    if (value instanceof Number) return (Number) value;
+    if (value instanceof Boolean) return (Boolean) value ? 1 : 0;
+    if (value instanceof String) {
+      try {
+        return new BigDecimal(((String) value).trim());
+      }
+      catch (NumberFormatException e) {
+        throw new SQLException("Not a number: " + value, e);
+      }
+    }
+    if (value == null) return 0;
+    throw new SQLException("Cannot convert " + value.getClass().getName() + " to number");
+  }
+
+  long estimatedBytes() {
+    return estimatedBytes;
+  }
+
+  private long estimateBytes() {
+    long bytes = 64 + metaData.estimatedBytes();
+    for (int i = 0; i < kinds.length; i++) {
+      bytes += 16 + rows / 8;
+      if (longs[i] != null) bytes += 16 + 8L * rows;
+      else if (doubles[i] != null) bytes += 16 + 8L * rows;
+      else {
+        bytes += 16 + 8L * rows;
+        for (Object value : objects[i]) bytes += QueryResultCache.estimatedBytes(value);
+      }
+    }
+    return bytes;
+  }
+}
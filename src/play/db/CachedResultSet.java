@@ -0,0 +1,928 @@
+package play.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLType;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * Read-only, scrollable {@link ResultSet} over rows kept by {@link QueryResultCache}.
+ *
+ * <p>Supports getters of values that {@link CachedResult} keeps, updates and LOB getters
+ * throw {@link SQLFeatureNotSupportedException}.
+ */
+final class CachedResultSet implements ResultSet {
+  private final Statement statement;
+  private final CachedResult result;
+  private int row = -1;
+  private boolean wasNull;
+  private boolean closed;
+  private int fetchSize;
+
+  CachedResultSet(Statement statement, CachedResult result) {
+    this.statement = statement;
+    this.result = result;
+  }
+
+  @Override public boolean next() throws SQLException {
+    checkOpen();
+    if (row < result.rows) row++;
+    return row < result.rows;
+  }
+
+  @Override public void close() {
+    closed = true;
+  }
+
+  @Override public boolean isClosed() {
+    return closed;
+  }
+
+  @Override public boolean wasNull() {
+    return wasNull;
+  }
+
+  private void checkOpen() throws SQLException {
+    if (closed) throw new SQLException("Result set is closed");
+  }
+
+  /**
+   * @return index of current row, after checking that given column exists
+   */
+  private int row(int columnIndex) throws SQLException {
+    checkOpen();
+    if (row < 0 || row >= result.rows) throw new SQLException("No current row");
+    if (columnIndex < 1 || columnIndex > result.metaData.getColumnCount()) {
+      throw new SQLException("Invalid column index: " + columnIndex);
+    }
+    wasNull = result.isNull(columnIndex, row);
+    return row;
+  }
+
+  @Override public Object getObject(int columnIndex) throws SQLException {
+    return result.getObject(columnIndex, row(columnIndex));
+  }
+
+  @Override public String getString(int columnIndex) throws SQLException {
+    return result.getString(columnIndex, row(columnIndex));
+  }
+
+  @Override public boolean getBoolean(int columnIndex) throws SQLException {
+    int row = row(columnIndex);
+    if (wasNull) return false;
+    Object value = result.getObject(columnIndex, row);
+    if (value instanceof Boolean) return (Boolean) value;
+    if (value instanceof String) {
+      String text = ((String) value).trim();
+      return "1".equals(text) || "true".equalsIgnoreCase(text) || "y".equalsIgnoreCase(text);
+    }
+    return result.getLong(columnIndex, row) != 0;
+  }
+
+  @Override public byte getByte(int columnIndex) throws SQLException {
+    return (byte) getLong(columnIndex);
+  }
+
+  @Override public short getShort(int columnIndex) throws SQLException {
+    return (short) getLong(columnIndex);
+  }
+
+  @Override public int getInt(int columnIndex) throws SQLException {
+    return (int) getLong(columnIndex);
+  }
+
+  @Override public long getLong(int columnIndex) throws SQLException {
+    int row = row(columnIndex);
+    return wasNull ? 0 : result.getLong(columnIndex, row);
+  }
+
+  @Override public float getFloat(int columnIndex) throws SQLException {
+    return (float) getDouble(columnIndex);
+  }
+
+  @Override public double getDouble(int columnIndex) throws SQLException {
+    int row = row(columnIndex);
+    return wasNull ? 0 : result.getDouble(columnIndex, row);
+  }
+
+  @Override public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+    int row = row(columnIndex);
+    return wasNull ? null : result.getBigDecimal(columnIndex, row);
+  }
+
+  @Override @Deprecated public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+    BigDecimal value = getBigDecimal(columnIndex);
+    return value == null ? null : value.setScale(scale, RoundingMode.HALF_UP);
+  }
+
+  @Override public byte[] getBytes(int columnIndex) throws SQLException {
+    Object value = getObject(columnIndex);
+    if (value == null || value instanceof byte[]) return (byte[]) value;
+    return value.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Override public Date getDate(int columnIndex) throws SQLException {
+    Object value = getObject(columnIndex);
+    if (value == null || value instanceof Date) return (Date) value;
+    if (value instanceof java.util.Date) return new Date(((java.util.Date) value).getTime());
+    throw cannotConvert(value, Date.class);
+  }
+
+  @Override public Time getTime(int columnIndex) throws SQLException {
+    Object value = getObject(columnIndex);
+    if (value == null || value instanceof Time) return (Time) value;
+    if (value instanceof java.util.Date) return new Time(((java.util.Date) value).getTime());
+    throw cannotConvert(value, Time.class);
+  }
+
+  @Override public Timestamp getTimestamp(int columnIndex) throws SQLException {
+    Object value = getObject(columnIndex);
+    if (value == null || value instanceof Timestamp) return (Timestamp) value;
+    if (value instanceof java.util.Date) return new Timestamp(((java.util.Date) value).getTime());
+    throw cannotConvert(value, Timestamp.class);
+  }
+
+  @Override public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+    Date value = getDate(columnIndex);
+    return value == null || cal == null ? value : new Date(inTimeZone(value, cal));
+  }
+
+  @Override public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+    Time value = getTime(columnIndex);
+    return value == null || cal == null ? value : new Time(inTimeZone(value, cal));
+  }
+
+  @Override public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+    Timestamp value = getTimestamp(columnIndex);
+    if (value == null || cal == null) return value;
+    Timestamp result = new Timestamp(inTimeZone(value, cal));
+    result.setNanos(value.getNanos());
+    return result;
+  }
+
+  /**
+   * Values are cached as read in the default time zone: interpret the same date and time in the time zone of the calendar.
+   */
+  private static long inTimeZone(java.util.Date value, Calendar cal) {
+    return new Timestamp(value.getTime()).toLocalDateTime().atZone(cal.getTimeZone().toZoneId()).toInstant().toEpochMilli();
+  }
+
+  @Override public InputStream getAsciiStream(int columnIndex) throws SQLException {
+    String value = getString(columnIndex);
+    return value == null ? null : new ByteArrayInputStream(value.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Override @Deprecated public InputStream getUnicodeStream(int columnIndex) throws SQLException {
+    String value = getString(columnIndex);
+    return value == null ? null : new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_16BE));
+  }
+
+  @Override public InputStream getBinaryStream(int columnIndex) throws SQLException {
+    byte[] value = getBytes(columnIndex);
+    return value == null ? null : new ByteArrayInputStream(value);
+  }
+
+  @Override public Reader getCharacterStream(int columnIndex) throws SQLException {
+    String value = getString(columnIndex);
+    return value == null ? null : new StringReader(value);
+  }
+
+  @Override public String getNString(int columnIndex) throws SQLException {
+    return getString(columnIndex);
+  }
+
+  @Override public Reader getNCharacterStream(int columnIndex) throws SQLException {
+    return getCharacterStream(columnIndex);
+  }
+
+  @Override public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException {
+    return getObject(columnIndex);
+  }
+
+  @Override public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+    Object value;
+    if (type == String.class) value = getString(columnIndex);
+    else if (type == Integer.class) value = getInt(columnIndex);
+    else if (type == Long.class) value = getLong(columnIndex);
+    else if (type == Short.class) value = getShort(columnIndex);
+    else if (type == Byte.class) value = getByte(columnIndex);
+    else if (type == Double.class) value = getDouble(columnIndex);
+    else if (type == Float.class) value = getFloat(columnIndex);
+    else if (type == Boolean.class) value = getBoolean(columnIndex);
+    else if (type == BigDecimal.class) value = getBigDecimal(columnIndex);
+    else if (type == Timestamp.class) value = getTimestamp(columnIndex);
+    else if (type == Date.class) value = getDate(columnIndex);
+    else if (type == Time.class) value = getTime(columnIndex);
+    else if (type == byte[].class) value = getBytes(columnIndex);
+    else {
+      value = getObject(columnIndex);
+      if (value != null && !type.isInstance(value)) throw cannotConvert(value, type);
+    }
+    return wasNull ? null : type.cast(value);
+  }
+
+  private static SQLException cannotConvert(Object value, Class<?> type) {
+    return new SQLException("Cannot convert " + value.getClass().getName() + " to " + type.getName());
+  }
+
+  @Override public int findColumn(String columnLabel) throws SQLException {
+    int column = result.metaData.indexOf(columnLabel);
+    if (column == 0) throw new SQLException("Column not found: " + columnLabel);
+    return column;
+  }
+
+  @Override public ResultSetMetaData getMetaData() {
+    return result.metaData;
+  }
+
+  @Override public Statement getStatement() {
+    return statement;
+  }
+
+  @Override public SQLWarning getWarnings() {
+    return null;
+  }
+
+  @Override public void clearWarnings() {
+  }
+
+  @Override public boolean isBeforeFirst() {
+    return row < 0 && result.rows > 0;
+  }
+
+  @Override public boolean isAfterLast() {
+    return row >= result.rows && result.rows > 0;
+  }
+
+  @Override public boolean isFirst() {
+    return row == 0 && result.rows > 0;
+  }
+
+  @Override public boolean isLast() {
+    return row == result.rows - 1;
+  }
+
+  @Override public void beforeFirst() throws SQLException {
+    checkOpen();
+    row = -1;
+  }
+
+  @Override public void afterLast() throws SQLException {
+    checkOpen();
+    row = result.rows;
+  }
+
+  @Override public boolean first() throws SQLException {
+    return absolute(1);
+  }
+
+  @Override public boolean last() throws SQLException {
+    return absolute(-1);
+  }
+
+  @Override public int getRow() {
+    return row >= 0 && row < result.rows ? row + 1 : 0;
+  }
+
+  @Override public boolean absolute(int row) throws SQLException {
+    checkOpen();
+    int index = row >= 0 ? row - 1 : result.rows + row;
+    this.row = Math.max(-1, Math.min(result.rows, index));
+    return this.row >= 0 && this.row < result.rows;
+  }
+
+  @Override public boolean relative(int rows) throws SQLException {
+    checkOpen();
+    row = Math.max(-1, Math.min(result.rows, row + rows));
+    return row >= 0 && row < result.rows;
+  }
+
+  @Override public boolean previous() throws SQLException {
+    checkOpen();
+    if (row >= 0) row--;
+    return row >= 0;
+  }
+
+  @Override public void setFetchDirection(int direction) {
+  }
+
+  @Override public int getFetchDirection() {
+    return FETCH_FORWARD;
+  }
+
+  @Override public void setFetchSize(int rows) {
+    fetchSize = rows;
+  }
+
+  @Override public int getFetchSize() {
+    return fetchSize;
+  }
+
+  @Override public int getType() {
+    return TYPE_SCROLL_INSENSITIVE;
+  }
+
+  @Override public int getConcurrency() {
+    return CONCUR_READ_ONLY;
+  }
+
+  @Override public int getHoldability() {
+    return HOLD_CURSORS_OVER_COMMIT;
+  }
+
+  @Override public boolean rowUpdated() {
+    return false;
+  }
+
+  @Override public boolean rowInserted() {
+    return false;
+  }
+
+  @Override public boolean rowDeleted() {
+    return false;
+  }
+
+  @Override public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) return iface.cast(this);
+    throw new SQLException("Cached result set is not a wrapper for " + iface.getName());
+  }
+
+  @Override public boolean isWrapperFor(Class<?> iface) {
+    return iface.isInstance(this);
+  }
+
+  @Override public String getString(String columnLabel) throws SQLException {
+    return getString(findColumn(columnLabel));
+  }
+
+  @Override public boolean getBoolean(String columnLabel) throws SQLException {
+    return getBoolean(findColumn(columnLabel));
+  }
+
+  @Override public byte getByte(String columnLabel) throws SQLException {
+    return getByte(findColumn(columnLabel));
+  }
+
+  @Override public short getShort(String columnLabel) throws SQLException {
+    return getShort(findColumn(columnLabel));
+  }
+
+  @Override public int getInt(String columnLabel) throws SQLException {
+    return getInt(findColumn(columnLabel));
+  }
+
+  @Override public long getLong(String columnLabel) throws SQLException {
+    return getLong(findColumn(columnLabel));
+  }
+
+  @Override public float getFloat(String columnLabel) throws SQLException {
+    return getFloat(findColumn(columnLabel));
+  }
+
+  @Override public double getDouble(String columnLabel) throws SQLException {
+    return getDouble(findColumn(columnLabel));
+  }
+
+  @Override @Deprecated public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+    return getBigDecimal(findColumn(columnLabel), scale);
+  }
+
+  @Override public byte[] getBytes(String columnLabel) throws SQLException {
+    return getBytes(findColumn(columnLabel));
+  }
+
+  @Override public Date getDate(String columnLabel) throws SQLException {
+    return getDate(findColumn(columnLabel));
+  }
+
+  @Override public Time getTime(String columnLabel) throws SQLException {
+    return getTime(findColumn(columnLabel));
+  }
+
+  @Override public Timestamp getTimestamp(String columnLabel) throws SQLException {
+    return getTimestamp(findColumn(columnLabel));
+  }
+
+  @Override public InputStream getAsciiStream(String columnLabel) throws SQLException {
+    return getAsciiStream(findColumn(columnLabel));
+  }
+
+  @Override @Deprecated public InputStream getUnicodeStream(String columnLabel) throws SQLException {
+    return getUnicodeStream(findColumn(columnLabel));
+  }
+
+  @Override public InputStream getBinaryStream(String columnLabel) throws SQLException {
+    return getBinaryStream(findColumn(columnLabel));
+  }
+
+  @Override public String getCursorName() throws SQLException {
+    throw notCached();
+  }
+
+  @Override public Object getObject(String columnLabel) throws SQLException {
+    return getObject(findColumn(columnLabel));
+  }
+
+  @Override public Reader getCharacterStream(String columnLabel) throws SQLException {
+    return getCharacterStream(findColumn(columnLabel));
+  }
+
+  @Override public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+    return getBigDecimal(findColumn(columnLabel));
+  }
+
+  @Override public void updateNull(int columnIndex) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBoolean(int columnIndex, boolean x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateByte(int columnIndex, byte x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateShort(int columnIndex, short x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateInt(int columnIndex, int x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateLong(int columnIndex, long x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateFloat(int columnIndex, float x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateDouble(int columnIndex, double x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateString(int columnIndex, String x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBytes(int columnIndex, byte[] x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateDate(int columnIndex, Date x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateTime(int columnIndex, Time x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateAsciiStream(int columnIndex, InputStream x, int length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBinaryStream(int columnIndex, InputStream x, int length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateCharacterStream(int columnIndex, Reader x, int length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateObject(int columnIndex, Object x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateNull(String columnLabel) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBoolean(String columnLabel, boolean x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateByte(String columnLabel, byte x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateShort(String columnLabel, short x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateInt(String columnLabel, int x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateLong(String columnLabel, long x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateFloat(String columnLabel, float x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateDouble(String columnLabel, double x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBigDecimal(String columnLabel, BigDecimal x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateString(String columnLabel, String x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBytes(String columnLabel, byte[] x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateDate(String columnLabel, Date x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateTime(String columnLabel, Time x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateTimestamp(String columnLabel, Timestamp x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateAsciiStream(String columnLabel, InputStream x, int length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBinaryStream(String columnLabel, InputStream x, int length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateCharacterStream(String columnLabel, Reader x, int length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateObject(String columnLabel, Object x, int scaleOrLength) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateObject(String columnLabel, Object x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void insertRow() throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateRow() throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void deleteRow() throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void refreshRow() throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void cancelRowUpdates() throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void moveToInsertRow() throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void moveToCurrentRow() throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public Ref getRef(int columnIndex) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public Blob getBlob(int columnIndex) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public Clob getClob(int columnIndex) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public Array getArray(int columnIndex) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public Object getObject(String columnLabel, Map<String, Class<?>> map) throws SQLException {
+    return getObject(findColumn(columnLabel), map);
+  }
+
+  @Override public Ref getRef(String columnLabel) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public Blob getBlob(String columnLabel) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public Clob getClob(String columnLabel) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public Array getArray(String columnLabel) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public Date getDate(String columnLabel, Calendar cal) throws SQLException {
+    return getDate(findColumn(columnLabel), cal);
+  }
+
+  @Override public Time getTime(String columnLabel, Calendar cal) throws SQLException {
+    return getTime(findColumn(columnLabel), cal);
+  }
+
+  @Override public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
+    return getTimestamp(findColumn(columnLabel), cal);
+  }
+
+  @Override public URL getURL(int columnIndex) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public URL getURL(String columnLabel) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public void updateRef(int columnIndex, Ref x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateRef(String columnLabel, Ref x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBlob(int columnIndex, Blob x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBlob(String columnLabel, Blob x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateClob(int columnIndex, Clob x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateClob(String columnLabel, Clob x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateArray(int columnIndex, Array x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateArray(String columnLabel, Array x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public RowId getRowId(int columnIndex) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public RowId getRowId(String columnLabel) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public void updateRowId(int columnIndex, RowId x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateRowId(String columnLabel, RowId x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateNString(int columnIndex, String x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateNString(String columnLabel, String x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateNClob(int columnIndex, NClob x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateNClob(String columnLabel, NClob x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public NClob getNClob(int columnIndex) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public NClob getNClob(String columnLabel) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public SQLXML getSQLXML(int columnIndex) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public SQLXML getSQLXML(String columnLabel) throws SQLException {
+    throw notCached();
+  }
+
+  @Override public void updateSQLXML(int columnIndex, SQLXML x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateSQLXML(String columnLabel, SQLXML x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public String getNString(String columnLabel) throws SQLException {
+    return getNString(findColumn(columnLabel));
+  }
+
+  @Override public Reader getNCharacterStream(String columnLabel) throws SQLException {
+    return getNCharacterStream(findColumn(columnLabel));
+  }
+
+  @Override public void updateNCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateNCharacterStream(String columnLabel, Reader x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateAsciiStream(int columnIndex, InputStream x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBinaryStream(int columnIndex, InputStream x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateAsciiStream(String columnLabel, InputStream x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBinaryStream(String columnLabel, InputStream x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateCharacterStream(String columnLabel, Reader x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBlob(int columnIndex, InputStream x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBlob(String columnLabel, InputStream x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateClob(int columnIndex, Reader x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateClob(String columnLabel, Reader x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateNClob(int columnIndex, Reader x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateNClob(String columnLabel, Reader x, long length) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateNCharacterStream(int columnIndex, Reader x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateNCharacterStream(String columnLabel, Reader x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateAsciiStream(int columnIndex, InputStream x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBinaryStream(int columnIndex, InputStream x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateCharacterStream(int columnIndex, Reader x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateAsciiStream(String columnLabel, InputStream x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBinaryStream(String columnLabel, InputStream x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateCharacterStream(String columnLabel, Reader x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBlob(int columnIndex, InputStream x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateBlob(String columnLabel, InputStream x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateClob(int columnIndex, Reader x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateClob(String columnLabel, Reader x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateNClob(int columnIndex, Reader x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateNClob(String columnLabel, Reader x) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+    return getObject(findColumn(columnLabel), type);
+  }
+
+  @Override public void updateObject(int columnIndex, Object x, SQLType targetSqlType, int scaleOrLength) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateObject(String columnLabel, Object x, SQLType targetSqlType, int scaleOrLength) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateObject(int columnIndex, Object x, SQLType targetSqlType) throws SQLException {
+    throw readOnly();
+  }
+
+  @Override public void updateObject(String columnLabel, Object x, SQLType targetSqlType) throws SQLException {
+    throw readOnly();
+  }
+
+  private static SQLFeatureNotSupportedException readOnly() {
+    return new SQLFeatureNotSupportedException("Cached result set is read-only");
+  }
+
+  private static SQLFeatureNotSupportedException notCached() {
+    return new SQLFeatureNotSupportedException("Not supported by cached result set");
+  }
+}
@@ -0,0 +1,185 @@
+package play.db;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Immutable copy of {@link ResultSetMetaData} of a result kept by {@link QueryResultCache}.
+ */
+final class CachedResultSetMetaData implements ResultSetMetaData {
+  private final Column[] columns;
+
+  private CachedResultSetMetaData(Column[] columns) {
+    this.columns = columns;
+  }
+
+  static CachedResultSetMetaData of(ResultSetMetaData metaData) throws SQLException {
+    Column[] columns = new Column[metaData.getColumnCount()];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = new Column(metaData, i + 1);
+    }
+    return new CachedResultSetMetaData(columns);
+  }
+
+  /**
+   * @return 1-based index of column with given label (case-insensitive), or 0 if there is no such column
+   */
+  int indexOf(String columnLabel) {
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].label.equalsIgnoreCase(columnLabel)) return i + 1;
+    }
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].name.equalsIgnoreCase(columnLabel)) return i + 1;
+    }
+    return 0;
+  }
+
+  private Column column(int column) throws SQLException {
+    if (column < 1 || column > columns.length) throw new SQLException("Invalid column index: " + column);
+    return columns[column - 1];
+  }
+
+  @Override public int getColumnCount() {
+    return columns.length;
+  }
+
+  @Override public boolean isAutoIncrement(int column) throws SQLException {
+    return column(column).autoIncrement;
+  }
+
+  @Override public boolean isCaseSensitive(int column) throws SQLException {
+    return column(column).caseSensitive;
+  }
+
+  @Override public boolean isSearchable(int column) throws SQLException {
+    return column(column).searchable;
+  }
+
+  @Override public boolean isCurrency(int column) throws SQLException {
+    return column(column).currency;
+  }
+
+  @Override public int isNullable(int column) throws SQLException {
+    return column(column).nullable;
+  }
+
+  @Override public boolean isSigned(int column) throws SQLException {
+    return column(column).signed;
+  }
+
+  @Override public int getColumnDisplaySize(int column) throws SQLException {
+    return column(column).displaySize;
+  }
+
+  @Override public String getColumnLabel(int column) throws SQLException {
+    return column(column).label;
+  }
+
+  @Override public String getColumnName(int column) throws SQLException {
+    return column(column).name;
+  }
+
+  @Override public String getSchemaName(int column) throws SQLException {
+    return column(column).schema;
+  }
+
+  @Override public int getPrecision(int column) throws SQLException {
+    return column(column).precision;
+  }
+
+  @Override public int getScale(int column) throws SQLException {
+    return column(column).scale;
+  }
+
+  @Override public String getTableName(int column) throws SQLException {
+    return column(column).table;
+  }
+
+  @Override public String getCatalogName(int column) throws SQLException {
+    return column(column).catalog;
+  }
+
+  @Override public int getColumnType(int column) throws SQLException {
+    return column(column).type;
+  }
+
+  @Override public String getColumnTypeName(int column) throws SQLException {
+    return column(column).typeName;
+  }
+
+  @Override public boolean isReadOnly(int column) {
+    return true;
+  }
+
+  @Override public boolean isWritable(int column) {
+    return false;
+  }
+
+  @Override public boolean isDefinitelyWritable(int column) {
+    return false;
+  }
+
+  @Override public String getColumnClassName(int column) throws SQLException {
+    return column(column).className;
+  }
+
+  @Override public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) return iface.cast(this);
+    throw new SQLException("Cached result set metadata is not a wrapper for " + iface.getName());
+  }
+
+  @Override public boolean isWrapperFor(Class<?> iface) {
+    return iface.isInstance(this);
+  }
+
+  long estimatedBytes() {
+    long bytes = 16 + 16L * columns.length;
+    for (Column column : columns) bytes += column.estimatedBytes();
+    return bytes;
+  }
+
+  private static final class Column {
+    final String label;
+    final String name;
+    final String schema;
+    final String table;
+    final String catalog;
+    final String typeName;
+    final String className;
+    final int type;
+    final int precision;
+    final int scale;
+    final int nullable;
+    final int displaySize;
+    final boolean autoIncrement;
+    final boolean caseSensitive;
+    final boolean searchable;
+    final boolean currency;
+    final boolean signed;
+
+    Column(ResultSetMetaData metaData, int column) throws SQLException {
+      label = metaData.getColumnLabel(column);
+      name = metaData.getColumnName(column);
+      schema = metaData.getSchemaName(column);
+      table = metaData.getTableName(column);
+      catalog = metaData.getCatalogName(column);
+      typeName = metaData.getColumnTypeName(column);
+      className = metaData.getColumnClassName(column);
+      type = metaData.getColumnType(column);
+      precision = metaData.getPrecision(column);
+      scale = metaData.getScale(column);
+      nullable = metaData.isNullable(column);
+      displaySize = metaData.getColumnDisplaySize(column);
+      autoIncrement = metaData.isAutoIncrement(column);
+      caseSensitive = metaData.isCaseSensitive(column);
+      searchable = metaData.isSearchable(column);
+      currency = metaData.isCurrency(column);
+      signed = metaData.isSigned(column);
+    }
+
+    long estimatedBytes() {
+      return 64 + QueryResultCache.estimatedBytes(label) + QueryResultCache.estimatedBytes(name) +
+          QueryResultCache.estimatedBytes(table) + QueryResultCache.estimatedBytes(typeName);
+    }
+  }
+}
@@ -0,0 +1,368 @@
+package play.db;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.UUID;
+
+/**
+ * Statement of a query whose results may be kept by {@link QueryResultCache}.
+ *
+ * <p>Remembers bound parameters to build the cache key. Parameters that can't be
+ * compared (streams, LOBs, values bound with a calendar or target type etc.) as well as
+ * a maximum number of rows disable the cache for the statement until parameters are cleared.
+ */
+class CachingStatementDecorator extends OptimizingStatementDecorator {
+  private static final Object NULL = new Object();
+
+  private final OptimizingConnectionDecorator connection;
+  private final String sql;
+  private final String[] tables;
+  private Object[] parameters = new Object[8];
+  private int parameterCount;
+  private boolean unbindable;
+  private boolean maxRowsSet;
+
+  CachingStatementDecorator(OptimizingConnectionDecorator connection, PreparedStatement statement, String sql, String[] tables) {
+    super(connection, statement, sql);
+    this.connection = connection;
+    this.sql = sql;
+    this.tables = tables;
+  }
+
+  @Override public ResultSet executeQuery() throws SQLException {
+    connection.flushBatch();
+    QueryResultCache cache = QueryResultCache.current;
+    if (!cache.enabled || unbindable || maxRowsSet || connection.hasUncommittedChanges(tables) || connection.mayReadReplica()) {
+      return super.executeQuery();
+    }
+
+    QueryResultCache.Key key = new QueryResultCache.Key(connection.dataSource, connection.username,
+        sql, Arrays.copyOf(parameters, parameterCount));
+    CachedResult result = cache.get(key);
+    if (result != null) return new CachedResultSet(this, result);
+
+    long[] generations = QueryResultCache.generations(tables);
+    ResultSet resultSet = super.executeQuery();
+    CachedResultSetMetaData metaData = CachedResultSetMetaData.of(resultSet.getMetaData());
+    if (!CachedResult.isCacheable(metaData)) {
+      cache.notCacheable(sql);
+      return resultSet;
+    }
+    try {
+      result = CachedResult.read(resultSet, metaData, cache.maxRows);
+    }
+    finally {
+      resultSet.close();
+    }
+    if (result == null) {
+      // rows already read are gone, so the query has to run again
+      cache.notCacheable(sql);
+      return super.executeQuery();
+    }
+    cache.put(key, result, tables, generations);
+    return new CachedResultSet(this, result);
+  }
+
+  private void bind(int parameterIndex, Object value) {
+    if (parameterIndex < 1) return;
+    if (parameterIndex > parameters.length) parameters = Arrays.copyOf(parameters, Math.max(parameterIndex, 2 * parameters.length));
+    parameters[parameterIndex - 1] = value == null ? NULL : value;
+    parameterCount = Math.max(parameterCount, parameterIndex);
+  }
+
+  private void bindObject(int parameterIndex, Object value) {
+    if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean ||
+        value instanceof Character || value instanceof UUID || value instanceof Enum || value instanceof TemporalAccessor) {
+      bind(parameterIndex, value);
+    }
+    else if (value instanceof java.util.Date) bind(parameterIndex, ((java.util.Date) value).clone());
+    else if (value instanceof byte[]) bind(parameterIndex, ((byte[]) value).clone());
+    else unbindable = true;
+  }
+
+  @Override public void clearParameters() throws SQLException {
+    Arrays.fill(parameters, 0, parameterCount, null);
+    parameterCount = 0;
+    unbindable = false;
+    super.clearParameters();
+  }
+
+  @Override public void setMaxRows(int max) throws SQLException {
+    maxRowsSet = max != 0;
+    statement.setMaxRows(max);
+  }
+
+  @Override public void setLargeMaxRows(long max) throws SQLException {
+    maxRowsSet = max != 0;
+    statement.setLargeMaxRows(max);
+  }
+
+  @Override public void setNull(int parameterIndex, int sqlType) throws SQLException {
+    bind(parameterIndex, NULL);
+    super.setNull(parameterIndex, sqlType);
+  }
+
+  @Override public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+    bind(parameterIndex, x);
+    super.setBoolean(parameterIndex, x);
+  }
+
+  @Override public void setByte(int parameterIndex, byte x) throws SQLException {
+    bind(parameterIndex, x);
+    super.setByte(parameterIndex, x);
+  }
+
+  @Override public void setShort(int parameterIndex, short x) throws SQLException {
+    bind(parameterIndex, x);
+    super.setShort(parameterIndex, x);
+  }
+
+  @Override public void setInt(int parameterIndex, int x) throws SQLException {
+    bind(parameterIndex, x);
+    super.setInt(parameterIndex, x);
+  }
+
+  @Override public void setLong(int parameterIndex, long x) throws SQLException {
+    bind(parameterIndex, x);
+    super.setLong(parameterIndex, x);
+  }
+
+  @Override public void setFloat(int parameterIndex, float x) throws SQLException {
+    bind(parameterIndex, x);
+    super.setFloat(parameterIndex, x);
+  }
+
+  @Override public void setDouble(int parameterIndex, double x) throws SQLException {
+    bind(parameterIndex, x);
+    super.setDouble(parameterIndex, x);
+  }
+
+  @Override public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+    bind(parameterIndex, x);
+    super.setBigDecimal(parameterIndex, x);
+  }
+
+  @Override public void setString(int parameterIndex, String x) throws SQLException {
+    bind(parameterIndex, x);
+    super.setString(parameterIndex, x);
+  }
+
+  @Override public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+    bind(parameterIndex, x == null ? null : x.clone());
+    super.setBytes(parameterIndex, x);
+  }
+
+  @Override public void setDate(int parameterIndex, Date x) throws SQLException {
+    bind(parameterIndex, x == null ? null : x.clone());
+    super.setDate(parameterIndex, x);
+  }
+
+  @Override public void setTime(int parameterIndex, Time x) throws SQLException {
+    bind(parameterIndex, x == null ? null : x.clone());
+    super.setTime(parameterIndex, x);
+  }
+
+  @Override public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+    bind(parameterIndex, x == null ? null : x.clone());
+    super.setTimestamp(parameterIndex, x);
+  }
+
+  @Override public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+    unbindable = true;
+    super.setAsciiStream(parameterIndex, x, length);
+  }
+
+  @Override public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+    unbindable = true;
+    super.setUnicodeStream(parameterIndex, x, length);
+  }
+
+  @Override public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+    unbindable = true;
+    super.setBinaryStream(parameterIndex, x, length);
+  }
+
+  @Override public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+    unbindable = true;
+    super.setObject(parameterIndex, x, targetSqlType);
+  }
+
+  @Override public void setObject(int parameterIndex, Object x) throws SQLException {
+    bindObject(parameterIndex, x);
+    super.setObject(parameterIndex, x);
+  }
+
+  @Override public void setCharacterStream(int parameterIndex, Reader x, int length) throws SQLException {
+    unbindable = true;
+    super.setCharacterStream(parameterIndex, x, length);
+  }
+
+  @Override public void setRef(int parameterIndex, Ref x) throws SQLException {
+    unbindable = true;
+    super.setRef(parameterIndex, x);
+  }
+
+  @Override public void setBlob(int parameterIndex, Blob x) throws SQLException {
+    unbindable = true;
+    super.setBlob(parameterIndex, x);
+  }
+
+  @Override public void setClob(int parameterIndex, Clob x) throws SQLException {
+    unbindable = true;
+    super.setClob(parameterIndex, x);
+  }
+
+  @Override public void setArray(int parameterIndex, Array x) throws SQLException {
+    unbindable = true;
+    super.setArray(parameterIndex, x);
+  }
+
+  @Override public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+    unbindable = true;
+    super.setDate(parameterIndex, x, cal);
+  }
+
+  @Override public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+    unbindable = true;
+    super.setTime(parameterIndex, x, cal);
+  }
+
+  @Override public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+    unbindable = true;
+    super.setTimestamp(parameterIndex, x, cal);
+  }
+
+  @Override public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+    unbindable = true;
+    super.setNull(parameterIndex, sqlType, typeName);
+  }
+
+  @Override public void setURL(int parameterIndex, URL x) throws SQLException {
+    unbindable = true;
+    super.setURL(parameterIndex, x);
+  }
+
+  @Override public void setRowId(int parameterIndex, RowId x) throws SQLException {
+    unbindable = true;
+    super.setRowId(parameterIndex, x);
+  }
+
+  @Override public void setNString(int parameterIndex, String x) throws SQLException {
+    bind(parameterIndex, x);
+    super.setNString(parameterIndex, x);
+  }
+
+  @Override public void setNCharacterStream(int parameterIndex, Reader x, long length) throws SQLException {
+    unbindable = true;
+    super.setNCharacterStream(parameterIndex, x, length);
+  }
+
+  @Override public void setNClob(int parameterIndex, NClob x) throws SQLException {
+    unbindable = true;
+    super.setNClob(parameterIndex, x);
+  }
+
+  @Override public void setClob(int parameterIndex, Reader x, long length) throws SQLException {
+    unbindable = true;
+    super.setClob(parameterIndex, x, length);
+  }
+
+  @Override public void setBlob(int parameterIndex, InputStream x, long length) throws SQLException {
+    unbindable = true;
+    super.setBlob(parameterIndex, x, length);
+  }
+
+  @Override public void setNClob(int parameterIndex, Reader x, long length) throws SQLException {
+    unbindable = true;
+    super.setNClob(parameterIndex, x, length);
+  }
+
+  @Override public void setSQLXML(int parameterIndex, SQLXML x) throws SQLException {
+    unbindable = true;
+    super.setSQLXML(parameterIndex, x);
+  }
+
+  @Override public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+    unbindable = true;
+    super.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+  }
+
+  @Override public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+    unbindable = true;
+    super.setAsciiStream(parameterIndex, x, length);
+  }
+
+  @Override public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+    unbindable = true;
+    super.setBinaryStream(parameterIndex, x, length);
+  }
+
+  @Override public void setCharacterStream(int parameterIndex, Reader x, long length) throws SQLException {
+    unbindable = true;
+    super.setCharacterStream(parameterIndex, x, length);
+  }
+
+  @Override public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+    unbindable = true;
+    super.setAsciiStream(parameterIndex, x);
+  }
+
+  @Override public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+    unbindable = true;
+    super.setBinaryStream(parameterIndex, x);
+  }
+
+  @Override public void setCharacterStream(int parameterIndex, Reader x) throws SQLException {
+    unbindable = true;
+    super.setCharacterStream(parameterIndex, x);
+  }
+
+  @Override public void setNCharacterStream(int parameterIndex, Reader x) throws SQLException {
+    unbindable = true;
+    super.setNCharacterStream(parameterIndex, x);
+  }
+
+  @Override public void setClob(int parameterIndex, Reader x) throws SQLException {
+    unbindable = true;
+    super.setClob(parameterIndex, x);
+  }
+
+  @Override public void setBlob(int parameterIndex, InputStream x) throws SQLException {
+    unbindable = true;
+    super.setBlob(parameterIndex, x);
+  }
+
+  @Override public void setNClob(int parameterIndex, Reader x) throws SQLException {
+    unbindable = true;
+    super.setNClob(parameterIndex, x);
+  }
+
+  @Override public void setObject(int parameterIndex, Object x, SQLType targetSqlType, int scaleOrLength) throws SQLException {
+    unbindable = true;
+    super.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+  }
+
+  @Override public void setObject(int parameterIndex, Object x, SQLType targetSqlType) throws SQLException {
+    unbindable = true;
+    super.setObject(parameterIndex, x, targetSqlType);
+  }
+}
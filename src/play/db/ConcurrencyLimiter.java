@@ -0,0 +1,132 @@
+package play.db;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of physical connections held at the same time, adjusting the limit
+ * to observed query latency (gradient algorithm, similar to TCP Vegas).
+ *
+ * <p>Every released connection reports how long its statements spent executing, from the start
+ * of {@code execute*} until it returned, summed over the time the connection was held. Work done
+ * while holding a connection without executing statements (rendering, remote calls) does not
+ * count, hold times are only reported as metrics. A long-term average of execution times is
+ * compared with the latest one: while the database answers as fast as usual, the limit grows
+ * by a small queue allowance; when execution times grow above the long-term average, the limit
+ * shrinks proportionally (by at most half per sample). Connections that executed nothing don't
+ * adjust the limit. Requests over the limit are not queued but rejected immediately, so threads
+ * don't pile up waiting for the pool while the database is slow.
+ *
+ * <p>Acquiring a permit is a CAS on the in-flight counter; the limit is recalculated on release.
+ *
+ * @see LazyConnectionDataSourceProxy#setConcurrencyLimiter
+ */
+public final class ConcurrencyLimiter {
+  private static final double SMOOTHING = 0.2;
+  private static final double TOLERANCE = 1.5;
+  private static final int LONG_WINDOW = 600;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder shed = new LongAdder();
+
+  private volatile double limit;
+  private double longRttNanos;
+
+  /**
+   * @param initialLimit limit to start with
+   * @param minLimit the limit never goes below it
+   * @param maxLimit the limit never goes above it, e.g. the maximum pool size
+   */
+  public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+    if (minLimit < 1 || maxLimit < minLimit) {
+      throw new IllegalArgumentException("Invalid limits: min " + minLimit + ", max " + maxLimit);
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+  }
+
+  /**
+   * @return whether a permit was acquired; if not, the request is counted as shed
+   */
+  boolean tryAcquire() {
+    int currentLimit = getLimit();
+    while (true) {
+      int current = inFlight.get();
+      if (current >= currentLimit) {
+        shed.increment();
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) return true;
+    }
+  }
+
+  /**
+   * Release permit of a request that failed before it could be measured.
+   */
+  void release() {
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * Release permit and adjust the limit.
+   *
+   * @param latencyNanos how long statements executed while the permit was held
+   */
+  void release(long latencyNanos) {
+    int current = inFlight.getAndDecrement();
+    if (latencyNanos > 0) onSample(latencyNanos, current);
+  }
+
+  private synchronized void onSample(long rttNanos, int inFlight) {
+    if (longRttNanos == 0) longRttNanos = rttNanos;
+    else longRttNanos += (rttNanos - longRttNanos) / LONG_WINDOW;
+
+    // latency dropped a lot, e.g. after recovery: let the long-term average catch up quickly
+    if (longRttNanos / rttNanos > 2) longRttNanos *= 0.95;
+
+    // the limit is not the bottleneck, so samples don't tell whether it could grow
+    if (inFlight < limit / 2) return;
+
+    double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / rttNanos));
+    double queueSize = Math.sqrt(limit);
+    double newLimit = limit * gradient + queueSize;
+    newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+    limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+  }
+
+  /**
+   * @return current number of permits
+   */
+  public int getLimit() {
+    return (int) limit;
+  }
+
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  /**
+   * @return number of permits held now
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return number of requests rejected because the limit was reached
+   */
+  public long getShedCount() {
+    return shed.sum();
+  }
+
+  @Override public String toString() {
+    return "limit=" + getLimit() + " (" + minLimit + ".." + maxLimit + "), in flight=" + getInFlight() + ", shed=" + getShedCount();
+  }
+}
@@ -0,0 +1,89 @@
+package play.db;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How Play actions and jobs use lazy connections of {@link LazyConnectionDataSourceProxy}:
+ * <ul>
+ *   <li>acquire time - how long fetching a physical connection from the pool took</li>
+ *   <li>hold time - how long the physical connection was held until it was closed or released</li>
+ *   <li>unused handles - lazy connections closed without ever fetching a physical connection</li>
+ * </ul>
+ * Statistics are kept per action ("job" for jobs and other threads) and in total.
+ * Recording is lock-free and does not allocate once the action has been seen.
+ */
+public class ConnectionStats {
+  private static final ConcurrentMap<String, ConnectionStats> byAction = new ConcurrentHashMap<>();
+  private static final ConnectionStats total = new ConnectionStats();
+
+  private final LatencyHistogram acquireTime = new LatencyHistogram();
+  private final LatencyHistogram holdTime = new LatencyHistogram();
+  private final LongAdder totalHoldNanos = new LongAdder();
+  private final LongAdder unusedHandles = new LongAdder();
+
+  /**
+   * @return statistics by action name
+   */
+  public static Map<String, ConnectionStats> byAction() {
+    return Collections.unmodifiableMap(byAction);
+  }
+
+  public static ConnectionStats total() {
+    return total;
+  }
+
+  public static void reset() {
+    byAction.clear();
+    total.acquireTime.reset();
+    total.holdTime.reset();
+    total.totalHoldNanos.reset();
+    total.unusedHandles.reset();
+  }
+
+  static void acquired(long durationNanos) {
+    total.acquireTime.record(durationNanos);
+    current().acquireTime.record(durationNanos);
+  }
+
+  static void released(long holdNanos) {
+    total.recordHold(holdNanos);
+    current().recordHold(holdNanos);
+  }
+
+  static void closedUnused() {
+    total.unusedHandles.increment();
+    current().unusedHandles.increment();
+  }
+
+  private static ConnectionStats current() {
+    String action = SlowSQLHelper.currentAction();
+    ConnectionStats stats = byAction.get(action);
+    return stats != null ? stats : byAction.computeIfAbsent(action, a -> new ConnectionStats());
+  }
+
+  private void recordHold(long holdNanos) {
+    holdTime.record(holdNanos);
+    totalHoldNanos.add(holdNanos);
+  }
+
+  public LatencyHistogram getAcquireTime() {
+    return acquireTime;
+  }
+
+  public LatencyHistogram getHoldTime() {
+    return holdTime;
+  }
+
+  public long getAverageHoldNanos() {
+    long count = holdTime.getCount();
+    return count == 0 ? 0 : totalHoldNanos.sum() / count;
+  }
+
+  public long getUnusedHandles() {
+    return unusedHandles.sum();
+  }
+}
@@ -0,0 +1,103 @@
+package play.db;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import javax.sql.DataSource;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Pool gauges and lazy connection counters of a DataSource wrapped by play-db.
+ *
+ * <p>Unwraps the DataSource through {@link DelegatingDataSource#getTargetDataSource()}
+ * down to the connection pool. Gauges are -1 if the pool is not a started {@link HikariDataSource},
+ * counters are 0 if the DataSource is not lazy, concurrency limit is -1 if there is no limiter. Only reads counters, so it never blocks.
+ */
+public class DataSourceMetrics implements DataSourceMetricsMXBean {
+  private final LazyConnectionDataSourceProxy lazyDataSource;
+  private final DataSource pool;
+
+  public DataSourceMetrics(DataSource dataSource) {
+    LazyConnectionDataSourceProxy lazy = null;
+    DataSource target = dataSource;
+    while (target instanceof DelegatingDataSource) {
+      if (target instanceof LazyConnectionDataSourceProxy) lazy = (LazyConnectionDataSourceProxy) target;
+      target = ((DelegatingDataSource) target).getTargetDataSource();
+    }
+    this.lazyDataSource = lazy;
+    this.pool = target;
+  }
+
+  /**
+   * @return the lazy proxy found while unwrapping, or null
+   */
+  public LazyConnectionDataSourceProxy getLazyDataSource() {
+    return lazyDataSource;
+  }
+
+  /**
+   * @return the innermost DataSource, usually the connection pool
+   */
+  public DataSource getPool() {
+    return pool;
+  }
+
+  private HikariPoolMXBean hikariPool() {
+    return pool instanceof HikariDataSource ? ((HikariDataSource) pool).getHikariPoolMXBean() : null;
+  }
+
+  @Override public int getActiveConnections() {
+    HikariPoolMXBean hikariPool = hikariPool();
+    return hikariPool == null ? -1 : hikariPool.getActiveConnections();
+  }
+
+  @Override public int getIdleConnections() {
+    HikariPoolMXBean hikariPool = hikariPool();
+    return hikariPool == null ? -1 : hikariPool.getIdleConnections();
+  }
+
+  @Override public int getThreadsAwaitingConnection() {
+    HikariPoolMXBean hikariPool = hikariPool();
+    return hikariPool == null ? -1 : hikariPool.getThreadsAwaitingConnection();
+  }
+
+  @Override public int getTotalConnections() {
+    HikariPoolMXBean hikariPool = hikariPool();
+    return hikariPool == null ? -1 : hikariPool.getTotalConnections();
+  }
+
+  @Override public int getMaximumPoolSize() {
+    return pool instanceof HikariDataSource ? ((HikariDataSource) pool).getMaximumPoolSize() : -1;
+  }
+
+  @Override public long getLazyConnectionsCreated() {
+    return lazyDataSource == null ? 0 : lazyDataSource.getHandlesCreated();
+  }
+
+  @Override public long getConnectionsFetched() {
+    return lazyDataSource == null ? 0 : lazyDataSource.getConnectionsFetched();
+  }
+
+  @Override public long getFetchesAvoided() {
+    return lazyDataSource == null ? 0 : lazyDataSource.getHandlesClosedUnused();
+  }
+
+  @Override public long getAverageHoldMillis() {
+    return lazyDataSource == null ? 0 : NANOSECONDS.toMillis(lazyDataSource.getAverageHoldNanos());
+  }
+
+  @Override public int getConcurrencyLimit() {
+    ConcurrencyLimiter limiter = concurrencyLimiter();
+    return limiter == null ? -1 : limiter.getLimit();
+  }
+
+  @Override public long getConnectionsShed() {
+    ConcurrencyLimiter limiter = concurrencyLimiter();
+    return limiter == null ? 0 : limiter.getShedCount();
+  }
+
+  private ConcurrencyLimiter concurrencyLimiter() {
+    return lazyDataSource == null ? null : lazyDataSource.getConcurrencyLimiter();
+  }
+}
@@ -0,0 +1,30 @@
+package play.db;
+
+/**
+ * JMX view of a DataSource wrapped by play-db.
+ *
+ * @see DataSourceMetrics
+ */
+public interface DataSourceMetricsMXBean {
+  int getActiveConnections();
+
+  int getIdleConnections();
+
+  int getThreadsAwaitingConnection();
+
+  int getTotalConnections();
+
+  int getMaximumPoolSize();
+
+  long getLazyConnectionsCreated();
+
+  long getConnectionsFetched();
+
+  long getFetchesAvoided();
+
+  long getAverageHoldMillis();
+
+  int getConcurrencyLimit();
+
+  long getConnectionsShed();
+}
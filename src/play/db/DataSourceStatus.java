@@ -0,0 +1,48 @@
+package play.db;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+
+/**
+ * Describes state of a DataSource wrapped by play-db for "play status".
+ *
+ * <p>Only reads counters, so it neither blocks nor touches the database.
+ */
+public class DataSourceStatus {
+  private DataSourceStatus() {
+  }
+
+  public static void print(PrintWriter out, String name, DataSource dataSource) {
+    out.println("Datasource " + name + ":");
+    DataSourceMetrics metrics = new DataSourceMetrics(dataSource);
+    out.println("  pool: " + pool(metrics));
+    LazyConnectionDataSourceProxy lazyDataSource = metrics.getLazyDataSource();
+    if (lazyDataSource != null) {
+      out.println("  lazy connections: created=" + metrics.getLazyConnectionsCreated() +
+          ", fetched=" + metrics.getConnectionsFetched() +
+          ", fetches avoided=" + metrics.getFetchesAvoided() +
+          ", average hold=" + metrics.getAverageHoldMillis() + " ms");
+      if (lazyDataSource.getConcurrencyLimiter() != null) {
+        out.println("  concurrency limiter: " + lazyDataSource.getConcurrencyLimiter());
+      }
+      int i = 1;
+      for (DataSource replica : lazyDataSource.getReplicaDataSources()) {
+        out.println("  replica " + i++ + ": " + pool(new DataSourceMetrics(replica)));
+      }
+    }
+  }
+
+  private static String pool(DataSourceMetrics metrics) {
+    DataSource pool = metrics.getPool();
+    if (!(pool instanceof HikariDataSource)) return pool.getClass().getName();
+
+    String poolName = ((HikariDataSource) pool).getPoolName();
+    if (metrics.getTotalConnections() < 0) return poolName + " (not started)";
+    return poolName + " active=" + metrics.getActiveConnections() +
+        ", idle=" + metrics.getIdleConnections() +
+        ", waiting=" + metrics.getThreadsAwaitingConnection() +
+        ", total=" + metrics.getTotalConnections() + "/" + metrics.getMaximumPoolSize();
+  }
+}
@@ -0,0 +1,195 @@
+package play.db;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Captures execution plans of slow statements, configurable in application.conf:
+ * <pre>
+ * trackSlowSQL.plans=true
+ * trackSlowSQL.plans.threshold=500ms
+ * trackSlowSQL.plans.interval=1mn
+ * trackSlowSQL.plans.ttl=1h
+ * </pre>
+ * An execution slower than the threshold is a sample: the plan of its fingerprint is captured
+ * by a background thread with its own connection from the pool, unless the fingerprint already
+ * has a plan younger than "ttl". At most one plan is captured per "interval", none while
+ * another capture is running or the pool has no idle connections, so capturing never competes
+ * with requests at peak. Plans are available from {@link LogEntry#getExecutionPlan()}.
+ *
+ * <p>Oracle plans come from {@code DBMS_XPLAN.DISPLAY_CURSOR} of the cursor in the shared pool,
+ * found by sql_id computed from the SQL text, so they show the plan actually used.
+ * Other databases (H2, PostgreSQL, MySQL) get {@code EXPLAIN} of the statement with null parameters.
+ */
+final class ExecutionPlans {
+  private static final Logger logger = LoggerFactory.getLogger(ExecutionPlans.class);
+  private static final String PREFIX = "trackSlowSQL.plans";
+  private static final int MAX_PLAN_LENGTH = 16384;
+  private static final String SQL_ID_ALPHABET = "0123456789abcdfghjkmnpqrstuvwxyz";
+
+  private static final Executor executor = new ThreadPoolExecutor(0, 1, 1, SECONDS, new SynchronousQueue<>(), runnable -> {
+    Thread thread = new Thread(runnable, "slow-sql-plans");
+    thread.setDaemon(true);
+    return thread;
+  }, new ThreadPoolExecutor.DiscardPolicy());
+
+  static volatile ExecutionPlans current = load(new Properties());
+
+  final boolean enabled;
+  private final long thresholdNanos;
+  private final long intervalNanos;
+  private final Cache<String, String> plans;
+  private final AtomicLong nextCapture = new AtomicLong(System.nanoTime());
+
+  private ExecutionPlans(Properties configuration) {
+    enabled = "true".equals(configuration.getProperty(PREFIX, "false"));
+    thresholdNanos = SlowSQLThresholds.parseNanos(configuration.getProperty(PREFIX + ".threshold", "500ms"));
+    intervalNanos = SlowSQLThresholds.parseNanos(configuration.getProperty(PREFIX + ".interval", "1mn"));
+    long ttlNanos = SlowSQLThresholds.parseNanos(configuration.getProperty(PREFIX + ".ttl", "1h"));
+    plans = CacheBuilder.newBuilder().maximumSize(1000).expireAfterWrite(ttlNanos, NANOSECONDS).build();
+  }
+
+  static ExecutionPlans load(Properties configuration) {
+    return new ExecutionPlans(configuration);
+  }
+
+  /**
+   * Called after every execution, schedules capture of the plan if the execution was slow and capturing is due.
+   *
+   * @param dataSource the DataSource the statement's connection came from, may be null
+   */
+  void sample(String sql, long durationNanos, DataSource dataSource) {
+    if (!enabled || durationNanos < thresholdNanos || dataSource == null) return;
+    String fingerprint = SqlFingerprint.of(sql);
+    if (plans.getIfPresent(fingerprint) != null || !isExplainable(sql)) return;
+    long now = System.nanoTime();
+    long next = nextCapture.get();
+    if (now - next < 0 || !nextCapture.compareAndSet(next, now + intervalNanos)) return;
+    executor.execute(() -> capture(fingerprint, sql, dataSource));
+  }
+
+  /**
+   * @return captured plan of the statement with given fingerprint, or null
+   */
+  String get(String fingerprint) {
+    return plans.getIfPresent(fingerprint);
+  }
+
+  private void capture(String fingerprint, String sql, DataSource dataSource) {
+    DataSourceMetrics pool = new DataSourceMetrics(dataSource);
+    if (pool.getIdleConnections() == 0 || pool.getThreadsAwaitingConnection() > 0) {
+      logger.debug("Not capturing plan of {}: no idle connections", fingerprint);
+      return;
+    }
+    try (Connection connection = pool.getPool().getConnection()) {
+      String database = connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+      String plan = database.contains("oracle") ? oraclePlan(connection, sql) : explain(connection, sql);
+      plans.put(fingerprint, plan.length() > MAX_PLAN_LENGTH ? plan.substring(0, MAX_PLAN_LENGTH) : plan);
+    }
+    catch (SQLException | RuntimeException e) {
+      logger.warn("Failed to capture plan of " + fingerprint, e);
+      // do not try again until ttl expires
+      plans.put(fingerprint, "Failed to capture plan: " + e);
+    }
+  }
+
+  private static String oraclePlan(Connection connection, String sql) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "select plan_table_output from table(dbms_xplan.display_cursor(?, null, 'TYPICAL'))")) {
+      statement.setString(1, oracleSqlId(oracleBinds(sql)));
+      return read(statement);
+    }
+  }
+
+  private static String explain(Connection connection, String sql) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement("explain " + sql)) {
+      int parameters = statement.getParameterMetaData().getParameterCount();
+      for (int i = 1; i <= parameters; i++) statement.setObject(i, null);
+      return read(statement);
+    }
+  }
+
+  private static String read(PreparedStatement statement) throws SQLException {
+    StringBuilder plan = new StringBuilder();
+    try (ResultSet resultSet = statement.executeQuery()) {
+      int columns = resultSet.getMetaData().getColumnCount();
+      while (resultSet.next() && plan.length() < MAX_PLAN_LENGTH) {
+        for (int i = 1; i <= columns; i++) {
+          if (i > 1) plan.append('\t');
+          plan.append(resultSet.getString(i));
+        }
+        plan.append('\n');
+      }
+    }
+    return plan.toString();
+  }
+
+  private static boolean isExplainable(String sql) {
+    String start = sql.trim().toLowerCase(Locale.ROOT);
+    return start.startsWith("select") || start.startsWith("with") || SqlTables.modified(sql) != null;
+  }
+
+  /**
+   * @return SQL as Oracle JDBC driver sends it: {@code ?} parameters become {@code :1}, {@code :2}...
+   */
+  static String oracleBinds(String sql) {
+    StringBuilder result = new StringBuilder(sql.length() + 16);
+    int parameter = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (c == '\'' || c == '"') {
+        int end = sql.indexOf(c, i + 1);
+        end = end < 0 ? sql.length() - 1 : end;
+        result.append(sql, i, end + 1);
+        i = end;
+      }
+      else if (c == '?') result.append(':').append(++parameter);
+      else result.append(c);
+    }
+    return result.toString();
+  }
+
+  /**
+   * @return sql_id Oracle assigns to given SQL text: the lower 64 bits of its MD5 hash in base 32
+   */
+  static String oracleSqlId(String sql) {
+    byte[] md5;
+    try {
+      md5 = MessageDigest.getInstance("MD5").digest((sql + '\0').getBytes(StandardCharsets.UTF_8));
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    long hash = (littleEndianInt(md5, 8) & 0xFFFFFFFFL) << 32 | littleEndianInt(md5, 12) & 0xFFFFFFFFL;
+    char[] sqlId = new char[13];
+    for (int i = sqlId.length - 1; i >= 0; i--) {
+      sqlId[i] = SQL_ID_ALPHABET.charAt((int) (hash & 31));
+      hash >>>= 5;
+    }
+    return new String(sqlId);
+  }
+
+  private static int littleEndianInt(byte[] bytes, int offset) {
+    return bytes[offset] & 0xFF | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+  }
+}
@@ -0,0 +1,8 @@
+package play.db;
+
+/**
+ * Receives the time statements of a lazy Connection spend executing, see {@link TimedStatement}.
+ */
+interface ExecutionTimeListener {
+  void executed(long nanos);
+}
@@ -0,0 +1,120 @@
+package play.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SQL tracking context of the current Play invocation (request or job).
+ *
+ * <p>Request and session of the invocation are resolved once, on the first SQL execution,
+ * instead of on every execution. The thread-local instance is reused across invocations,
+ * so recording an execution allocates nothing.
+ *
+ * <p>Executions of every statement are also counted per invocation to detect N+1 queries:
+ * the same statement executed more than {@link #nPlusOneThreshold} times. Counters are kept
+ * across invocations, so counting a statement seen before allocates nothing either.
+ */
+final class InvocationSQLLog {
+  private static final ThreadLocal<InvocationSQLLog> current = ThreadLocal.withInitial(InvocationSQLLog::new);
+
+  /**
+   * Executions of the same statement in one invocation reported as N+1 query, 0 disables the detection
+   */
+  static volatile int nPlusOneThreshold = 20;
+
+  private final Map<String, StatementCount> counts = new HashMap<>();
+  private final List<StatementCount> executed = new ArrayList<>();
+  private boolean active;
+  private String requestId;
+  private String sessionId;
+
+  private InvocationSQLLog() {
+  }
+
+  /**
+   * Start tracking SQL executions of the invocation running in the current thread.
+   */
+  static void start() {
+    InvocationSQLLog log = current.get();
+    log.finish();
+    log.active = true;
+  }
+
+  /**
+   * Stop tracking SQL executions of the invocation running in the current thread.
+   */
+  static void end() {
+    current.get().finish();
+  }
+
+  /**
+   * @return log of the invocation running in the current thread, or null if it's not a Play invocation
+   */
+  static InvocationSQLLog current() {
+    InvocationSQLLog log = current.get();
+    return log.active ? log : null;
+  }
+
+  void add(String sql, long durationNanos, String[] binds) {
+    // request and session are resolved by Play only after the invocation has started
+    if (requestId == null) {
+      requestId = SlowSQLHelper.currentRequestId();
+      sessionId = SlowSQLHelper.currentSessionId();
+    }
+    SQLEventAggregator.publish(sql, requestId, sessionId, durationNanos, binds);
+
+    int threshold = nPlusOneThreshold;
+    if (threshold > 0) count(sql, durationNanos, threshold);
+  }
+
+  private void count(String sql, long durationNanos, int threshold) {
+    StatementCount count = counts.get(sql);
+    if (count == null) {
+      if (counts.size() >= SqlFingerprint.MAX_MEMO_SIZE) removeUnused();
+      count = new StatementCount(sql);
+      counts.put(sql, count);
+    }
+    if (count.executions++ == 0) executed.add(count);
+    count.totalDurationNanos += durationNanos;
+    if (count.executions == threshold + 1) {
+      count.callSite = NPlusOneQuery.captureCallSite();
+    }
+  }
+
+  private void removeUnused() {
+    counts.values().removeIf(count -> count.executions == 0);
+  }
+
+  private void finish() {
+    for (StatementCount count : executed) {
+      if (count.callSite != null) {
+        SlowSQLHelper.addNPlusOneQuery(new NPlusOneQuery(count.sql, requestId, sessionId,
+            count.executions, count.totalDurationNanos, count.callSite));
+      }
+      count.reset();
+    }
+    executed.clear();
+    active = false;
+    requestId = null;
+    sessionId = null;
+  }
+
+  private static final class StatementCount {
+    private final String sql;
+    private int executions;
+    private long totalDurationNanos;
+    private StackTraceElement[] callSite;
+
+    private StatementCount(String sql) {
+      this.sql = sql;
+    }
+
+    private void reset() {
+      executions = 0;
+      totalDurationNanos = 0;
+      callSite = null;
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package play.db;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free latency histogram with fixed memory footprint (under 1 KB).
+ *
+ * <p>Durations are recorded in nanoseconds into log-linear buckets: every power of two
+ * (starting from ~1 microsecond) is split into 8 buckets, so reported percentiles are at most 12.5%
+ * above the real value. Durations above ~2 minutes all land in the last bucket,
+ * the exact maximum is kept separately.
+ */
+public class LatencyHistogram {
+  private static final int UNIT_SHIFT = 10; // ~1 microsecond
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int MAX_EXPONENT = 27; // 2^27 units ~ 137 seconds
+  static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicIntegerArray counts = new AtomicIntegerArray(BUCKETS);
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long durationNanos) {
+    counts.incrementAndGet(bucket(durationNanos));
+    updateMax(durationNanos);
+  }
+
+  void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      int count = other.counts.get(i);
+      if (count != 0) counts.addAndGet(i, count);
+    }
+    updateMax(other.max.get());
+  }
+
+  void reset() {
+    for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+    max.set(0);
+  }
+
+  private void updateMax(long durationNanos) {
+    long current;
+    while ((current = max.get()) < durationNanos && !max.compareAndSet(current, durationNanos)) {
+    }
+  }
+
+  public long getCount() {
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+    return total;
+  }
+
+  public long getMaxNanos() {
+    return max.get();
+  }
+
+  /**
+   * @param percentile e.g. 50, 90 or 99.9
+   * @return upper bound of the duration (in nanoseconds) that given percent of executions did not exceed, 0 if nothing was recorded
+   */
+  public long getPercentileNanos(double percentile) {
+    return getPercentilesNanos(percentile)[0];
+  }
+
+  /**
+   * Several percentiles of one snapshot of the histogram, in a single scan of its buckets.
+   *
+   * @param percentiles in ascending order, e.g. 50, 90, 99
+   * @return {@link #getPercentileNanos(double)} of each of the percentiles
+   */
+  long[] getPercentilesNanos(double... percentiles) {
+    long[] result = new long[percentiles.length];
+    int[] snapshot = new int[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) return result;
+
+    long max = getMaxNanos();
+    int p = 0;
+    long seen = 0;
+    for (int i = 0; i < BUCKETS && p < percentiles.length; i++) {
+      seen += snapshot[i];
+      while (p < percentiles.length && seen >= rank(total, percentiles[p])) {
+        result[p++] = Math.min(upperBoundNanos(i), max);
+      }
+    }
+    while (p < percentiles.length) result[p++] = max;
+    return result;
+  }
+
+  private static long rank(long total, double percentile) {
+    return Math.max(1, (long) Math.ceil(total * percentile / 100));
+  }
+
+  static int bucket(long durationNanos) {
+    long units = Math.max(0, durationNanos) >>> UNIT_SHIFT;
+    if (units < SUB_BUCKETS) return (int) units;
+    int exponent = 63 - Long.numberOfLeadingZeros(units);
+    if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+    int subBucket = (int) (units >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + subBucket;
+  }
+
+  static long upperBoundNanos(int bucket) {
+    if (bucket == BUCKETS - 1) return Long.MAX_VALUE;
+    long lastUnit;
+    if (bucket < SUB_BUCKETS) {
+      lastUnit = bucket;
+    }
+    else {
+      int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+      int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+      lastUnit = ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+    return ((lastUnit + 1) << UNIT_SHIFT) - 1;
+  }
+}
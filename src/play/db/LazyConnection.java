@@ -0,0 +1,508 @@
+package play.db;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * Connection handle that defers fetching an actual JDBC Connection
+ * until first creation of a Statement.
+ *
+ * <p>Behaves exactly like the dynamic proxy created by
+ * {@link LazyConnectionDataSourceProxy} in dynamic proxy mode, but calls the
+ * target Connection directly instead of going through {@code Method.invoke}.
+ *
+ * <p>{@code equals} and {@code hashCode} are inherited from {@link Object}:
+ * handles are only equal when identical, and the hash code does not change
+ * once the target Connection has been fetched.
+ *
+ * <p>If {@link LazyConnectionDataSourceProxy#setReleaseTargetEarly early release} is
+ * enabled, the target Connection is closed (returned to the pool) after commit or
+ * rollback, or after an auto-commit Statement is closed, provided that all
+ * Statements created from it are closed. A new target Connection, with the same
+ * settings, is fetched only if another Statement is created. State that cannot be
+ * transferred to a new target Connection (savepoints, catalog, schema, etc.), as well
+ * as handing out the target Connection itself, pins the target until close.
+ */
+final class LazyConnection implements ConnectionProxy, ExecutionTimeListener {
+  private static final Log logger = LogFactory.getLog(LazyConnection.class);
+
+  private final LazyConnectionDataSourceProxy dataSource;
+
+  private final String username;
+
+  private final String password;
+
+  private boolean readOnly = false;
+
+  private Integer transactionIsolation;
+
+  private Boolean autoCommit;
+
+  private boolean closed = false;
+
+  private Connection target;
+
+  private long fetchedAt;
+
+  private long executionNanos;
+
+  private boolean fetched = false;
+
+  private boolean pinned = false;
+
+  private boolean targetReadOnly = false;
+
+  private List<Statement> statements;
+
+  LazyConnection(LazyConnectionDataSourceProxy dataSource, String username, String password) {
+    this.dataSource = dataSource;
+    this.username = username;
+    this.password = password;
+    this.autoCommit = dataSource.defaultAutoCommit();
+    this.transactionIsolation = dataSource.defaultTransactionIsolation();
+  }
+
+  /**
+   * Return the target Connection, fetching it and initializing it if necessary.
+   */
+  @Override public Connection getTargetConnection() {
+    try {
+      pin();
+      return fetchTarget("getTargetConnection");
+    }
+    catch (SQLException e) {
+      throw new IllegalStateException("Could not fetch target Connection", e);
+    }
+  }
+
+  /**
+   * Return the target Connection for an operation that cannot be resolved
+   * without one, failing if this handle has been closed before fetching it.
+   */
+  private Connection target(String operation) throws SQLException {
+    if (this.target == null && this.closed) {
+      // Connection handle closed, without ever having fetched a
+      // physical JDBC Connection: throw corresponding SQLException.
+      throw new SQLException("Illegal operation: connection is closed");
+    }
+    return fetchTarget(operation);
+  }
+
+  private Connection fetchTarget(String operation) throws SQLException {
+    if (this.target == null) {
+      // No target Connection held -> fetch one.
+      if (logger.isDebugEnabled()) {
+        logger.debug("Connecting to database for operation '" + operation + "'");
+      }
+      this.target = dataSource.fetchTargetConnection(this.username, this.password,
+          this.readOnly, this.transactionIsolation, this.autoCommit);
+      this.targetReadOnly = this.readOnly;
+      this.fetchedAt = System.nanoTime();
+      this.executionNanos = 0;
+      this.fetched = true;
+    }
+    else if (logger.isDebugEnabled()) {
+      logger.debug("Using existing database connection for operation '" + operation + "'");
+    }
+    return this.target;
+  }
+
+  private Connection pinnedTarget(String operation) throws SQLException {
+    Connection target = target(operation);
+    pin();
+    return target;
+  }
+
+  private void pin() {
+    this.pinned = true;
+    // the target is kept until close: statements don't need to be tracked anymore
+    this.statements = null;
+  }
+
+  private <T extends Statement> T track(T statement) throws SQLException {
+    RequestDeadline.applyTo(statement);
+    if (dataSource.isReleaseTargetEarly() && !this.pinned) {
+      if (this.statements == null) this.statements = new ArrayList<>();
+      // forget closed statements, so that a long-lived handle does not accumulate them
+      for (Iterator<Statement> it = this.statements.iterator(); it.hasNext(); ) {
+        if (it.next().isClosed()) it.remove();
+      }
+      this.statements.add(statement);
+    }
+    return statement;
+  }
+
+  @Override public void executed(long nanos) {
+    this.executionNanos += nanos;
+  }
+
+  int trackedStatementCount() {
+    return this.statements == null ? 0 : this.statements.size();
+  }
+
+  /**
+   * Close the target Connection if early release is enabled and nothing depends on it anymore.
+   */
+  void releaseTargetIfIdle() throws SQLException {
+    if (this.target == null || this.pinned || !dataSource.isReleaseTargetEarly()) return;
+    if (this.statements != null) {
+      for (Statement statement : this.statements) {
+        if (!statement.isClosed()) return;
+      }
+      this.statements.clear();
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Releasing database connection after end of transaction");
+    }
+    Connection released = this.target;
+    this.target = null;
+    dataSource.targetReleased(System.nanoTime() - this.fetchedAt, this.executionNanos);
+    released.close();
+  }
+
+  @Override public String toString() {
+    if (this.target == null) {
+      return "Lazy Connection proxy for target DataSource [" + dataSource.getTargetDataSource() + "]";
+    }
+    return this.target.toString();
+  }
+
+  //---------------------------------------------------------------------
+  // Transaction demarcation: resolved without a target Connection if possible
+  //---------------------------------------------------------------------
+
+  @Override public boolean isReadOnly() throws SQLException {
+    return this.target == null ? this.readOnly : this.target.isReadOnly();
+  }
+
+  @Override public void setReadOnly(boolean readOnly) throws SQLException {
+    if (this.target != null) this.target.setReadOnly(readOnly);
+    this.readOnly = readOnly;
+  }
+
+  @Override public int getTransactionIsolation() throws SQLException {
+    if (this.target == null && this.transactionIsolation != null) {
+      return this.transactionIsolation;
+    }
+    // Else fetch actual Connection and check there,
+    // because we didn't have a default specified.
+    return target("getTransactionIsolation").getTransactionIsolation();
+  }
+
+  @Override public void setTransactionIsolation(int level) throws SQLException {
+    if (this.target != null) this.target.setTransactionIsolation(level);
+    this.transactionIsolation = level;
+  }
+
+  @Override public boolean getAutoCommit() throws SQLException {
+    if (this.target == null && this.autoCommit != null) {
+      return this.autoCommit;
+    }
+    // Else fetch actual Connection and check there,
+    // because we didn't have a default specified.
+    return target("getAutoCommit").getAutoCommit();
+  }
+
+  @Override public void setAutoCommit(boolean autoCommit) throws SQLException {
+    if (this.target != null) this.target.setAutoCommit(autoCommit);
+    this.autoCommit = autoCommit;
+  }
+
+  @Override public void commit() throws SQLException {
+    // Ignore if no target: no statements created yet.
+    if (this.target != null) {
+      this.target.commit();
+      releaseTargetIfIdle();
+    }
+  }
+
+  @Override public void rollback() throws SQLException {
+    // Ignore if no target: no statements created yet.
+    if (this.target != null) {
+      this.target.rollback();
+      releaseTargetIfIdle();
+    }
+  }
+
+  @Override public void rollback(Savepoint savepoint) throws SQLException {
+    // Ignore if no target: no statements created yet.
+    if (this.target != null) this.target.rollback(savepoint);
+  }
+
+  @Override public SQLWarning getWarnings() throws SQLException {
+    return this.target == null ? null : this.target.getWarnings();
+  }
+
+  @Override public void clearWarnings() throws SQLException {
+    if (this.target != null) this.target.clearWarnings();
+  }
+
+  @Override public void close() throws SQLException {
+    if (!this.closed) {
+      if (this.target != null) dataSource.targetReleased(System.nanoTime() - this.fetchedAt, this.executionNanos);
+      else if (!this.fetched) dataSource.closedUnused();
+    }
+    this.closed = true;
+    if (this.target != null) this.target.close();
+  }
+
+  @Override public boolean isClosed() throws SQLException {
+    return this.target == null ? this.closed : this.target.isClosed();
+  }
+
+  /**
+   * @return true if the target Connection may be connected to a replica: it was fetched, or will be, read-only
+   */
+  boolean mayReadReplica() {
+    return this.target == null ? this.readOnly : this.targetReadOnly;
+  }
+
+  boolean isAutoCommit() {
+    return Boolean.TRUE.equals(this.autoCommit);
+  }
+
+  //---------------------------------------------------------------------
+  // Operations that need a target Connection
+  //---------------------------------------------------------------------
+
+  @Override public Statement createStatement() throws SQLException {
+    return statement(target("createStatement").createStatement());
+  }
+
+  @Override public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+    return statement(target("createStatement").createStatement(resultSetType, resultSetConcurrency));
+  }
+
+  @Override public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    return statement(target("createStatement").createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql) throws SQLException {
+    return prepared(target("prepareStatement").prepareStatement(sql));
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+    return prepared(target("prepareStatement").prepareStatement(sql, resultSetType, resultSetConcurrency));
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    return prepared(target("prepareStatement").prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+    return prepared(target("prepareStatement").prepareStatement(sql, autoGeneratedKeys));
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+    return prepared(target("prepareStatement").prepareStatement(sql, columnIndexes));
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+    return prepared(target("prepareStatement").prepareStatement(sql, columnNames));
+  }
+
+  @Override public CallableStatement prepareCall(String sql) throws SQLException {
+    return callable(target("prepareCall").prepareCall(sql));
+  }
+
+  @Override public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+    return callable(target("prepareCall").prepareCall(sql, resultSetType, resultSetConcurrency));
+  }
+
+  @Override public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    return callable(target("prepareCall").prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+  }
+
+  private PreparedStatement prepared(PreparedStatement statement) throws SQLException {
+    if (!dataSource.isReleaseTargetEarly() || this.pinned) return RequestDeadline.applyTo(timed(statement));
+    // closing an auto-commit statement ends the transaction
+    return track(isAutoCommit() ? new ReleasingPreparedStatement(this, statement) : timed(statement));
+  }
+
+  private Statement statement(Statement statement) throws SQLException {
+    if (!dataSource.isReleaseTargetEarly() || this.pinned) return RequestDeadline.applyTo(timed(statement));
+    return track(isAutoCommit() ? new ReleasingStatement(this, statement) : timed(statement));
+  }
+
+  private CallableStatement callable(CallableStatement statement) throws SQLException {
+    if (!dataSource.isReleaseTargetEarly() || this.pinned) return RequestDeadline.applyTo(timed(statement));
+    return track(isAutoCommit() ? new ReleasingCallableStatement(this, statement) : timed(statement));
+  }
+
+  /**
+   * Execution times of statements are only needed to adjust the concurrency limit.
+   */
+  private PreparedStatement timed(PreparedStatement statement) {
+    return dataSource.getConcurrencyLimiter() == null ? statement : new TimedPreparedStatement(this, statement);
+  }
+
+  private Statement timed(Statement statement) {
+    return dataSource.getConcurrencyLimiter() == null ? statement : new TimedStatement(this, statement);
+  }
+
+  private CallableStatement timed(CallableStatement statement) {
+    return dataSource.getConcurrencyLimiter() == null ? statement : new TimedCallableStatement(this, statement);
+  }
+
+  @Override public String nativeSQL(String sql) throws SQLException {
+    return target("nativeSQL").nativeSQL(sql);
+  }
+
+  @Override public DatabaseMetaData getMetaData() throws SQLException {
+    return target("getMetaData").getMetaData();
+  }
+
+  @Override public void setCatalog(String catalog) throws SQLException {
+    pinnedTarget("setCatalog").setCatalog(catalog);
+  }
+
+  @Override public String getCatalog() throws SQLException {
+    return target("getCatalog").getCatalog();
+  }
+
+  @Override public Map<String, Class<?>> getTypeMap() throws SQLException {
+    return target("getTypeMap").getTypeMap();
+  }
+
+  @Override public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+    pinnedTarget("setTypeMap").setTypeMap(map);
+  }
+
+  @Override public void setHoldability(int holdability) throws SQLException {
+    pinnedTarget("setHoldability").setHoldability(holdability);
+  }
+
+  @Override public int getHoldability() throws SQLException {
+    return target("getHoldability").getHoldability();
+  }
+
+  @Override public Savepoint setSavepoint() throws SQLException {
+    return pinnedTarget("setSavepoint").setSavepoint();
+  }
+
+  @Override public Savepoint setSavepoint(String name) throws SQLException {
+    return pinnedTarget("setSavepoint").setSavepoint(name);
+  }
+
+  @Override public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+    target("releaseSavepoint").releaseSavepoint(savepoint);
+  }
+
+  @Override public Clob createClob() throws SQLException {
+    return target("createClob").createClob();
+  }
+
+  @Override public Blob createBlob() throws SQLException {
+    return target("createBlob").createBlob();
+  }
+
+  @Override public NClob createNClob() throws SQLException {
+    return target("createNClob").createNClob();
+  }
+
+  @Override public SQLXML createSQLXML() throws SQLException {
+    return target("createSQLXML").createSQLXML();
+  }
+
+  @Override public boolean isValid(int timeout) throws SQLException {
+    return target("isValid").isValid(timeout);
+  }
+
+  @Override public void setClientInfo(String name, String value) throws SQLClientInfoException {
+    try {
+      pinnedTarget("setClientInfo").setClientInfo(name, value);
+    }
+    catch (SQLClientInfoException e) {
+      throw e;
+    }
+    catch (SQLException e) {
+      throw new SQLClientInfoException(e.getMessage(), e.getSQLState(), e.getErrorCode(), null, e);
+    }
+  }
+
+  @Override public void setClientInfo(Properties properties) throws SQLClientInfoException {
+    try {
+      pinnedTarget("setClientInfo").setClientInfo(properties);
+    }
+    catch (SQLClientInfoException e) {
+      throw e;
+    }
+    catch (SQLException e) {
+      throw new SQLClientInfoException(e.getMessage(), e.getSQLState(), e.getErrorCode(), null, e);
+    }
+  }
+
+  @Override public String getClientInfo(String name) throws SQLException {
+    return target("getClientInfo").getClientInfo(name);
+  }
+
+  @Override public Properties getClientInfo() throws SQLException {
+    return target("getClientInfo").getClientInfo();
+  }
+
+  @Override public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+    return target("createArrayOf").createArrayOf(typeName, elements);
+  }
+
+  @Override public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+    return target("createStruct").createStruct(typeName, attributes);
+  }
+
+  @Override public void setSchema(String schema) throws SQLException {
+    pinnedTarget("setSchema").setSchema(schema);
+  }
+
+  @Override public String getSchema() throws SQLException {
+    return target("getSchema").getSchema();
+  }
+
+  @Override public void abort(Executor executor) throws SQLException {
+    target("abort").abort(executor);
+  }
+
+  @Override public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+    pinnedTarget("setNetworkTimeout").setNetworkTimeout(executor, milliseconds);
+  }
+
+  @Override public int getNetworkTimeout() throws SQLException {
+    return target("getNetworkTimeout").getNetworkTimeout();
+  }
+
+  //---------------------------------------------------------------------
+  // Implementation of JDBC 4.0's Wrapper interface
+  //---------------------------------------------------------------------
+
+  @Override @SuppressWarnings("unchecked")
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return (T) this;
+    }
+    return pinnedTarget("unwrap").unwrap(iface);
+  }
+
+  @Override public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || target("isWrapperFor").isWrapperFor(iface);
+  }
+}
@@ -23,8 +23,18 @@ import javax.sql.DataSource;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 
 import static play.db.Reflection.invokeUnwrappingExceptions;
 
@@ -78,9 +88,31 @@ public class LazyConnectionDataSourceProxy extends DelegatingDataSource {
 
   private static final Log logger = LogFactory.getLog(LazyConnectionDataSourceProxy.class);
 
-  private Boolean defaultAutoCommit;
+  private volatile Boolean defaultAutoCommit;
 
-  private Integer defaultTransactionIsolation;
+  private volatile Integer defaultTransactionIsolation;
+
+  private boolean useDynamicProxy = false;
+
+  private boolean releaseTargetEarly = false;
+
+  private List<DataSource> replicaDataSources = Collections.emptyList();
+
+  private ReplicaRouter replicaRouter;
+
+  private ConcurrencyLimiter concurrencyLimiter;
+
+  private OracleEndToEndMetrics endToEndMetrics;
+
+  private final LongAdder handlesCreated = new LongAdder();
+
+  private final LongAdder connectionsFetched = new LongAdder();
+
+  private final LongAdder handlesClosedUnused = new LongAdder();
+
+  private final LongAdder holdNanos = new LongAdder();
+
+  private final LongAdder holds = new LongAdder();
 
 
   /**
@@ -132,6 +164,91 @@ public class LazyConnectionDataSourceProxy extends DelegatingDataSource {
     this.defaultTransactionIsolation = defaultTransactionIsolation;
   }
 
+  /**
+   * Set whether to hand out JDK dynamic proxies instead of {@link LazyConnection}
+   * instances as lazy Connection handles.
+   * <p>Default is "false": handles are plain objects calling the target Connection
+   * directly. Dynamic proxies route every call through reflection and are kept
+   * as a fallback only.
+   */
+  public void setUseDynamicProxy(boolean useDynamicProxy) {
+    this.useDynamicProxy = useDynamicProxy;
+  }
+
+  /**
+   * Return whether lazy Connection handles are JDK dynamic proxies.
+   */
+  public boolean isUseDynamicProxy() {
+    return this.useDynamicProxy;
+  }
+
+  /**
+   * Set whether lazy Connections return their target Connection to the pool at the end
+   * of each transaction, instead of holding it until they are closed.
+   * <p>Default is "false". If enabled, the target Connection is closed after commit or
+   * rollback, or after an auto-commit PreparedStatement is closed, provided that all
+   * Statements created from it are closed. The lazy Connection then fetches a new target
+   * Connection only if it creates another Statement.
+   * <p>Only applies to {@link LazyConnection} handles, not to dynamic proxies.
+   */
+  public void setReleaseTargetEarly(boolean releaseTargetEarly) {
+    this.releaseTargetEarly = releaseTargetEarly;
+  }
+
+  /**
+   * Return whether lazy Connections release their target Connection at the end of each transaction.
+   */
+  public boolean isReleaseTargetEarly() {
+    return this.releaseTargetEarly;
+  }
+
+  /**
+   * Set replicas of the target DataSource for read-only Connections.
+   * <p>A lazy Connection that is read-only when its target Connection gets fetched
+   * (i.e. {@link Connection#setReadOnly} was called before the first Statement)
+   * is connected to one of the replicas, picked according to given selection.
+   * Other Connections, or all of them if no replica can provide a Connection,
+   * are fetched from the target DataSource.
+   * <p>Note that a Connection stays with the replica if it is switched back from
+   * read-only after the first Statement.
+   */
+  public void setReplicaDataSources(List<DataSource> replicas, ReplicaSelection selection) {
+    this.replicaDataSources = Collections.unmodifiableList(replicas);
+    this.replicaRouter = replicas.isEmpty() ? null : new ReplicaRouter(replicas, selection);
+  }
+
+  /**
+   * Return replicas of the target DataSource used for read-only Connections.
+   */
+  public List<DataSource> getReplicaDataSources() {
+    return this.replicaDataSources;
+  }
+
+  /**
+   * Set a limiter of physical Connections held at the same time by lazy Connections.
+   * <p>If set, fetching a target Connection over the limit fails immediately with
+   * {@link SQLTransientException} instead of waiting for the pool. The time statements
+   * of a physical Connection spent executing, summed until it is released, adjusts the limit.
+   * Connections to replicas count as well.
+   */
+  public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+    this.concurrencyLimiter = concurrencyLimiter;
+  }
+
+  /**
+   * Return the limiter of physical Connections, or {@code null} if unlimited.
+   */
+  public ConcurrencyLimiter getConcurrencyLimiter() {
+    return this.concurrencyLimiter;
+  }
+
+  /**
+   * Set Oracle end-to-end metrics to apply to target Connections when they are fetched.
+   */
+  public void setEndToEndMetrics(OracleEndToEndMetrics endToEndMetrics) {
+    this.endToEndMetrics = endToEndMetrics;
+  }
+
   public void afterPropertiesSet() {
     // Determine default auto-commit and transaction isolation
     // via a Connection from the target DataSource, if possible.
@@ -151,6 +268,25 @@ public class LazyConnectionDataSourceProxy extends DelegatingDataSource {
     }
   }
 
+  /**
+   * Alternative to {@link #afterPropertiesSet()} that doesn't block the caller:
+   * connect to the target DataSource in background to validate it, start its pool
+   * and determine the defaults not set yet. Until then, lazy connections fetch
+   * a target Connection to answer for unknown defaults.
+   *
+   * @return completed exceptionally if the target DataSource can't be connected to
+   */
+  public CompletableFuture<Void> afterPropertiesSetAsync(Executor executor) {
+    return CompletableFuture.runAsync(() -> {
+      try (Connection con = getTargetDataSource().getConnection()) {
+        checkDefaultConnectionProperties(con);
+      }
+      catch (SQLException ex) {
+        throw new CompletionException(ex);
+      }
+    }, executor);
+  }
+
   /**
    * Check the default connection properties (auto-commit, transaction isolation),
    * keeping them to be able to expose them correctly without fetching an actual
@@ -197,6 +333,10 @@ public class LazyConnectionDataSourceProxy extends DelegatingDataSource {
    */
   @Override
   public Connection getConnection() throws SQLException {
+    this.handlesCreated.increment();
+    if (!this.useDynamicProxy) {
+      return new LazyConnection(this, null, null);
+    }
     return (Connection) Proxy.newProxyInstance(
         ConnectionProxy.class.getClassLoader(),
         new Class<?>[]{ConnectionProxy.class},
@@ -216,18 +356,145 @@ public class LazyConnectionDataSourceProxy extends DelegatingDataSource {
    */
   @Override
   public Connection getConnection(String username, String password) throws SQLException {
+    this.handlesCreated.increment();
+    if (!this.useDynamicProxy) {
+      return new LazyConnection(this, username, password);
+    }
     return (Connection) Proxy.newProxyInstance(
         ConnectionProxy.class.getClassLoader(),
         new Class<?>[]{ConnectionProxy.class},
         new LazyConnectionInvocationHandler(username, password));
   }
 
+  /**
+   * Return the number of lazy Connection handles handed out.
+   */
+  public long getHandlesCreated() {
+    return this.handlesCreated.sum();
+  }
+
+  /**
+   * Return the number of physical Connections fetched by lazy Connection handles.
+   */
+  public long getConnectionsFetched() {
+    return this.connectionsFetched.sum();
+  }
+
+  /**
+   * Return the number of lazy Connection handles closed without ever fetching a physical Connection.
+   */
+  public long getHandlesClosedUnused() {
+    return this.handlesClosedUnused.sum();
+  }
+
+  /**
+   * Return average time in nanoseconds a physical Connection was held by a lazy Connection handle.
+   */
+  public long getAverageHoldNanos() {
+    long count = this.holds.sum();
+    return count == 0 ? 0 : this.holdNanos.sum() / count;
+  }
+
+  /**
+   * Called by a lazy Connection handle that closes or releases its physical Connection.
+   *
+   * @param holdNanos time since the physical Connection was fetched
+   * @param executionNanos time statements of the physical Connection spent executing
+   */
+  void targetReleased(long holdNanos, long executionNanos) {
+    if (this.concurrencyLimiter != null) this.concurrencyLimiter.release(executionNanos);
+    this.holdNanos.add(holdNanos);
+    this.holds.increment();
+    ConnectionStats.released(holdNanos);
+  }
+
+  /**
+   * Called by a lazy Connection handle closed without ever fetching a physical Connection.
+   */
+  void closedUnused() {
+    this.handlesClosedUnused.increment();
+    ConnectionStats.closedUnused();
+  }
+
+  /**
+   * Fetch a physical Connection from the target DataSource and apply the
+   * transaction settings kept by a lazy Connection handle so far.
+   *
+   * @param username the per-Connection username, or {@code null} for the default one
+   * @param password the per-Connection password
+   * @param readOnly the read-only flag kept by the handle
+   * @param transactionIsolation the isolation level kept by the handle, if any
+   * @param autoCommit the auto-commit mode kept by the handle, if any
+   * @return the initialized physical Connection
+   * @throws SQLTransientException if the concurrency limit is reached
+   * @throws java.sql.SQLTimeoutException if the deadline of the current request has passed
+   * @throws SQLException if thrown by the target DataSource or Connection
+   */
+  Connection fetchTargetConnection(String username, String password, boolean readOnly,
+                                   Integer transactionIsolation, Boolean autoCommit) throws SQLException {
+    RequestDeadline.checkNotExceeded();
+    ConcurrencyLimiter limiter = this.concurrencyLimiter;
+    if (limiter == null) {
+      return doFetchTargetConnection(username, password, readOnly, transactionIsolation, autoCommit);
+    }
+    if (!limiter.tryAcquire()) {
+      throw new SQLTransientException("Too many concurrent database connections: limit " + limiter.getLimit() + " reached");
+    }
+    try {
+      return doFetchTargetConnection(username, password, readOnly, transactionIsolation, autoCommit);
+    }
+    catch (SQLException | RuntimeException e) {
+      limiter.release();
+      throw e;
+    }
+  }
+
+  private Connection doFetchTargetConnection(String username, String password, boolean readOnly,
+                                             Integer transactionIsolation, Boolean autoCommit) throws SQLException {
+    long start = System.nanoTime();
+    Connection target = (readOnly && this.replicaRouter != null) ?
+        this.replicaRouter.getConnection(username, password) : null;
+    if (target == null) {
+      target = (username != null) ?
+          getTargetDataSource().getConnection(username, password) :
+          getTargetDataSource().getConnection();
+    }
+    ConnectionStats.acquired(System.nanoTime() - start);
+    this.connectionsFetched.increment();
+
+    // If we still lack default connection properties, check them now.
+    checkDefaultConnectionProperties(target);
+
+    if (this.endToEndMetrics != null) {
+      this.endToEndMetrics.apply(target);
+    }
+
+    // Apply kept transaction settings, if any.
+    if (readOnly) {
+      try {
+        target.setReadOnly(true);
+      }
+      catch (Exception ex) {
+        // "read-only not supported" -> ignore, it's just a hint anyway
+        logger.debug("Could not set JDBC Connection read-only", ex);
+      }
+    }
+    if (transactionIsolation != null &&
+        !transactionIsolation.equals(defaultTransactionIsolation())) {
+      target.setTransactionIsolation(transactionIsolation);
+    }
+    if (autoCommit != null && autoCommit != target.getAutoCommit()) {
+      target.setAutoCommit(autoCommit);
+    }
+    return target;
+  }
+
 
   /**
    * Invocation handler that defers fetching an actual JDBC Connection
    * until first creation of a Statement.
    */
-  private class LazyConnectionInvocationHandler implements InvocationHandler {
+  private class LazyConnectionInvocationHandler implements InvocationHandler, ExecutionTimeListener {
 
     private String username;
 
@@ -243,6 +510,10 @@ public class LazyConnectionDataSourceProxy extends DelegatingDataSource {
 
     private Connection target;
 
+    private long fetchedAt;
+
+    private long executionNanos;
+
     public LazyConnectionInvocationHandler() {
       this.autoCommit = defaultAutoCommit();
       this.transactionIsolation = defaultTransactionIsolation();
@@ -336,6 +607,7 @@ public class LazyConnectionDataSourceProxy extends DelegatingDataSource {
           return null;
         }
         else if (method.getName().equals("close")) {
+          if (!this.closed) closedUnused();
           this.closed = true;
           return null;
         }
@@ -352,7 +624,24 @@ public class LazyConnectionDataSourceProxy extends DelegatingDataSource {
       // Target Connection already fetched,
       // or target Connection necessary for current operation ->
       // invoke method on target connection.
-      return invokeUnwrappingExceptions(method, getTargetConnection(method), args);
+      Connection target = getTargetConnection(method);
+      if (method.getName().equals("close") && !this.closed) {
+        this.closed = true;
+        targetReleased(System.nanoTime() - this.fetchedAt, this.executionNanos);
+      }
+      Object result = invokeUnwrappingExceptions(method, target, args);
+      return result instanceof Statement ? RequestDeadline.applyTo(timed((Statement) result)) : result;
+    }
+
+    @Override public void executed(long nanos) {
+      this.executionNanos += nanos;
+    }
+
+    private Statement timed(Statement statement) {
+      if (concurrencyLimiter == null) return statement;
+      if (statement instanceof CallableStatement) return new TimedCallableStatement(this, (CallableStatement) statement);
+      if (statement instanceof PreparedStatement) return new TimedPreparedStatement(this, (PreparedStatement) statement);
+      return new TimedStatement(this, statement);
     }
 
     /**
@@ -373,30 +662,10 @@ public class LazyConnectionDataSourceProxy extends DelegatingDataSource {
         }
 
         // Fetch physical Connection from DataSource.
-        this.target = (this.username != null) ?
-            getTargetDataSource().getConnection(this.username, this.password) :
-            getTargetDataSource().getConnection();
-
-        // If we still lack default connection properties, check them now.
-        checkDefaultConnectionProperties(this.target);
-
-        // Apply kept transaction settings, if any.
-        if (this.readOnly) {
-          try {
-            this.target.setReadOnly(this.readOnly);
-          }
-          catch (Exception ex) {
-            // "read-only not supported" -> ignore, it's just a hint anyway
-            logger.debug("Could not set JDBC Connection read-only", ex);
-          }
-        }
-        if (this.transactionIsolation != null &&
-            !this.transactionIsolation.equals(defaultTransactionIsolation())) {
-          this.target.setTransactionIsolation(this.transactionIsolation);
-        }
-        if (this.autoCommit != null && this.autoCommit != this.target.getAutoCommit()) {
-          this.target.setAutoCommit(this.autoCommit);
-        }
+        this.target = fetchTargetConnection(this.username, this.password,
+            this.readOnly, this.transactionIsolation, this.autoCommit);
+        this.fetchedAt = System.nanoTime();
+        this.executionNanos = 0;
       }
 
       else {
@@ -1,19 +1,20 @@
 package play.db;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.regex.Pattern;
 
 public class LogEntry {
-  private static final int SLOW_AVERAGE_SQL_THRESHOLD_IN_MS = 100;
-  private static final int SLOW_TOTAL_SQL_THRESHOLD_IN_MS = 200;
-
   public final String sql;
   public final String request;
   public final String sessionId;
-  private final AtomicLong totalDuration = new AtomicLong();
+  private final AtomicLong totalDurationNanos = new AtomicLong();
   private final AtomicLong count = new AtomicLong();
-  private static final Pattern shortenSelect = Pattern.compile("\\bselect\\s.+?\\sfrom\\s", Pattern.DOTALL);
-  private static final Pattern shortenUpdate = Pattern.compile("(\\bupdate\\s.+?\\sset)\\s.+?\\swhere\\s", Pattern.DOTALL);
+  private final LatencyHistogram histogram = new LatencyHistogram();
+  private volatile String shortenedSQL;
+  private SlowExecution[] slowestExecutions;
+  private volatile Percentiles percentiles;
 
   LogEntry(String sql, String requestId, String sessionId) {
     this.sql = sql;
@@ -21,18 +22,110 @@ public class LogEntry {
     this.sessionId = sessionId;
   }
 
+  /**
+   * @see SlowSQLThresholds
+   */
   public boolean isSlow() {
-    return totalDuration.get() > SLOW_TOTAL_SQL_THRESHOLD_IN_MS ||
-        totalDuration.get()/count.get() > SLOW_AVERAGE_SQL_THRESHOLD_IN_MS;
+    return SlowSQLThresholds.current.isSlow(this);
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getTotalDurationNanos() {
+    return totalDurationNanos.get();
+  }
+
+  /**
+   * @param percentile e.g. 50, 90 or 99
+   * @see LatencyHistogram#getPercentileNanos(double)
+   */
+  public long getPercentileNanos(double percentile) {
+    return histogram.getPercentileNanos(percentile);
+  }
+
+  /**
+   * Percentiles of one snapshot of the histogram, computed again only after new executions, so that
+   * evaluating several percentile thresholds for every execution doesn't scan the histogram each time.
+   *
+   * @param percentiles in ascending order, e.g. 50, 90, 99
+   * @see LatencyHistogram#getPercentilesNanos(double...)
+   */
+  long[] getPercentilesNanos(double... percentiles) {
+    // read count before the histogram, which is recorded first by addExecution
+    long count = getCount();
+    Percentiles result = this.percentiles;
+    if (result == null || result.count != count || !Arrays.equals(result.percentiles, percentiles)) {
+      this.percentiles = result = new Percentiles(count, percentiles, histogram.getPercentilesNanos(percentiles));
+    }
+    return result.nanos;
+  }
+
+  public long getMaxNanos() {
+    return histogram.getMaxNanos();
   }
 
   public String getShortenedSQL() {
-    String result = shortenSelect.matcher(sql).replaceAll("select ... from ");
-    return shortenUpdate.matcher(result).replaceAll("$1 ... where ").trim();
+    String result = shortenedSQL;
+    if (result == null) {
+      shortenedSQL = result = SqlFingerprint.shorten(sql);
+    }
+    return result;
+  }
+
+  /**
+   * @return execution plan captured for a slow execution of this SQL, or null
+   * @see ExecutionPlans
+   */
+  public String getExecutionPlan() {
+    return ExecutionPlans.current.get(sql);
+  }
+
+  /**
+   * @return slowest executions with captured parameters, slowest first
+   * @see BindCapture
+   */
+  public synchronized List<SlowExecution> getSlowestExecutions() {
+    if (slowestExecutions == null) return new ArrayList<>();
+    List<SlowExecution> result = new ArrayList<>(Arrays.asList(slowestExecutions));
+    result.removeIf(execution -> execution == null);
+    return result;
   }
 
-  public void addExecution(long duration) {
-    totalDuration.addAndGet(duration);
+  public void addExecution(long durationNanos) {
+    histogram.record(durationNanos);
+    totalDurationNanos.addAndGet(durationNanos);
     count.incrementAndGet();
   }
+
+  /**
+   * Keep parameters of an execution if it's among the {@code capacity} slowest ones.
+   */
+  synchronized void addSlowExecution(long durationNanos, String[] binds, int capacity) {
+    if (capacity <= 0) return;
+    if (slowestExecutions == null || slowestExecutions.length != capacity) {
+      slowestExecutions = slowestExecutions == null ? new SlowExecution[capacity] : Arrays.copyOf(slowestExecutions, capacity);
+    }
+    int i = capacity - 1;
+    if (slowestExecutions[i] != null && slowestExecutions[i].durationNanos >= durationNanos) return;
+    // insertion into the array sorted by duration, descending
+    while (i > 0 && (slowestExecutions[i - 1] == null || slowestExecutions[i - 1].durationNanos < durationNanos)) {
+      slowestExecutions[i] = slowestExecutions[i - 1];
+      i--;
+    }
+    slowestExecutions[i] = new SlowExecution(durationNanos, binds);
+  }
+
+  private static final class Percentiles {
+    final long count;
+    final double[] percentiles;
+    final long[] nanos;
+
+    Percentiles(long count, double[] percentiles, long[] nanos) {
+      this.count = count;
+      this.percentiles = percentiles;
+      this.nanos = nanos;
+    }
+  }
 }
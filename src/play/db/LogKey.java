@@ -0,0 +1,34 @@
+package play.db;
+
+/**
+ * Key of a {@link LogEntry} in {@link SlowSQLHelper}, with the hash of the
+ * (possibly long) SQL computed once instead of on every cache lookup.
+ */
+final class LogKey {
+  private final String sessionId;
+  private final String request;
+  private final String sql;
+  private final int hash;
+
+  LogKey(String sessionId, String request, String sql) {
+    this.sessionId = sessionId;
+    this.request = request;
+    this.sql = sql;
+    this.hash = 31 * (31 * sessionId.hashCode() + request.hashCode()) + sql.hashCode();
+  }
+
+  @Override public int hashCode() {
+    return hash;
+  }
+
+  @Override public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof LogKey)) return false;
+    LogKey other = (LogKey) o;
+    return hash == other.hash && sql.equals(other.sql) && request.equals(other.request) && sessionId.equals(other.sessionId);
+  }
+
+  @Override public String toString() {
+    return sessionId + '|' + request + '|' + sql;
+  }
+}
@@ -1,38 +1,58 @@
 package play.db;
 
 import javax.sql.DataSource;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 
-import static java.lang.reflect.Proxy.newProxyInstance;
-import static play.db.Reflection.invokeUnwrappingExceptions;
-
-public class LoggingConnectionDecorator implements InvocationHandler {
-  private final Connection connection;
+public class LoggingConnectionDecorator extends DelegatingConnection {
+  /**
+   * DataSource the connection came from, used to capture execution plans, may be null
+   */
+  final DataSource dataSource;
 
   LoggingConnectionDecorator(Connection connection) {
-    this.connection = connection;
+    this(connection, null);
+  }
+
+  LoggingConnectionDecorator(Connection connection, DataSource dataSource) {
+    super(connection);
+    this.dataSource = dataSource;
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql) throws SQLException {
+    return new LoggingStatementDecorator(this, connection.prepareStatement(sql), sql);
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+    return new LoggingStatementDecorator(this, connection.prepareStatement(sql, resultSetType, resultSetConcurrency), sql);
   }
 
-  @Override public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-    Object result = invokeUnwrappingExceptions(method, connection, args);
-    if ("prepareStatement".equals(method.getName())) {
-      return newProxyInstance(PreparedStatement.class.getClassLoader(),
-          new Class<?>[] {PreparedStatement.class}, new LoggingStatementDecorator((PreparedStatement) result, (String) args[0]));
-    }
-    return result;
+  @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    return new LoggingStatementDecorator(this, connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), sql);
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+    return new LoggingStatementDecorator(this, connection.prepareStatement(sql, autoGeneratedKeys), sql);
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+    return new LoggingStatementDecorator(this, connection.prepareStatement(sql, columnIndexes), sql);
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+    return new LoggingStatementDecorator(this, connection.prepareStatement(sql, columnNames), sql);
   }
 
   public static DataSource loggingConnectionDataSourceProxy(DataSource datasource) {
-    return (DataSource) Proxy.newProxyInstance(datasource.getClass().getClassLoader(), new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
-      Object result = invokeUnwrappingExceptions(method, datasource, args);
-      if ("getConnection".equals(method.getName())) {
-        return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, new LoggingConnectionDecorator((Connection) result));
+    return new DelegatingDataSource(datasource) {
+      @Override public Connection getConnection() throws SQLException {
+        return new LoggingConnectionDecorator(super.getConnection(), datasource);
+      }
+
+      @Override public Connection getConnection(String username, String password) throws SQLException {
+        return new LoggingConnectionDecorator(super.getConnection(username, password), datasource);
       }
-      return result;
-    });
+    };
   }
 }
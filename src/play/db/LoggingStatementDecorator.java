@@ -1,38 +1,386 @@
 package play.db;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
 import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
 
-import static play.db.Reflection.invokeUnwrappingExceptions;
+class LoggingStatementDecorator extends DelegatingPreparedStatement {
+  private final LoggingConnectionDecorator connection;
+  private final String sql;
+  private final boolean captureBinds = BindCapture.current.enabled;
+  private BindSlots binds;
 
-class LoggingStatementDecorator implements InvocationHandler {
-  private PreparedStatement statement;
-  private String sql;
-
-  LoggingStatementDecorator(PreparedStatement statement, String sql) {
-    this.statement = statement;
+  LoggingStatementDecorator(LoggingConnectionDecorator connection, PreparedStatement statement, String sql) {
+    super(statement);
+    this.connection = connection;
     this.sql = sql;
   }
 
-  @Override public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-    switch (method.getName()) {
-      case "executeBatch":
-      case "executeQuery":
-      case "executeUpdate":
-        return invokeWithLogging(method, args);
-      default:
-        return invokeUnwrappingExceptions(method, statement, args);
+  @Override public LoggingConnectionDecorator getConnection() {
+    return connection;
+  }
+
+  @Override public void setNull(int parameterIndex, int sqlType) throws SQLException {
+    if (captureBinds) binds().setNull(parameterIndex);
+    statement.setNull(parameterIndex, sqlType);
+  }
+
+  @Override public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+    if (captureBinds) binds().setBoolean(parameterIndex, x);
+    statement.setBoolean(parameterIndex, x);
+  }
+
+  @Override public void setByte(int parameterIndex, byte x) throws SQLException {
+    if (captureBinds) binds().setLong(parameterIndex, x);
+    statement.setByte(parameterIndex, x);
+  }
+
+  @Override public void setShort(int parameterIndex, short x) throws SQLException {
+    if (captureBinds) binds().setLong(parameterIndex, x);
+    statement.setShort(parameterIndex, x);
+  }
+
+  @Override public void setInt(int parameterIndex, int x) throws SQLException {
+    if (captureBinds) binds().setLong(parameterIndex, x);
+    statement.setInt(parameterIndex, x);
+  }
+
+  @Override public void setLong(int parameterIndex, long x) throws SQLException {
+    if (captureBinds) binds().setLong(parameterIndex, x);
+    statement.setLong(parameterIndex, x);
+  }
+
+  @Override public void setFloat(int parameterIndex, float x) throws SQLException {
+    if (captureBinds) binds().setDouble(parameterIndex, x);
+    statement.setFloat(parameterIndex, x);
+  }
+
+  @Override public void setDouble(int parameterIndex, double x) throws SQLException {
+    if (captureBinds) binds().setDouble(parameterIndex, x);
+    statement.setDouble(parameterIndex, x);
+  }
+
+  @Override public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setBigDecimal(parameterIndex, x);
+  }
+
+  @Override public void setString(int parameterIndex, String x) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setString(parameterIndex, x);
+  }
+
+  @Override public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setBytes(parameterIndex, x);
+  }
+
+  @Override public void setDate(int parameterIndex, Date x) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setDate(parameterIndex, x);
+  }
+
+  @Override public void setTime(int parameterIndex, Time x) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setTime(parameterIndex, x);
+  }
+
+  @Override public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setTimestamp(parameterIndex, x);
+  }
+
+  @Override public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setAsciiStream(parameterIndex, x, length);
+  }
+
+  @Override public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setUnicodeStream(parameterIndex, x, length);
+  }
+
+  @Override public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setBinaryStream(parameterIndex, x, length);
+  }
+
+  @Override public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setObject(parameterIndex, x, targetSqlType);
+  }
+
+  @Override public void setObject(int parameterIndex, Object x) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setObject(parameterIndex, x);
+  }
+
+  @Override public void setCharacterStream(int parameterIndex, Reader x, int length) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setCharacterStream(parameterIndex, x, length);
+  }
+
+  @Override public void setRef(int parameterIndex, Ref x) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "ref");
+    statement.setRef(parameterIndex, x);
+  }
+
+  @Override public void setBlob(int parameterIndex, Blob x) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "blob");
+    statement.setBlob(parameterIndex, x);
+  }
+
+  @Override public void setClob(int parameterIndex, Clob x) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "clob");
+    statement.setClob(parameterIndex, x);
+  }
+
+  @Override public void setArray(int parameterIndex, Array x) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "array");
+    statement.setArray(parameterIndex, x);
+  }
+
+  @Override public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setDate(parameterIndex, x, cal);
+  }
+
+  @Override public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setTime(parameterIndex, x, cal);
+  }
+
+  @Override public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setTimestamp(parameterIndex, x, cal);
+  }
+
+  @Override public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+    if (captureBinds) binds().setNull(parameterIndex);
+    statement.setNull(parameterIndex, sqlType, typeName);
+  }
+
+  @Override public void setURL(int parameterIndex, URL x) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setURL(parameterIndex, x);
+  }
+
+  @Override public void setRowId(int parameterIndex, RowId x) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setRowId(parameterIndex, x);
+  }
+
+  @Override public void setNString(int parameterIndex, String x) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setNString(parameterIndex, x);
+  }
+
+  @Override public void setNCharacterStream(int parameterIndex, Reader x, long length) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setNCharacterStream(parameterIndex, x, length);
+  }
+
+  @Override public void setNClob(int parameterIndex, NClob x) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "clob");
+    statement.setNClob(parameterIndex, x);
+  }
+
+  @Override public void setClob(int parameterIndex, Reader x, long length) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setClob(parameterIndex, x, length);
+  }
+
+  @Override public void setBlob(int parameterIndex, InputStream x, long length) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setBlob(parameterIndex, x, length);
+  }
+
+  @Override public void setNClob(int parameterIndex, Reader x, long length) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setNClob(parameterIndex, x, length);
+  }
+
+  @Override public void setSQLXML(int parameterIndex, SQLXML x) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "xml");
+    statement.setSQLXML(parameterIndex, x);
+  }
+
+  @Override public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+  }
+
+  @Override public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setAsciiStream(parameterIndex, x, length);
+  }
+
+  @Override public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setBinaryStream(parameterIndex, x, length);
+  }
+
+  @Override public void setCharacterStream(int parameterIndex, Reader x, long length) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setCharacterStream(parameterIndex, x, length);
+  }
+
+  @Override public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setAsciiStream(parameterIndex, x);
+  }
+
+  @Override public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setBinaryStream(parameterIndex, x);
+  }
+
+  @Override public void setCharacterStream(int parameterIndex, Reader x) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setCharacterStream(parameterIndex, x);
+  }
+
+  @Override public void setNCharacterStream(int parameterIndex, Reader x) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setNCharacterStream(parameterIndex, x);
+  }
+
+  @Override public void setClob(int parameterIndex, Reader x) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setClob(parameterIndex, x);
+  }
+
+  @Override public void setBlob(int parameterIndex, InputStream x) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setBlob(parameterIndex, x);
+  }
+
+  @Override public void setNClob(int parameterIndex, Reader x) throws SQLException {
+    if (captureBinds) binds().setOpaque(parameterIndex, "stream");
+    statement.setNClob(parameterIndex, x);
+  }
+
+  @Override public void setObject(int parameterIndex, Object x, SQLType targetSqlType, int scaleOrLength) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+  }
+
+  @Override public void setObject(int parameterIndex, Object x, SQLType targetSqlType) throws SQLException {
+    if (captureBinds) binds().setObject(parameterIndex, x);
+    statement.setObject(parameterIndex, x, targetSqlType);
+  }
+
+  @Override public void clearParameters() throws SQLException {
+    if (binds != null) binds.clear();
+    statement.clearParameters();
+  }
+
+  private BindSlots binds() {
+    if (binds == null) binds = BindSlots.acquire();
+    return binds;
+  }
+
+  /**
+   * Return recorded parameters to the pool, called when the statement is closed.
+   */
+  void releaseBinds() {
+    if (binds != null) {
+      binds.release();
+      binds = null;
     }
   }
 
-  private Object invokeWithLogging(Method method, Object[] args) throws Throwable {
-    long now = System.currentTimeMillis();
+  @Override public void close() throws SQLException {
+    releaseBinds();
+    statement.close();
+  }
+
+  @Override public ResultSet executeQuery() throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeQuery();
+    }
+    finally {
+      log(start);
+    }
+  }
+
+  @Override public int executeUpdate() throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeUpdate();
+    }
+    finally {
+      log(start);
+    }
+  }
+
+  @Override public long executeLargeUpdate() throws SQLException {
+    long start = System.nanoTime();
     try {
-      return invokeUnwrappingExceptions(method, statement, args);
+      return statement.executeLargeUpdate();
     }
     finally {
-      SlowSQLHelper.addSlowSQLLog(sql, System.currentTimeMillis() - now);
+      log(start);
     }
   }
+
+  @Override public boolean execute() throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.execute();
+    }
+    finally {
+      log(start);
+    }
+  }
+
+  @Override public int[] executeBatch() throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeBatch();
+    }
+    finally {
+      logBatch(start);
+    }
+  }
+
+  @Override public long[] executeLargeBatch() throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeBatch();
+    }
+    finally {
+      logBatch(start);
+    }
+  }
+
+  private void log(long start) {
+    long durationNanos = System.nanoTime() - start;
+    String[] slowBinds = captureBinds ? BindCapture.current.capture(sql, durationNanos, binds) : null;
+    SlowSQLHelper.addSlowSQLLog(sql, durationNanos, slowBinds);
+    ExecutionPlans.current.sample(sql, durationNanos, connection.dataSource);
+  }
+
+  private void logBatch(long start) {
+    long durationNanos = System.nanoTime() - start;
+    SlowSQLHelper.addSlowSQLLog(sql, durationNanos);
+    ExecutionPlans.current.sample(sql, durationNanos, connection.dataSource);
+  }
 }
@@ -0,0 +1,233 @@
+package play.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Publishes SQL, pool and lazy connection metrics in Prometheus text format and as JMX MBeans.
+ *
+ * <p>All metrics come from counters aggregated as executions are recorded
+ * ({@link StatementMetrics}, {@link ConnectionStats}, {@link LazyConnectionDataSourceProxy}),
+ * so exporting costs O(number of metrics), independent of the size of the slow SQL log.
+ */
+public class MetricsExporter {
+  private static final Logger logger = LoggerFactory.getLogger(MetricsExporter.class);
+  private static final String DOMAIN = "play.db";
+  private static final int MAX_SQL_LABEL_LENGTH = 200;
+
+  private static final List<ObjectName> registered = new ArrayList<>();
+
+  private MetricsExporter() {
+  }
+
+  /**
+   * @param dataSources by db name
+   * @return metrics in Prometheus text exposition format, version 0.0.4
+   */
+  public static String prometheus(Map<String, DataSource> dataSources) {
+    StringBuilder out = new StringBuilder(4096);
+
+    // every metric family is printed as one group: HELP and TYPE followed by all of its samples
+    Collection<StatementMetrics> statements = StatementMetrics.all();
+    help(out, "playdb_sql_info", "gauge", "SQL of statement fingerprint ids, always 1");
+    for (StatementMetrics statement : statements) {
+      sample(out, "playdb_sql_info", idLabel(statement) + ",sql=\"" + escape(statement.getSql()) + "\"", 1);
+    }
+    help(out, "playdb_sql_executions_total", "counter", "SQL executions by statement fingerprint id");
+    for (StatementMetrics statement : statements) {
+      sample(out, "playdb_sql_executions_total", idLabel(statement), statement.getCount());
+    }
+    help(out, "playdb_sql_duration_seconds", "summary", "SQL execution time by statement fingerprint id");
+    for (StatementMetrics statement : statements) {
+      String labels = idLabel(statement);
+      sample(out, "playdb_sql_duration_seconds", labels + ",quantile=\"0.5\"", seconds(statement.getP50Nanos()));
+      sample(out, "playdb_sql_duration_seconds", labels + ",quantile=\"0.9\"", seconds(statement.getP90Nanos()));
+      sample(out, "playdb_sql_duration_seconds", labels + ",quantile=\"0.99\"", seconds(statement.getP99Nanos()));
+      sample(out, "playdb_sql_duration_seconds_sum", labels, seconds(statement.getTotalDurationNanos()));
+      sample(out, "playdb_sql_duration_seconds_count", labels, statement.getCount());
+    }
+    help(out, "playdb_sql_events_dropped_total", "counter", "SQL executions not tracked because the event buffer was full");
+    sample(out, "playdb_sql_events_dropped_total", null, SlowSQLHelper.droppedSQLCount());
+
+    QueryResultCache resultCache = QueryResultCache.current;
+    if (resultCache.enabled) {
+      help(out, "playdb_result_cache_requests_total", "counter", "Executions of cacheable queries by result");
+      sample(out, "playdb_result_cache_requests_total", "result=\"hit\"", resultCache.hits());
+      sample(out, "playdb_result_cache_requests_total", "result=\"miss\"", resultCache.misses());
+      help(out, "playdb_result_cache_evictions_total", "counter", "Cached query results evicted because of size or TTL");
+      sample(out, "playdb_result_cache_evictions_total", null, resultCache.evictions());
+      help(out, "playdb_result_cache_entries", "gauge", "Cached query results");
+      sample(out, "playdb_result_cache_entries", null, resultCache.size());
+    }
+
+    Map<String, DataSourceMetrics> pools = new LinkedHashMap<>();
+    Map<String, DataSourceMetrics> lazyDataSources = new LinkedHashMap<>();
+    Map<String, ConcurrencyLimiter> limiters = new LinkedHashMap<>();
+    for (Map.Entry<String, DataSource> entry : dataSources.entrySet()) {
+      String labels = "datasource=\"" + escape(entry.getKey()) + "\"";
+      DataSourceMetrics metrics = new DataSourceMetrics(entry.getValue());
+      if (metrics.getTotalConnections() >= 0) pools.put(labels, metrics);
+      LazyConnectionDataSourceProxy lazyDataSource = metrics.getLazyDataSource();
+      if (lazyDataSource != null) {
+        lazyDataSources.put(labels, metrics);
+        if (lazyDataSource.getConcurrencyLimiter() != null) limiters.put(labels, lazyDataSource.getConcurrencyLimiter());
+      }
+    }
+
+    help(out, "playdb_pool_connections", "gauge", "Connections of the pool by state");
+    pools.forEach((labels, pool) -> {
+      sample(out, "playdb_pool_connections", labels + ",state=\"active\"", pool.getActiveConnections());
+      sample(out, "playdb_pool_connections", labels + ",state=\"idle\"", pool.getIdleConnections());
+    });
+    help(out, "playdb_pool_threads_awaiting_connection", "gauge", "Threads waiting for a connection from the pool");
+    pools.forEach((labels, pool) -> sample(out, "playdb_pool_threads_awaiting_connection", labels, pool.getThreadsAwaitingConnection()));
+    help(out, "playdb_pool_max_connections", "gauge", "Maximum size of the pool");
+    pools.forEach((labels, pool) -> sample(out, "playdb_pool_max_connections", labels, pool.getMaximumPoolSize()));
+
+    help(out, "playdb_lazy_connections_created_total", "counter", "Lazy connection handles handed out");
+    lazyDataSources.forEach((labels, lazy) -> sample(out, "playdb_lazy_connections_created_total", labels, lazy.getLazyConnectionsCreated()));
+    help(out, "playdb_lazy_connections_fetched_total", "counter", "Physical connections fetched by lazy connection handles");
+    lazyDataSources.forEach((labels, lazy) -> sample(out, "playdb_lazy_connections_fetched_total", labels, lazy.getConnectionsFetched()));
+    help(out, "playdb_lazy_connections_unused_total", "counter", "Lazy connection handles closed without fetching a physical connection");
+    lazyDataSources.forEach((labels, lazy) -> sample(out, "playdb_lazy_connections_unused_total", labels, lazy.getFetchesAvoided()));
+    help(out, "playdb_lazy_connection_hold_seconds_average", "gauge", "Average time a physical connection is held by a lazy connection handle");
+    lazyDataSources.forEach((labels, lazy) -> sample(out, "playdb_lazy_connection_hold_seconds_average", labels, seconds(lazy.getLazyDataSource().getAverageHoldNanos())));
+
+    help(out, "playdb_concurrency_limit", "gauge", "Physical connections that may be held at the same time");
+    limiters.forEach((labels, limiter) -> sample(out, "playdb_concurrency_limit", labels, limiter.getLimit()));
+    help(out, "playdb_concurrency_in_flight", "gauge", "Physical connections held now, counted by the concurrency limiter");
+    limiters.forEach((labels, limiter) -> sample(out, "playdb_concurrency_in_flight", labels, limiter.getInFlight()));
+    help(out, "playdb_concurrency_shed_total", "counter", "Connection fetches rejected because the concurrency limit was reached");
+    limiters.forEach((labels, limiter) -> sample(out, "playdb_concurrency_shed_total", labels, limiter.getShedCount()));
+
+    Map<String, ConnectionStats> byAction = ConnectionStats.byAction();
+    help(out, "playdb_connection_acquire_seconds", "summary", "Time to get a connection from the pool by action");
+    byAction.forEach((action, stats) -> quantiles(out, "playdb_connection_acquire_seconds", actionLabel(action), stats.getAcquireTime()));
+    help(out, "playdb_connection_hold_seconds", "summary", "Time a connection is held by action");
+    byAction.forEach((action, stats) -> quantiles(out, "playdb_connection_hold_seconds", actionLabel(action), stats.getHoldTime()));
+    return out.toString();
+  }
+
+  private static void quantiles(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+    sample(out, name, labels + ",quantile=\"0.5\"", seconds(histogram.getPercentileNanos(50)));
+    sample(out, name, labels + ",quantile=\"0.99\"", seconds(histogram.getPercentileNanos(99)));
+    sample(out, name + "_count", labels, histogram.getCount());
+  }
+
+  private static String idLabel(StatementMetrics statement) {
+    return "id=\"" + statement.getId() + "\"";
+  }
+
+  private static String actionLabel(String action) {
+    return "action=\"" + escape(action) + "\"";
+  }
+
+  private static void help(StringBuilder out, String name, String type, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, double value) {
+    out.append(name);
+    if (labels != null) out.append('{').append(labels).append('}');
+    out.append(' ').append(value).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, long value) {
+    out.append(name);
+    if (labels != null) out.append('{').append(labels).append('}');
+    out.append(' ').append(value).append('\n');
+  }
+
+  private static double seconds(long nanos) {
+    return nanos / (double) SECONDS.toNanos(1);
+  }
+
+  static String escape(String value) {
+    if (value.length() > MAX_SQL_LABEL_LENGTH) value = value.substring(0, MAX_SQL_LABEL_LENGTH) + "...";
+    StringBuilder result = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\\' || c == '"') result.append('\\').append(c);
+      else if (c == '\n') result.append("\\n");
+      else result.append(c);
+    }
+    return result.toString();
+  }
+
+  /**
+   * Register "play.db:type=DataSource,name=..." MBean for every DataSource and "play.db:type=SQL" MBean.
+   */
+  public static synchronized void registerMBeans(Map<String, DataSource> dataSources) {
+    unregisterMBeans();
+    for (Map.Entry<String, DataSource> entry : dataSources.entrySet()) {
+      register("type=DataSource,name=" + ObjectName.quote(entry.getKey()), new DataSourceMetrics(entry.getValue()));
+    }
+    register("type=SQL", new SQLMetricsMXBean() {
+      @Override public long getDroppedEvents() {
+        return SlowSQLHelper.droppedSQLCount();
+      }
+
+      @Override public int getStatementCount() {
+        return StatementMetrics.all().size();
+      }
+
+      @Override public List<StatementMetrics> getStatements() {
+        return new ArrayList<>(StatementMetrics.all());
+      }
+
+      @Override public long getResultCacheHits() {
+        return QueryResultCache.current.hits();
+      }
+
+      @Override public long getResultCacheMisses() {
+        return QueryResultCache.current.misses();
+      }
+
+      @Override public long getResultCacheEvictions() {
+        return QueryResultCache.current.evictions();
+      }
+
+      @Override public long getResultCacheSize() {
+        return QueryResultCache.current.size();
+      }
+    });
+  }
+
+  public static synchronized void unregisterMBeans() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName name : registered) {
+      try {
+        server.unregisterMBean(name);
+      }
+      catch (JMException e) {
+        logger.warn("Failed to unregister MBean " + name, e);
+      }
+    }
+    registered.clear();
+  }
+
+  private static void register(String properties, Object mbean) {
+    try {
+      ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+      ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+      registered.add(name);
+    }
+    catch (JMException e) {
+      logger.warn("Failed to register MBean " + properties, e);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package play.db;
+
+import java.util.Arrays;
+
+/**
+ * Statement executed more times within a single Play request or job than configured
+ * by "trackSlowSQL.nPlusOne.threshold" - typically lazy loading of entities in a loop.
+ */
+public class NPlusOneQuery {
+  private static final String PACKAGE = NPlusOneQuery.class.getPackage().getName() + '.';
+
+  public final String sql;
+  public final String request;
+  public final String sessionId;
+  private final int count;
+  private final long totalDurationNanos;
+  private final StackTraceElement[] callSite;
+
+  NPlusOneQuery(String sql, String requestId, String sessionId, int count, long totalDurationNanos, StackTraceElement[] callSite) {
+    this.sql = sql;
+    this.request = requestId;
+    this.sessionId = sessionId;
+    this.count = count;
+    this.totalDurationNanos = totalDurationNanos;
+    this.callSite = callSite;
+  }
+
+  /**
+   * @return stack of the current thread without play-db frames
+   */
+  static StackTraceElement[] captureCallSite() {
+    StackTraceElement[] stack = new Throwable().getStackTrace();
+    int start = 0;
+    while (start < stack.length && stack[start].getClassName().startsWith(PACKAGE)) start++;
+    return Arrays.copyOfRange(stack, start, stack.length);
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public long getTotalDurationNanos() {
+    return totalDurationNanos;
+  }
+
+  /**
+   * @return stack of the execution that exceeded the threshold, the code executing the statement in a loop
+   */
+  public StackTraceElement[] getCallSite() {
+    return callSite.clone();
+  }
+
+  public String getShortenedSQL() {
+    return SqlFingerprint.shorten(sql);
+  }
+
+  @Override public String toString() {
+    StringBuilder result = new StringBuilder()
+        .append("N+1 query in ").append(request).append(": ")
+        .append(count).append(" executions, ").append(totalDurationNanos / 1000000).append(" ms: ").append(sql);
+    for (StackTraceElement element : callSite) result.append("\n\tat ").append(element);
+    return result.toString();
+  }
+}
@@ -0,0 +1,328 @@
+package play.db;
+
+import javax.sql.DataSource;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Connection that makes the application's JDBC usage cheaper for the database, each optimization opt-in
+ * in application.conf and independent of slow SQL tracking:
+ * <ul>
+ * <li>{@link AutoBatching}: repeated single-row DML within a transaction is executed as a JDBC batch,
+ * <li>{@link QueryResultCache}: results of whitelisted queries are kept for a while,
+ * <li>{@link AdaptiveFetchSize}: fetch size follows the number of rows queries return.
+ * </ul>
+ *
+ * @see OptimizingStatementDecorator
+ */
+public class OptimizingConnectionDecorator extends DelegatingConnection {
+  private Set<String> uncommittedTables;
+
+  private PreparedStatement pendingBatch;
+  private String pendingBatchSql;
+  private int pendingBatchSize;
+  private boolean pendingBatchClosed;
+  private boolean batchingDisabled;
+
+  /**
+   * DataSource the connection came from, part of the key of cached results, may be null
+   */
+  final DataSource dataSource;
+
+  /**
+   * User the connection was requested for, null for the default user of the DataSource
+   */
+  final String username;
+
+  /**
+   * Lazy proxy of the DataSource, if any, that may route read-only connections to replicas
+   */
+  private final LazyConnectionDataSourceProxy lazyDataSource;
+
+  OptimizingConnectionDecorator(Connection connection) {
+    this(connection, null, null);
+  }
+
+  OptimizingConnectionDecorator(Connection connection, DataSource dataSource, String username) {
+    super(connection);
+    this.dataSource = dataSource;
+    this.username = username;
+    this.lazyDataSource = dataSource == null ? null : new DataSourceMetrics(dataSource).getLazyDataSource();
+  }
+
+  /**
+   * Load configuration of all optimizations.
+   */
+  public static void configure(Properties configuration) {
+    AdaptiveFetchSize.current = AdaptiveFetchSize.load(configuration);
+    QueryResultCache.current = QueryResultCache.load(configuration);
+    AutoBatching.current = AutoBatching.load(configuration);
+  }
+
+  /**
+   * @return whether any optimization is enabled, i.e. connections need to be decorated
+   */
+  public static boolean isEnabled() {
+    return AdaptiveFetchSize.current.enabled || QueryResultCache.current.enabled || AutoBatching.current.enabled;
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql) throws SQLException {
+    AutoBatching batching = AutoBatching.current;
+    if (batching.enabled && !batchingDisabled && batching.isBatchable(sql)) {
+      if (pendingBatch != null && pendingBatchClosed && pendingBatchSql.equals(sql)) {
+        pendingBatchClosed = false;
+        return new BatchingStatementDecorator(this, pendingBatch, sql);
+      }
+      return new BatchingStatementDecorator(this, connection.prepareStatement(sql), sql);
+    }
+    return decorate(connection.prepareStatement(sql), sql);
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+    return decorate(connection.prepareStatement(sql, resultSetType, resultSetConcurrency), sql, resultSetConcurrency);
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    return decorate(connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), sql, resultSetConcurrency);
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+    return decorate(connection.prepareStatement(sql, autoGeneratedKeys), sql);
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+    return decorate(connection.prepareStatement(sql, columnIndexes), sql);
+  }
+
+  @Override public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+    return decorate(connection.prepareStatement(sql, columnNames), sql);
+  }
+
+  private PreparedStatement decorate(PreparedStatement statement, String sql) {
+    return decorate(statement, sql, ResultSet.CONCUR_READ_ONLY);
+  }
+
+  private PreparedStatement decorate(PreparedStatement statement, String sql, int resultSetConcurrency) {
+    QueryResultCache cache = QueryResultCache.current;
+    String[] tables = cache.enabled && resultSetConcurrency == ResultSet.CONCUR_READ_ONLY ? cache.cacheableTables(sql) : null;
+    return tables == null ? new OptimizingStatementDecorator(this, statement, sql) : new CachingStatementDecorator(this, statement, sql, tables);
+  }
+
+  /**
+   * Called after a statement is executed, makes cached results of the table it modified stale.
+   * Within a transaction, they are made stale again when it ends, and not used by this connection until then.
+   */
+  void modified(String sql) throws SQLException {
+    String table = SqlTables.modified(sql);
+    if (table == null) return;
+    QueryResultCache.tableModified(table);
+    if (!connection.getAutoCommit()) {
+      if (uncommittedTables == null) uncommittedTables = new HashSet<>();
+      uncommittedTables.add(table);
+    }
+  }
+
+  /**
+   * Replicas may lag behind, so their results are not cached: a cached result would outlive a later change.
+   *
+   * @return true if queries of this connection may be answered by a replica
+   */
+  boolean mayReadReplica() throws SQLException {
+    if (lazyDataSource == null || lazyDataSource.getReplicaDataSources().isEmpty()) return false;
+    Connection target = connection;
+    while (target instanceof DelegatingConnection) target = ((DelegatingConnection) target).getTargetConnection();
+    return target instanceof LazyConnection ? ((LazyConnection) target).mayReadReplica() : connection.isReadOnly();
+  }
+
+  boolean hasUncommittedChanges(String[] tables) {
+    if (uncommittedTables == null) return false;
+    for (String table : tables) {
+      if (uncommittedTables.contains(table)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Add current parameters of given statement to the batch, executing the pending batch of another statement first.
+   *
+   * @return false if the statement must be executed now, as the connection is in auto-commit mode
+   */
+  boolean addToBatch(PreparedStatement statement, String sql) throws SQLException {
+    if (batchingDisabled || connection.getAutoCommit()) return false;
+    if (pendingBatch != null && pendingBatch != statement) flushBatch();
+    statement.addBatch();
+    pendingBatch = statement;
+    pendingBatchSql = sql;
+    if (++pendingBatchSize >= AutoBatching.current.size) flushBatch();
+    return true;
+  }
+
+  /**
+   * Execute the pending batch, if any. Called before any other statement of the connection is executed.
+   */
+  void flushBatch() throws SQLException {
+    if (pendingBatch == null) return;
+    PreparedStatement statement = pendingBatch;
+    String sql = pendingBatchSql;
+    boolean close = pendingBatchClosed;
+    pendingBatch = null;
+    pendingBatchSql = null;
+    pendingBatchSize = 0;
+    pendingBatchClosed = false;
+
+    try {
+      statement.executeBatch();
+    }
+    finally {
+      if (QueryResultCache.current.enabled) modified(sql);
+      if (close) statement.close();
+    }
+  }
+
+  private void discardBatch() throws SQLException {
+    if (pendingBatch == null) return;
+    PreparedStatement statement = pendingBatch;
+    boolean close = pendingBatchClosed;
+    pendingBatch = null;
+    pendingBatchSql = null;
+    pendingBatchSize = 0;
+    pendingBatchClosed = false;
+    if (close) statement.close();
+    else statement.clearBatch();
+  }
+
+  /**
+   * Called when the application closes a batchable statement, which is kept open until its pending batch is executed.
+   */
+  void closeBatchable(PreparedStatement statement) throws SQLException {
+    if (statement == pendingBatch) pendingBatchClosed = true;
+    else statement.close();
+  }
+
+  /**
+   * Statements not created by {@link #prepareStatement(String)} would not see rows of the pending batch.
+   */
+  private void disableBatching() throws SQLException {
+    if (!batchingDisabled && AutoBatching.current.enabled) {
+      flushBatch();
+      batchingDisabled = true;
+    }
+  }
+
+  @Override public Statement createStatement() throws SQLException {
+    disableBatching();
+    return connection.createStatement();
+  }
+
+  @Override public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+    disableBatching();
+    return connection.createStatement(resultSetType, resultSetConcurrency);
+  }
+
+  @Override public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    disableBatching();
+    return connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override public CallableStatement prepareCall(String sql) throws SQLException {
+    disableBatching();
+    return connection.prepareCall(sql);
+  }
+
+  @Override public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+    disableBatching();
+    return connection.prepareCall(sql, resultSetType, resultSetConcurrency);
+  }
+
+  @Override public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    disableBatching();
+    return connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override public Savepoint setSavepoint() throws SQLException {
+    flushBatch();
+    return connection.setSavepoint();
+  }
+
+  @Override public Savepoint setSavepoint(String name) throws SQLException {
+    flushBatch();
+    return connection.setSavepoint(name);
+  }
+
+  @Override public void rollback(Savepoint savepoint) throws SQLException {
+    flushBatch();
+    connection.rollback(savepoint);
+  }
+
+  private void transactionEnded() {
+    if (uncommittedTables != null) {
+      QueryResultCache.tablesModified(uncommittedTables);
+      uncommittedTables = null;
+    }
+  }
+
+  @Override public void commit() throws SQLException {
+    try {
+      flushBatch();
+      connection.commit();
+    }
+    finally {
+      transactionEnded();
+    }
+  }
+
+  @Override public void rollback() throws SQLException {
+    try {
+      discardBatch();
+      connection.rollback();
+    }
+    finally {
+      transactionEnded();
+    }
+  }
+
+  @Override public void setAutoCommit(boolean autoCommit) throws SQLException {
+    try {
+      if (autoCommit) flushBatch();
+      connection.setAutoCommit(autoCommit);
+    }
+    finally {
+      if (autoCommit) transactionEnded();
+    }
+  }
+
+  @Override public void close() throws SQLException {
+    try {
+      // some drivers (e.g. Oracle) commit on close
+      flushBatch();
+    }
+    finally {
+      try {
+        connection.close();
+      }
+      finally {
+        transactionEnded();
+      }
+    }
+  }
+
+  public static DataSource optimizingConnectionDataSourceProxy(DataSource datasource) {
+    return new DelegatingDataSource(datasource) {
+      @Override public Connection getConnection() throws SQLException {
+        return new OptimizingConnectionDecorator(super.getConnection(), datasource, null);
+      }
+
+      @Override public Connection getConnection(String username, String password) throws SQLException {
+        return new OptimizingConnectionDecorator(super.getConnection(username, password), datasource, username);
+      }
+    };
+  }
+}
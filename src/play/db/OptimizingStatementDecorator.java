@@ -0,0 +1,101 @@
+package play.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Statement of an {@link OptimizingConnectionDecorator}: executes the pending batch of the connection first,
+ * applies {@link AdaptiveFetchSize adaptive fetch size} to queries and makes cached results of modified tables stale.
+ */
+class OptimizingStatementDecorator extends DelegatingPreparedStatement {
+  private final OptimizingConnectionDecorator connection;
+  private final String sql;
+  private boolean fetchSizeSet;
+  private int defaultFetchSize = -1;
+
+  OptimizingStatementDecorator(OptimizingConnectionDecorator connection, PreparedStatement statement, String sql) {
+    super(statement);
+    this.connection = connection;
+    this.sql = sql;
+  }
+
+  @Override public OptimizingConnectionDecorator getConnection() {
+    return connection;
+  }
+
+  @Override public void setFetchSize(int rows) throws SQLException {
+    fetchSizeSet = true;
+    statement.setFetchSize(rows);
+  }
+
+  @Override public ResultSet executeQuery() throws SQLException {
+    connection.flushBatch();
+    AdaptiveFetchSize adaptiveFetchSize = AdaptiveFetchSize.current;
+    if (adaptiveFetchSize.enabled && !fetchSizeSet && defaultFetchSize < 0) defaultFetchSize = statement.getFetchSize();
+    // fetch size 0 of the driver (PostgreSQL, MySQL, H2) means all rows in one round-trip
+    if (!adaptiveFetchSize.enabled || fetchSizeSet || defaultFetchSize <= 0) {
+      return statement.executeQuery();
+    }
+
+    String fingerprint = SqlFingerprint.of(sql);
+    int fetchSize = adaptiveFetchSize.fetchSize(fingerprint);
+    if (fetchSize > 0 && fetchSize != defaultFetchSize) statement.setFetchSize(fetchSize);
+    else fetchSize = defaultFetchSize;
+    return new RowCountingResultSet(this, statement.executeQuery(), fingerprint, defaultFetchSize, fetchSize);
+  }
+
+  @Override public int executeUpdate() throws SQLException {
+    connection.flushBatch();
+    try {
+      return statement.executeUpdate();
+    }
+    finally {
+      modified();
+    }
+  }
+
+  @Override public long executeLargeUpdate() throws SQLException {
+    connection.flushBatch();
+    try {
+      return statement.executeLargeUpdate();
+    }
+    finally {
+      modified();
+    }
+  }
+
+  @Override public boolean execute() throws SQLException {
+    connection.flushBatch();
+    try {
+      return statement.execute();
+    }
+    finally {
+      modified();
+    }
+  }
+
+  @Override public int[] executeBatch() throws SQLException {
+    connection.flushBatch();
+    try {
+      return statement.executeBatch();
+    }
+    finally {
+      modified();
+    }
+  }
+
+  @Override public long[] executeLargeBatch() throws SQLException {
+    connection.flushBatch();
+    try {
+      return statement.executeLargeBatch();
+    }
+    finally {
+      modified();
+    }
+  }
+
+  private void modified() throws SQLException {
+    if (QueryResultCache.current.enabled) connection.modified(sql);
+  }
+}
@@ -0,0 +1,117 @@
+package play.db;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.mvc.Http;
+import play.mvc.Scope;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.sql.Connection;
+import java.util.Objects;
+
+import static java.lang.invoke.MethodType.methodType;
+import static org.apache.commons.lang.StringUtils.substring;
+
+/**
+ * Sets Oracle end-to-end metrics (action, module and client id) of physical connections when
+ * they are fetched by lazy connections, so that DB side can see who is using them:
+ * action is the request id (set by RequestLogPlugin), module is the current thread and client id
+ * is the username in session.
+ *
+ * <p>{@code OracleConnection.setEndToEndMetrics} is resolved once as a {@link MethodHandle},
+ * and called only if the values differ from those last set on the same physical connection.
+ */
+public final class OracleEndToEndMetrics {
+  private static final Logger logger = LoggerFactory.getLogger(OracleEndToEndMetrics.class);
+  private static final String ORACLE_CONNECTION = "oracle.jdbc.OracleConnection";
+  private static final ThreadLocal<String[]> modules = new ThreadLocal<>();
+
+  private final Class<?> connectionClass;
+  private final MethodHandle setEndToEndMetrics;
+  private final int arrayLength;
+  private final int actionIndex;
+  private final int moduleIndex;
+  private final int clientIdIndex;
+  private final Cache<Connection, String[]> lastMetrics = CacheBuilder.newBuilder().weakKeys().build();
+
+  OracleEndToEndMetrics(Class<?> connectionClass) throws ReflectiveOperationException {
+    this.connectionClass = connectionClass;
+    arrayLength = connectionClass.getField("END_TO_END_STATE_INDEX_MAX").getInt(null);
+    actionIndex = connectionClass.getField("END_TO_END_ACTION_INDEX").getInt(null);
+    moduleIndex = connectionClass.getField("END_TO_END_MODULE_INDEX").getInt(null);
+    clientIdIndex = connectionClass.getField("END_TO_END_CLIENTID_INDEX").getInt(null);
+    setEndToEndMetrics = MethodHandles.publicLookup()
+        .findVirtual(connectionClass, "setEndToEndMetrics", methodType(void.class, String[].class, short.class))
+        .asType(methodType(void.class, Connection.class, String[].class, short.class));
+  }
+
+  /**
+   * @return end-to-end metrics of Oracle connections, or null if Oracle JDBC driver is not available
+   */
+  public static OracleEndToEndMetrics create() {
+    try {
+      return new OracleEndToEndMetrics(Class.forName(ORACLE_CONNECTION));
+    }
+    catch (ClassNotFoundException e) {
+      logger.warn("Oracle JDBC driver not found, end-to-end metrics are not set");
+      return null;
+    }
+    catch (ReflectiveOperationException e) {
+      logger.warn("Cannot access OracleConnection fields", e);
+      return null;
+    }
+  }
+
+  /**
+   * Set metrics of current request on given connection, if they changed since its last checkout.
+   * Failures are logged, not thrown.
+   */
+  public void apply(Connection connection) {
+    Http.Request request = Http.Request.current();
+    Scope.Session session = Scope.Session.current();
+    apply(connection,
+        request != null ? (String) request.args.get("requestId") : null,
+        module(),
+        session != null ? session.get("username") : null);
+  }
+
+  /**
+   * @return module of current thread, recomputed only if the thread was renamed
+   */
+  private static String module() {
+    String threadName = Thread.currentThread().getName();
+    String[] module = modules.get();
+    if (module == null || !module[0].equals(threadName)) {
+      module = new String[] {threadName, substring("IBANK/" + threadName, 0, 64)};
+      modules.set(module);
+    }
+    return module[1];
+  }
+
+  void apply(Connection connection, String action, String module, String clientId) {
+    try {
+      Connection oracleConnection = connectionClass.isInstance(connection) ? connection : (Connection) connection.unwrap(connectionClass);
+      String[] last = lastMetrics.getIfPresent(oracleConnection);
+      if (last != null && Objects.equals(last[actionIndex], action) &&
+          Objects.equals(last[moduleIndex], module) && Objects.equals(last[clientIdIndex], clientId)) {
+        return;
+      }
+
+      String[] metrics = new String[arrayLength];
+      metrics[actionIndex] = action;
+      metrics[moduleIndex] = module;
+      metrics[clientIdIndex] = clientId;
+      setEndToEndMetrics.invokeExact(oracleConnection, metrics, (short) 0);
+      lastMetrics.put(oracleConnection, metrics);
+    }
+    catch (Error e) {
+      throw e;
+    }
+    catch (Throwable e) {
+      logger.warn("Cannot set Oracle end-to-end metrics", e);
+    }
+  }
+}
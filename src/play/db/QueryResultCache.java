@@ -0,0 +1,233 @@
+package play.db;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.lang.StringUtils.isBlank;
+import static play.libs.Time.parseDuration;
+
+/**
+ * Keeps results of whitelisted queries, configurable in application.conf:
+ * <pre>
+ * db.resultCache.sql=(?i)^select .* from (currency|country|settings)\b
+ * db.resultCache.ttl=60s
+ * db.resultCache.maxBytes=16777216
+ * db.resultCache.maxRows=1000
+ * </pre>
+ * Queries of {@link java.sql.PreparedStatement}s whose SQL matches the regular expression are cached
+ * by DataSource, user, SQL and bound parameters. The cache is disabled unless the expression is set.
+ * Queries that may be answered by a replica are not cached, as replicas may lag behind.
+ *
+ * <p>Every table has a generation that is incremented whenever an insert, update, delete, merge or truncate
+ * of the table is executed (and again when its transaction ends) through a PreparedStatement of this node.
+ * A cached result remembers generations of its tables when the query started and is not used anymore
+ * once any of them changed, so invalidation costs O(1) regardless of the number of cached results.
+ * Connections with uncommitted changes of a table bypass the cache for queries of that table.
+ * Changes made by other nodes, or through views and triggers, are only seen after the TTL expires.
+ *
+ * @see CachingStatementDecorator
+ */
+final class QueryResultCache {
+  private static final String PREFIX = "db.resultCache.";
+
+  private static final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, String[]> cacheableTables = new ConcurrentHashMap<>();
+  private static final String[] NOT_CACHEABLE = new String[0];
+
+  static volatile QueryResultCache current = load(new Properties());
+
+  final boolean enabled;
+  final int maxRows;
+  private final Pattern sql;
+  private final Cache<Key, Entry> results;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  private QueryResultCache(Properties configuration) {
+    String regex = configuration.getProperty(PREFIX + "sql");
+    enabled = !isBlank(regex);
+    sql = enabled ? Pattern.compile(regex.trim()) : null;
+    maxRows = parseInt(configuration.getProperty(PREFIX + "maxRows", "1000").trim());
+    long ttlSeconds = parseDuration(configuration.getProperty(PREFIX + "ttl", "60s").trim());
+    long maxBytes = parseLong(configuration.getProperty(PREFIX + "maxBytes", String.valueOf(16 * 1024 * 1024)).trim());
+    results = CacheBuilder.newBuilder()
+        .expireAfterWrite(ttlSeconds, SECONDS)
+        .maximumWeight(maxBytes)
+        .weigher((Key key, Entry entry) -> (int) Math.min(Integer.MAX_VALUE, key.estimatedBytes() + entry.result.estimatedBytes()))
+        .removalListener(notification -> {
+          if (notification.wasEvicted()) evictions.increment();
+        })
+        .build();
+  }
+
+  static QueryResultCache load(Properties configuration) {
+    cacheableTables.clear();
+    return new QueryResultCache(configuration);
+  }
+
+  /**
+   * @return tables read by given SQL if its results may be cached, otherwise null
+   */
+  String[] cacheableTables(String sql) {
+    String[] tables = cacheableTables.get(sql);
+    if (tables == null) {
+      tables = this.sql.matcher(sql).find() ? SqlTables.queried(sql) : NOT_CACHEABLE;
+      if (tables.length == 0) tables = NOT_CACHEABLE;
+      if (cacheableTables.size() >= SqlFingerprint.MAX_MEMO_SIZE) cacheableTables.clear();
+      cacheableTables.put(sql, tables);
+    }
+    return tables == NOT_CACHEABLE ? null : tables;
+  }
+
+  /**
+   * Stop caching given SQL, e.g. because it returns too many rows.
+   */
+  void notCacheable(String sql) {
+    cacheableTables.put(sql, NOT_CACHEABLE);
+  }
+
+  /**
+   * @return current generations of given tables, to be passed to {@link #put} after the query is executed
+   */
+  static long[] generations(String[] tables) {
+    long[] result = new long[tables.length];
+    for (int i = 0; i < tables.length; i++) result[i] = generation(tables[i]).get();
+    return result;
+  }
+
+  private static AtomicLong generation(String table) {
+    AtomicLong generation = generations.get(table);
+    return generation != null ? generation : generations.computeIfAbsent(table, t -> new AtomicLong());
+  }
+
+  /**
+   * @return cached result that none of its tables was modified since, or null
+   */
+  CachedResult get(Key key) {
+    Entry entry = results.getIfPresent(key);
+    if (entry != null && entry.isCurrent()) {
+      hits.increment();
+      return entry.result;
+    }
+    if (entry != null) results.invalidate(key);
+    misses.increment();
+    return null;
+  }
+
+  void put(Key key, CachedResult result, String[] tables, long[] generations) {
+    results.put(key, new Entry(result, tables, generations));
+  }
+
+  /**
+   * Make results of queries of given table stale.
+   */
+  static void tableModified(String table) {
+    generation(table).incrementAndGet();
+  }
+
+  static void tablesModified(Collection<String> tables) {
+    for (String table : tables) tableModified(table);
+  }
+
+  long hits() {
+    return hits.sum();
+  }
+
+  long misses() {
+    return misses.sum();
+  }
+
+  long evictions() {
+    return evictions.sum();
+  }
+
+  long size() {
+    return results.size();
+  }
+
+  void clear() {
+    results.invalidateAll();
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
+  static long estimatedBytes(Object value) {
+    if (value == null) return 0;
+    if (value instanceof String) return 40 + 2L * ((String) value).length();
+    if (value instanceof byte[]) return 16 + ((byte[]) value).length;
+    return 32;
+  }
+
+  private static final class Entry {
+    final CachedResult result;
+    final String[] tables;
+    final long[] generations;
+
+    Entry(CachedResult result, String[] tables, long[] generations) {
+      this.result = result;
+      this.tables = tables;
+      this.generations = generations;
+    }
+
+    boolean isCurrent() {
+      for (int i = 0; i < tables.length; i++) {
+        if (generation(tables[i]).get() != generations[i]) return false;
+      }
+      return true;
+    }
+  }
+
+  static final class Key {
+    /**
+     * compared by identity: the same SQL may return other rows from another database
+     */
+    private final DataSource dataSource;
+    private final String username;
+    private final String sql;
+    private final Object[] parameters;
+    private final int hashCode;
+
+    Key(DataSource dataSource, String username, String sql, Object[] parameters) {
+      this.dataSource = dataSource;
+      this.username = username;
+      this.sql = sql;
+      this.parameters = parameters;
+      this.hashCode = 31 * (31 * (31 * System.identityHashCode(dataSource) + Objects.hashCode(username)) + sql.hashCode())
+          + Arrays.deepHashCode(parameters);
+    }
+
+    long estimatedBytes() {
+      long bytes = 64 + 16 + 8L * parameters.length;
+      for (Object parameter : parameters) bytes += QueryResultCache.estimatedBytes(parameter);
+      return bytes;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key key = (Key) o;
+      return hashCode == key.hashCode && dataSource == key.dataSource && Objects.equals(username, key.username) &&
+          sql.equals(key.sql) && Arrays.deepEquals(parameters, key.parameters);
+    }
+
+    @Override public int hashCode() {
+      return hashCode;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package play.db;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Auto-commit callable statement of a {@link LazyConnection} that lets the lazy Connection
+ * release its target Connection when the statement is closed, and reports execution times to it.
+ *
+ * @see ReleasingPreparedStatement
+ */
+class ReleasingCallableStatement extends TimedCallableStatement {
+  private final LazyConnection connection;
+
+  ReleasingCallableStatement(LazyConnection connection, CallableStatement statement) {
+    super(connection, statement);
+    this.connection = connection;
+  }
+
+  @Override public Connection getConnection() {
+    return connection;
+  }
+
+  @Override public ResultSet executeQuery() throws SQLException {
+    return ReleasingResultSet.wrap(this, super.executeQuery());
+  }
+
+  @Override public ResultSet executeQuery(String sql) throws SQLException {
+    return ReleasingResultSet.wrap(this, super.executeQuery(sql));
+  }
+
+  @Override public ResultSet getResultSet() throws SQLException {
+    return ReleasingResultSet.wrap(this, statement.getResultSet());
+  }
+
+  @Override public ResultSet getGeneratedKeys() throws SQLException {
+    return ReleasingResultSet.wrap(this, statement.getGeneratedKeys());
+  }
+
+  @Override public void close() throws SQLException {
+    statement.close();
+    if (connection.isAutoCommit()) connection.releaseTargetIfIdle();
+  }
+}
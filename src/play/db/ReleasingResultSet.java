@@ -0,0 +1,26 @@
+package play.db;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Result set of a releasing statement ({@link ReleasingPreparedStatement} etc.) that returns
+ * that statement, not the target one, from {@link #getStatement()}, so that closing
+ * the statement from there lets the lazy Connection release its target Connection as well.
+ */
+class ReleasingResultSet extends DelegatingResultSet {
+  private final Statement statement;
+
+  private ReleasingResultSet(Statement statement, ResultSet resultSet) {
+    super(resultSet);
+    this.statement = statement;
+  }
+
+  static ResultSet wrap(Statement statement, ResultSet resultSet) {
+    return resultSet == null ? null : new ReleasingResultSet(statement, resultSet);
+  }
+
+  @Override public Statement getStatement() {
+    return statement;
+  }
+}
@@ -0,0 +1,42 @@
+package play.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Auto-commit statement of a {@link LazyConnection} that lets the lazy Connection
+ * release its target Connection when the statement is closed, and reports execution times to it.
+ *
+ * @see ReleasingPreparedStatement
+ */
+class ReleasingStatement extends TimedStatement {
+  private final LazyConnection connection;
+
+  ReleasingStatement(LazyConnection connection, Statement statement) {
+    super(connection, statement);
+    this.connection = connection;
+  }
+
+  @Override public Connection getConnection() {
+    return connection;
+  }
+
+  @Override public ResultSet executeQuery(String sql) throws SQLException {
+    return ReleasingResultSet.wrap(this, super.executeQuery(sql));
+  }
+
+  @Override public ResultSet getResultSet() throws SQLException {
+    return ReleasingResultSet.wrap(this, statement.getResultSet());
+  }
+
+  @Override public ResultSet getGeneratedKeys() throws SQLException {
+    return ReleasingResultSet.wrap(this, statement.getGeneratedKeys());
+  }
+
+  @Override public void close() throws SQLException {
+    statement.close();
+    if (connection.isAutoCommit()) connection.releaseTargetIfIdle();
+  }
+}
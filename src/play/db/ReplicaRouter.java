@@ -0,0 +1,102 @@
+package play.db;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks a replica DataSource for read-only connections of {@link LazyConnectionDataSourceProxy}.
+ *
+ * @see LazyConnectionDataSourceProxy#setReplicaDataSources
+ */
+final class ReplicaRouter {
+  private static final Log logger = LogFactory.getLog(ReplicaRouter.class);
+
+  private final Replica[] replicas;
+  private final ReplicaSelection selection;
+  private final AtomicInteger next = new AtomicInteger();
+
+  ReplicaRouter(List<DataSource> dataSources, ReplicaSelection selection) {
+    this.replicas = dataSources.stream().map(Replica::new).toArray(Replica[]::new);
+    this.selection = selection;
+  }
+
+  /**
+   * @return connection to one of the replicas, or null if none of them could provide a connection
+   */
+  Connection getConnection(String username, String password) {
+    int first = selection == ReplicaSelection.LEAST_IN_USE ? leastInUse() : roundRobin();
+    for (int i = 0; i < replicas.length; i++) {
+      Replica replica = replicas[(first + i) % replicas.length];
+      try {
+        return replica.getConnection(username, password);
+      }
+      catch (SQLException e) {
+        logger.warn("Could not get connection from replica " + replica.dataSource, e);
+      }
+    }
+    return null;
+  }
+
+  private int roundRobin() {
+    return (next.getAndIncrement() & Integer.MAX_VALUE) % replicas.length;
+  }
+
+  private int leastInUse() {
+    int start = roundRobin();
+    int best = start;
+    for (int i = 1; i < replicas.length; i++) {
+      int candidate = (start + i) % replicas.length;
+      if (replicas[candidate].inUse.get() < replicas[best].inUse.get()) best = candidate;
+    }
+    return best;
+  }
+
+  int[] inUse() {
+    int[] result = new int[replicas.length];
+    for (int i = 0; i < replicas.length; i++) result[i] = replicas[i].inUse.get();
+    return result;
+  }
+
+  private final class Replica {
+    private final DataSource dataSource;
+    private final AtomicInteger inUse = new AtomicInteger();
+
+    private Replica(DataSource dataSource) {
+      this.dataSource = dataSource;
+    }
+
+    private Connection getConnection(String username, String password) throws SQLException {
+      Connection connection = username != null ? dataSource.getConnection(username, password) : dataSource.getConnection();
+      if (selection != ReplicaSelection.LEAST_IN_USE) return connection;
+      inUse.incrementAndGet();
+      return new InUseConnection(connection, inUse);
+    }
+  }
+
+  /**
+   * Keeps count of replica connections not yet closed.
+   */
+  private static final class InUseConnection extends DelegatingConnection {
+    private final AtomicInteger inUse;
+    private boolean closed;
+
+    private InUseConnection(Connection connection, AtomicInteger inUse) {
+      super(connection);
+      this.inUse = inUse;
+    }
+
+    @Override public void close() throws SQLException {
+      if (!closed) {
+        closed = true;
+        inUse.decrementAndGet();
+      }
+      connection.close();
+    }
+  }
+}
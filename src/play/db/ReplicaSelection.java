@@ -0,0 +1,16 @@
+package play.db;
+
+/**
+ * How {@link LazyConnectionDataSourceProxy} picks a replica for a read-only connection.
+ */
+public enum ReplicaSelection {
+  /**
+   * Replicas take turns
+   */
+  ROUND_ROBIN,
+
+  /**
+   * Replica with the fewest connections handed out and not yet closed
+   */
+  LEAST_IN_USE
+}
@@ -0,0 +1,93 @@
+package play.db;
+
+import play.mvc.Http;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static java.util.Collections.emptyMap;
+import static org.apache.commons.lang.StringUtils.isBlank;
+import static play.libs.Time.parseDuration;
+
+/**
+ * Time budget of the current request for database work, configurable in application.conf:
+ * <pre>
+ * db.deadline.default=10s
+ * db.deadline.Reports.export=2mn
+ * </pre>
+ * The deadline is counted from the time the request was received, so it includes time spent
+ * waiting for an invoker thread. Actions can override the default by their name, jobs have no deadline.
+ *
+ * <p>"db.deadline.default" rather than "db.deadline", which Play would take for the URL of a db named "deadline".
+ *
+ * <p>Statements created by lazy connections get a query timeout of the remaining budget (rounded up
+ * to whole seconds). Once the deadline has passed, fetching a physical connection or creating
+ * a statement fails with {@link SQLTimeoutException}, so that the pool serves requests that can
+ * still succeed.
+ */
+public final class RequestDeadline {
+  private static final String PREFIX = "db.deadline";
+  private static final String DEFAULT = PREFIX + ".default";
+
+  private static volatile long defaultMillis;
+  private static volatile Map<String, Long> actionMillis = emptyMap();
+
+  private RequestDeadline() {
+  }
+
+  public static void configure(Properties configuration) {
+    String defaultDeadline = configuration.getProperty(DEFAULT);
+    defaultMillis = isBlank(defaultDeadline) ? 0 : 1000L * parseDuration(defaultDeadline.trim());
+    Map<String, Long> byAction = new HashMap<>();
+    for (String key : configuration.stringPropertyNames()) {
+      if (key.startsWith(PREFIX + ".") && !key.equals(DEFAULT)) {
+        byAction.put(key.substring(PREFIX.length() + 1), 1000L * parseDuration(configuration.getProperty(key).trim()));
+      }
+    }
+    actionMillis = byAction.isEmpty() ? emptyMap() : byAction;
+  }
+
+  /**
+   * @return milliseconds left until the deadline of the current request (negative if it has passed),
+   * or {@link Long#MAX_VALUE} if there is no deadline
+   */
+  static long remainingMillis() {
+    Http.Request request = Http.Request.current();
+    if (request == null || request.date == null) return Long.MAX_VALUE;
+    Long budget = request.action != null ? actionMillis.get(request.action) : null;
+    long budgetMillis = budget != null ? budget : defaultMillis;
+    if (budgetMillis <= 0) return Long.MAX_VALUE;
+    return request.date.getTime() + budgetMillis - System.currentTimeMillis();
+  }
+
+  /**
+   * Called before a physical connection is fetched from the pool.
+   */
+  static void checkNotExceeded() throws SQLTimeoutException {
+    long remaining = remainingMillis();
+    if (remaining <= 0) throw exceeded(remaining);
+  }
+
+  /**
+   * Set query timeout of a new statement to the time left until the deadline of the current request.
+   */
+  static <T extends Statement> T applyTo(T statement) throws SQLException {
+    long remaining = remainingMillis();
+    if (remaining == Long.MAX_VALUE) return statement;
+    if (remaining <= 0) {
+      statement.close();
+      throw exceeded(remaining);
+    }
+    statement.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, (remaining + 999) / 1000));
+    return statement;
+  }
+
+  private static SQLTimeoutException exceeded(long remaining) {
+    Http.Request request = Http.Request.current();
+    return new SQLTimeoutException("Deadline of request " + (request != null ? request.action : null) + " exceeded by " + -remaining + " ms");
+  }
+}
@@ -0,0 +1,213 @@
+package play.db;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import static java.util.Comparator.comparingLong;
+
+/**
+ * Executions of statement {@link SqlFingerprint fingerprints} in rolling time windows: a ring of
+ * 60 one-minute buckets and a ring of 24 one-hour buckets, so that the last minutes can be
+ * compared with the last hours.
+ *
+ * <p>Statements are interned to small ids, their SQL text stored once and shared with
+ * {@link LogEntry log entries}. Counts and durations are kept in primitive arrays indexed by
+ * statement id and bucket, so memory depends on the number of distinct statements only.
+ * At most "maxStatements" are tracked, executions of others are counted under SQL "other";
+ * statements without executions in the last 24 hours are forgotten.
+ *
+ * <p>Executions are recorded by the aggregator thread, methods are synchronized.
+ */
+final class RollingStatementStats {
+  static final int MINUTE_BUCKETS = 60;
+  static final int HOUR_BUCKETS = 24;
+  private static final long MINUTE_MILLIS = 60_000;
+  private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+  private static final int OTHER = 0;
+
+  private final LongSupplier clock;
+  private final int maxStatements;
+  private final Map<String, Integer> ids = new HashMap<>();
+  private final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+  private String[] sqls = new String[16];
+  private int nextId = OTHER + 1;
+  private final Ring minutes = new Ring(MINUTE_BUCKETS, sqls.length);
+  private final Ring hours = new Ring(HOUR_BUCKETS, sqls.length);
+
+  /**
+   * @param clock current time in milliseconds
+   */
+  RollingStatementStats(LongSupplier clock, int maxStatements) {
+    this.clock = clock;
+    this.maxStatements = maxStatements;
+    sqls[OTHER] = "other";
+  }
+
+  /**
+   * @return SQL text shared by all executions of the statement
+   */
+  synchronized String record(String sql, long durationNanos) {
+    long now = clock.getAsLong();
+    int minuteBucket = minutes.bucket(now / MINUTE_MILLIS);
+    long hour = now / HOUR_MILLIS;
+    boolean newHour = hours.isRotated(hour);
+    int hourBucket = hours.bucket(hour);
+    if (newHour) forgetIdle(hour);
+
+    int id = id(sql);
+    minutes.add(id, minuteBucket, durationNanos);
+    hours.add(id, hourBucket, durationNanos);
+    return id == OTHER ? sql : sqls[id];
+  }
+
+  /**
+   * @param count number of minutes, at most {@link #MINUTE_BUCKETS}, including the current one
+   * @return statements executed in the last minutes, by decreasing total duration
+   */
+  synchronized List<StatementWindow> lastMinutes(int count) {
+    return window(minutes, clock.getAsLong() / MINUTE_MILLIS, count);
+  }
+
+  /**
+   * @param count number of hours, at most {@link #HOUR_BUCKETS}, including the current one
+   * @return statements executed in the last hours, by decreasing total duration
+   */
+  synchronized List<StatementWindow> lastHours(int count) {
+    return window(hours, clock.getAsLong() / HOUR_MILLIS, count);
+  }
+
+  synchronized int statementCount() {
+    return ids.size();
+  }
+
+  private int id(String sql) {
+    Integer id = ids.get(sql);
+    if (id != null) return id;
+    if (ids.size() >= maxStatements) return OTHER;
+    if (!freeIds.isEmpty()) id = freeIds.pop();
+    else {
+      id = nextId++;
+      if (id == sqls.length) {
+        sqls = Arrays.copyOf(sqls, 2 * sqls.length);
+        minutes.grow(sqls.length);
+        hours.grow(sqls.length);
+      }
+    }
+    sqls[id] = sql;
+    ids.put(sql, id);
+    return id;
+  }
+
+  private void forgetIdle(long hour) {
+    for (int id = OTHER + 1; id < nextId; id++) {
+      if (sqls[id] == null || hours.count(id, hour, HOUR_BUCKETS) > 0) continue;
+      ids.remove(sqls[id]);
+      sqls[id] = null;
+      minutes.clear(id);
+      hours.clear(id);
+      freeIds.push(id);
+    }
+  }
+
+  private List<StatementWindow> window(Ring ring, long period, int count) {
+    count = Math.min(count, ring.buckets);
+    List<StatementWindow> result = new ArrayList<>();
+    long[] sums = new long[3];
+    for (int id = OTHER; id < nextId; id++) {
+      if (sqls[id] == null) continue;
+      ring.sum(id, period, count, sums);
+      if (sums[0] > 0) result.add(new StatementWindow(sqls[id], sums[0], sums[1], sums[2]));
+    }
+    result.sort(comparingLong(StatementWindow::getTotalDurationNanos).reversed());
+    return result;
+  }
+
+  /**
+   * Buckets of consecutive periods (minutes or hours), reused in a circle. Values of statement
+   * {@code id} in bucket {@code b} are at index {@code id * buckets + b}. A bucket is cleared when
+   * it starts holding a new period; buckets of periods out of a window are skipped when reading.
+   */
+  private static final class Ring {
+    final int buckets;
+    final long[] periods;
+    long[] counts;
+    long[] totalNanos;
+    long[] maxNanos;
+
+    Ring(int buckets, int statements) {
+      this.buckets = buckets;
+      periods = new long[buckets];
+      Arrays.fill(periods, -1);
+      counts = new long[statements * buckets];
+      totalNanos = new long[statements * buckets];
+      maxNanos = new long[statements * buckets];
+    }
+
+    boolean isRotated(long period) {
+      return periods[(int) (period % buckets)] != period;
+    }
+
+    int bucket(long period) {
+      int bucket = (int) (period % buckets);
+      if (periods[bucket] != period) {
+        periods[bucket] = period;
+        for (int i = bucket; i < counts.length; i += buckets) {
+          counts[i] = 0;
+          totalNanos[i] = 0;
+          maxNanos[i] = 0;
+        }
+      }
+      return bucket;
+    }
+
+    void add(int id, int bucket, long durationNanos) {
+      int i = id * buckets + bucket;
+      counts[i]++;
+      totalNanos[i] += durationNanos;
+      if (durationNanos > maxNanos[i]) maxNanos[i] = durationNanos;
+    }
+
+    void grow(int statements) {
+      counts = Arrays.copyOf(counts, statements * buckets);
+      totalNanos = Arrays.copyOf(totalNanos, statements * buckets);
+      maxNanos = Arrays.copyOf(maxNanos, statements * buckets);
+    }
+
+    void clear(int id) {
+      Arrays.fill(counts, id * buckets, (id + 1) * buckets, 0);
+      Arrays.fill(totalNanos, id * buckets, (id + 1) * buckets, 0);
+      Arrays.fill(maxNanos, id * buckets, (id + 1) * buckets, 0);
+    }
+
+    long count(int id, long period, int window) {
+      long count = 0;
+      for (int bucket = 0; bucket < buckets; bucket++) {
+        if (isInWindow(bucket, period, window)) count += counts[id * buckets + bucket];
+      }
+      return count;
+    }
+
+    /**
+     * Put count, total and max duration of the statement in the last {@code window} periods into {@code sums}.
+     */
+    void sum(int id, long period, int window, long[] sums) {
+      Arrays.fill(sums, 0);
+      for (int bucket = 0; bucket < buckets; bucket++) {
+        if (!isInWindow(bucket, period, window)) continue;
+        int i = id * buckets + bucket;
+        sums[0] += counts[i];
+        sums[1] += totalNanos[i];
+        sums[2] = Math.max(sums[2], maxNanos[i]);
+      }
+    }
+
+    private boolean isInWindow(int bucket, long period, int window) {
+      return periods[bucket] <= period && periods[bucket] > period - window;
+    }
+  }
+}
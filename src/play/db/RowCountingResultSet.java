@@ -0,0 +1,49 @@
+package play.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Counts rows read by the application and reports them to {@link AdaptiveFetchSize}
+ * when the end of results is reached or the result set is closed.
+ */
+class RowCountingResultSet extends DelegatingResultSet {
+  private final Statement statement;
+  private final String fingerprint;
+  private final int defaultFetchSize;
+  private final int fetchSize;
+  private int rows;
+  private boolean reported;
+
+  RowCountingResultSet(Statement statement, ResultSet resultSet, String fingerprint, int defaultFetchSize, int fetchSize) {
+    super(resultSet);
+    this.statement = statement;
+    this.fingerprint = fingerprint;
+    this.defaultFetchSize = defaultFetchSize;
+    this.fetchSize = fetchSize;
+  }
+
+  @Override public boolean next() throws SQLException {
+    boolean hasNext = resultSet.next();
+    if (hasNext) rows++;
+    else report();
+    return hasNext;
+  }
+
+  @Override public void close() throws SQLException {
+    report();
+    resultSet.close();
+  }
+
+  @Override public Statement getStatement() {
+    return statement;
+  }
+
+  private void report() {
+    if (!reported) {
+      reported = true;
+      AdaptiveFetchSize.resultSetRead(fingerprint, rows, defaultFetchSize, fetchSize);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package play.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Moves SQL execution events from {@link SQLEventBuffer} into {@link SlowSQLHelper} aggregates.
+ *
+ * <p>Request threads only publish into the buffer; the aggregates are updated by a single
+ * background daemon thread, or by a thread querying them, so that the query sees all
+ * executions published before it.
+ */
+final class SQLEventAggregator {
+  private static final Logger logger = LoggerFactory.getLogger(SQLEventAggregator.class);
+
+  static final int CAPACITY = 16384;
+  private static final long IDLE_PARK_NANOS = MILLISECONDS.toNanos(10);
+
+  private static final SQLEventBuffer buffer = new SQLEventBuffer(CAPACITY);
+
+  static {
+    Thread thread = new Thread(SQLEventAggregator::run, "slow-sql-aggregator");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private SQLEventAggregator() {
+  }
+
+  static void publish(String sql, String requestId, String sessionId, long durationNanos, String[] binds) {
+    buffer.publish(sql, requestId, sessionId, durationNanos, binds);
+  }
+
+  /**
+   * Aggregate all events published so far.
+   */
+  static synchronized int drain() {
+    return buffer.drain(SlowSQLHelper::addExecution);
+  }
+
+  static long droppedCount() {
+    return buffer.droppedCount();
+  }
+
+  private static void run() {
+    while (true) {
+      try {
+        if (drain() == 0) LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+      catch (RuntimeException e) {
+        logger.error("Failed to aggregate SQL executions", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package play.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded lock-free multi-producer single-consumer ring buffer of SQL execution events.
+ *
+ * <p>Events are stored in preallocated parallel arrays, so publishing allocates nothing.
+ * Producers claim a slot with a single CAS and never wait: when the buffer is full, the event
+ * is dropped and counted. Every slot carries a sequence number telling whether it is free
+ * for the producer of a given round or holds an event ready for the consumer.
+ */
+final class SQLEventBuffer {
+  private final int mask;
+  private final AtomicLongArray sequences;
+  private final String[] sqls;
+  private final String[] requestIds;
+  private final String[] sessionIds;
+  private final long[] durations;
+  private final String[][] binds;
+
+  private final AtomicLong tail = new AtomicLong();
+  private long head;
+  private final LongAdder dropped = new LongAdder();
+
+  /**
+   * @param capacity rounded up to a power of two
+   */
+  SQLEventBuffer(int capacity) {
+    int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+    mask = size - 1;
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) sequences.set(i, i);
+    sqls = new String[size];
+    requestIds = new String[size];
+    sessionIds = new String[size];
+    durations = new long[size];
+    binds = new String[size][];
+  }
+
+  /**
+   * May be called from any thread.
+   *
+   * @return false if the buffer was full and the event has been dropped
+   */
+  boolean publish(String sql, String requestId, String sessionId, long durationNanos) {
+    return publish(sql, requestId, sessionId, durationNanos, null);
+  }
+
+  /**
+   * @param binds parameters of a slow execution, usually null
+   */
+  boolean publish(String sql, String requestId, String sessionId, long durationNanos, String[] binds) {
+    while (true) {
+      long position = tail.get();
+      int index = (int) position & mask;
+      long available = sequences.get(index) - position;
+      if (available == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          sqls[index] = sql;
+          requestIds[index] = requestId;
+          sessionIds[index] = sessionId;
+          durations[index] = durationNanos;
+          this.binds[index] = binds;
+          sequences.lazySet(index, position + 1);
+          return true;
+        }
+      }
+      else if (available < 0) {
+        dropped.increment();
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Pass all published events to the consumer. Must be called by one thread at a time.
+   *
+   * @return number of consumed events
+   */
+  int drain(Consumer consumer) {
+    int consumed = 0;
+    while (true) {
+      int index = (int) head & mask;
+      if (sequences.get(index) != head + 1) return consumed;
+
+      String sql = sqls[index];
+      String requestId = requestIds[index];
+      String sessionId = sessionIds[index];
+      long durationNanos = durations[index];
+      String[] executionBinds = binds[index];
+      sqls[index] = requestIds[index] = sessionIds[index] = null;
+      binds[index] = null;
+      sequences.lazySet(index, head + mask + 1);
+      head++;
+
+      consumer.accept(sql, requestId, sessionId, durationNanos, executionBinds);
+      consumed++;
+    }
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+
+  long droppedCount() {
+    return dropped.sum();
+  }
+
+  interface Consumer {
+    void accept(String sql, String requestId, String sessionId, long durationNanos, String[] binds);
+  }
+}
@@ -0,0 +1,318 @@
+package play.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import static java.lang.Integer.parseInt;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+/**
+ * Optional append-only journal of SQL executions for analysis after the fact, configurable in application.conf:
+ * <pre>
+ * trackSlowSQL.journal=true
+ * trackSlowSQL.journal.dir=logs/sql-journal
+ * trackSlowSQL.journal.segmentSize=64MB
+ * trackSlowSQL.journal.segments=16
+ * </pre>
+ * Every execution is a fixed size record of time, statement id, action id and duration, written into
+ * a memory-mapped segment file by the thread aggregating executions (see {@link SQLEventAggregator}),
+ * so threads executing SQL never touch files. When a segment is full the next one is created and the
+ * oldest beyond "segments" are deleted, so the journal takes at most segments * segmentSize of disk.
+ *
+ * <p>SQL fingerprints and actions are written once per segment to the dictionary file of the segment,
+ * so ids are only valid within a segment and dictionaries are deleted together with their segments.
+ * {@link SQLJournalReader} reports top statements of any time range.
+ */
+final class SQLJournal {
+  private static final Logger logger = LoggerFactory.getLogger(SQLJournal.class);
+  private static final String PREFIX = "trackSlowSQL.journal";
+
+  static final int MAGIC = 0x53514c4a;
+  static final int VERSION = 2;
+  static final int HEADER_SIZE = 16;
+  static final int RECORD_SIZE = 24;
+  static final String SEGMENT_SUFFIX = ".seg";
+  static final String DICTIONARY_SUFFIX = ".dict";
+  static final byte STATEMENT = 0;
+  static final byte ACTION = 1;
+  /**
+   * Id of statements and actions beyond {@link #MAX_DICTIONARY_SIZE} of a segment
+   */
+  static final int OTHER = 0;
+  static final int MAX_DICTIONARY_SIZE = 100_000;
+
+  static volatile SQLJournal current = load(new Properties());
+
+  private final File dir;
+  private final int segmentSize;
+  private final int maxSegments;
+  private final Map<String, Integer> statementIds = new HashMap<>();
+  private final Map<String, Integer> actionIds = new HashMap<>();
+  private final ArrayDeque<File> segments = new ArrayDeque<>();
+  private long nextSegment;
+  private DataOutputStream dictionary;
+  private MappedByteBuffer segment;
+  private String lastRequestId;
+  private int lastActionId;
+
+  private SQLJournal(File dir, int segmentSize, int maxSegments) {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    this.maxSegments = maxSegments;
+  }
+
+  /**
+   * @return journal writing into the configured directory, or a disabled one if it can't be opened
+   */
+  static SQLJournal load(Properties configuration) {
+    File dir = new File(configuration.getProperty(PREFIX + ".dir", "logs/sql-journal"));
+    int segmentSize = (int) Math.max(HEADER_SIZE + RECORD_SIZE,
+        Math.min(Integer.MAX_VALUE, parseBytes(configuration.getProperty(PREFIX + ".segmentSize", "64MB"))));
+    int maxSegments = Math.max(1, parseInt(configuration.getProperty(PREFIX + ".segments", "16").trim()));
+    SQLJournal journal = new SQLJournal(dir, segmentSize, maxSegments);
+    if (!"true".equals(configuration.getProperty(PREFIX, "false"))) return journal;
+    try {
+      journal.open();
+    }
+    catch (IOException e) {
+      logger.error("Failed to open SQL journal in " + dir.getAbsolutePath(), e);
+      journal.close();
+    }
+    return journal;
+  }
+
+  /**
+   * Close the current journal and replace it with one with given configuration.
+   */
+  static void configure(Properties configuration) {
+    SQLJournal previous = current;
+    current = load(configuration);
+    previous.close();
+  }
+
+  boolean isEnabled() {
+    return segment != null;
+  }
+
+  void record(String sql, String requestId, long durationNanos) {
+    if (segment != null) record(sql, requestId, durationNanos, System.currentTimeMillis());
+  }
+
+  synchronized void record(String sql, String requestId, long durationNanos, long timeMillis) {
+    if (segment == null) return;
+    try {
+      if (segment.remaining() < RECORD_SIZE) nextSegment();
+      int statement = id(statementIds, STATEMENT, sql);
+      if (requestId != lastRequestId) {
+        lastActionId = id(actionIds, ACTION, action(requestId));
+        lastRequestId = requestId;
+      }
+      int position = segment.position();
+      segment.putInt(position + 8, statement);
+      segment.putInt(position + 12, lastActionId);
+      segment.putLong(position + 16, durationNanos);
+      // time is written last: a record with time 0 is not complete yet
+      segment.putLong(position, timeMillis);
+      segment.position(position + RECORD_SIZE);
+    }
+    catch (IOException e) {
+      logger.error("Failed to write SQL journal, disabling it", e);
+      close();
+    }
+  }
+
+  synchronized void close() {
+    releaseSegment();
+    closeDictionary();
+  }
+
+  private void releaseSegment() {
+    if (segment == null) return;
+    MappedByteBuffer released = segment;
+    segment = null;
+    released.force();
+    unmap(released);
+  }
+
+  private void closeDictionary() {
+    if (dictionary != null) {
+      try {
+        dictionary.close();
+      }
+      catch (IOException e) {
+        logger.warn("Failed to close SQL journal dictionary", e);
+      }
+      dictionary = null;
+    }
+  }
+
+  private void open() throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create directory " + dir.getAbsolutePath());
+    for (File file : segmentFiles(dir)) {
+      segments.add(file);
+      nextSegment = Math.max(nextSegment, sequence(file) + 1);
+    }
+    nextSegment();
+  }
+
+  private void nextSegment() throws IOException {
+    releaseSegment();
+    closeDictionary();
+    statementIds.clear();
+    actionIds.clear();
+    lastRequestId = null;
+
+    File file = new File(dir, String.format("%016d%s", nextSegment++, SEGMENT_SUFFIX));
+    dictionary = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dictionaryFile(file))));
+    try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+      output.setLength(segmentSize);
+      // the mapping stays valid after the file is closed
+      segment = output.getChannel().map(READ_WRITE, 0, segmentSize);
+    }
+    segment.putInt(MAGIC).putInt(VERSION).putLong(0);
+    segments.add(file);
+    while (segments.size() > maxSegments) {
+      File oldest = segments.poll();
+      File oldestDictionary = dictionaryFile(oldest);
+      if (oldestDictionary.exists() && !oldestDictionary.delete()) logger.warn("Failed to delete SQL journal dictionary {}", oldestDictionary);
+      if (!oldest.delete()) logger.warn("Failed to delete SQL journal segment {}", oldest);
+    }
+  }
+
+  private int id(Map<String, Integer> ids, byte kind, String text) throws IOException {
+    Integer id = ids.get(text);
+    if (id != null) return id;
+    if (statementIds.size() + actionIds.size() >= MAX_DICTIONARY_SIZE) return OTHER;
+    id = ids.size() + 1;
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    dictionary.writeByte(kind);
+    dictionary.writeInt(id);
+    dictionary.writeInt(bytes.length);
+    dictionary.write(bytes);
+    dictionary.flush();
+    ids.put(text, id);
+    return id;
+  }
+
+  /**
+   * @param requestId "[job]" or "[id] Controller.action", see {@link SlowSQLHelper#currentRequestId()}
+   */
+  static String action(String requestId) {
+    int end = requestId == null ? -1 : requestId.indexOf("] ");
+    return end < 0 ? "job" : requestId.substring(end + 2);
+  }
+
+  static File[] segmentFiles(File dir) {
+    File[] files = dir.listFiles((parent, name) -> name.endsWith(SEGMENT_SUFFIX));
+    if (files == null) return new File[0];
+    // names are zero-padded sequence numbers
+    Arrays.sort(files);
+    return files;
+  }
+
+  static File dictionaryFile(File segment) {
+    String name = segment.getName();
+    return new File(segment.getParentFile(), name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + DICTIONARY_SUFFIX);
+  }
+
+  private static long sequence(File segment) {
+    String name = segment.getName();
+    try {
+      return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Pass entries of the dictionary of given segment to the consumer, ignoring an incomplete last entry.
+   */
+  static void readDictionary(File segment, DictionaryConsumer consumer) throws IOException {
+    File file = dictionaryFile(segment);
+    if (!file.exists()) return;
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      while (true) {
+        byte kind = input.readByte();
+        int id = input.readInt();
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        consumer.accept(kind, id, new String(bytes, StandardCharsets.UTF_8));
+      }
+    }
+    catch (EOFException e) {
+      // end of dictionary
+    }
+  }
+
+  /**
+   * Release the mapping of the buffer now instead of when it is garbage collected, so that the disk space
+   * of a deleted segment is freed right away. The buffer must not be used afterwards.
+   */
+  static void unmap(MappedByteBuffer buffer) {
+    try {
+      // Java 9+
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+    }
+    catch (NoSuchMethodException e) {
+      unmapJava8(buffer);
+    }
+    catch (Exception e) {
+      logger.debug("Failed to unmap SQL journal segment, leaving it to garbage collection", e);
+    }
+  }
+
+  private static void unmapJava8(MappedByteBuffer buffer) {
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+    }
+    catch (Exception e) {
+      logger.debug("Failed to unmap SQL journal segment, leaving it to garbage collection", e);
+    }
+  }
+
+  /**
+   * @param value bytes, optionally with suffix KB, MB or GB
+   */
+  static long parseBytes(String value) {
+    String number = value.trim().toUpperCase(Locale.ROOT);
+    long unit = 1;
+    if (number.endsWith("KB")) unit = 1L << 10;
+    else if (number.endsWith("MB")) unit = 1L << 20;
+    else if (number.endsWith("GB")) unit = 1L << 30;
+    if (unit > 1) number = number.substring(0, number.length() - 2).trim();
+    return Long.parseLong(number) * unit;
+  }
+
+  interface DictionaryConsumer {
+    void accept(byte kind, int id, String text);
+  }
+}
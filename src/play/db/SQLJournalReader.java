@@ -0,0 +1,126 @@
+package play.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.util.Comparator.comparingLong;
+
+/**
+ * Reports statements with the highest total duration in a time range of a {@link SQLJournal}:
+ * <pre>
+ * java -cp lib/play-db.jar play.db.SQLJournalReader logs/sql-journal [from] [to] [count] [--by-action]
+ * </pre>
+ * "from" and "to" are local date-times ({@code 2018-03-01T02:00}) or epoch milliseconds,
+ * "--by-action" reports every statement separately for every action executing it.
+ */
+public final class SQLJournalReader {
+  private SQLJournalReader() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    List<String> arguments = new ArrayList<>();
+    boolean byAction = false;
+    for (String arg : args) {
+      if ("--by-action".equals(arg)) byAction = true;
+      else arguments.add(arg);
+    }
+    if (arguments.isEmpty()) {
+      System.err.println("Usage: SQLJournalReader <dir> [from] [to] [count] [--by-action]");
+      System.exit(1);
+    }
+    File dir = new File(arguments.get(0));
+    long from = arguments.size() > 1 ? parseTime(arguments.get(1)) : 0;
+    long to = arguments.size() > 2 ? parseTime(arguments.get(2)) : Long.MAX_VALUE;
+    int count = arguments.size() > 3 ? Integer.parseInt(arguments.get(3)) : 20;
+
+    System.out.printf("%10s %12s %10s %10s  %s%n", "count", "total ms", "avg ms", "max ms", "sql");
+    for (StatementWindow statement : top(dir, from, to, count, byAction)) {
+      System.out.printf("%10d %12.1f %10.1f %10.1f  %s%n", statement.getCount(),
+          statement.getTotalDurationNanos() / 1e6, statement.getAverageNanos() / 1e6, statement.getMaxNanos() / 1e6,
+          statement.getSql());
+    }
+  }
+
+  /**
+   * @param from inclusive, epoch milliseconds
+   * @param to exclusive, epoch milliseconds
+   * @param byAction aggregate executions of a statement by action, prefixing SQL with the action
+   * @return statements executed in the time range with the highest total duration, highest first
+   */
+  static List<StatementWindow> top(File dir, long from, long to, int count, boolean byAction) throws IOException {
+    // count, total and max duration by SQL, or action and SQL
+    Map<String, long[]> sums = new HashMap<>();
+    for (File file : SQLJournal.segmentFiles(dir)) {
+      MappedByteBuffer segment;
+      try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+        segment = input.getChannel().map(READ_ONLY, 0, input.length());
+      }
+      try {
+        if (segment.limit() < SQLJournal.HEADER_SIZE || segment.getInt(0) != SQLJournal.MAGIC
+            || segment.getInt(4) != SQLJournal.VERSION) continue;
+        addSegment(file, segment, from, to, byAction, sums);
+      }
+      finally {
+        SQLJournal.unmap(segment);
+      }
+    }
+
+    List<StatementWindow> result = new ArrayList<>();
+    for (Map.Entry<String, long[]> entry : sums.entrySet()) {
+      long[] sum = entry.getValue();
+      result.add(new StatementWindow(entry.getKey(), sum[0], sum[1], sum[2]));
+    }
+    result.sort(comparingLong(StatementWindow::getTotalDurationNanos).reversed());
+    return result.size() > count ? new ArrayList<>(result.subList(0, count)) : result;
+  }
+
+  /**
+   * Ids are only valid within a segment, so executions are summed by id first and then by SQL of the segment's dictionary.
+   */
+  private static void addSegment(File file, MappedByteBuffer segment, long from, long to, boolean byAction,
+                                 Map<String, long[]> sums) throws IOException {
+    Map<Long, long[]> sumsById = new HashMap<>();
+    for (int position = SQLJournal.HEADER_SIZE; position + SQLJournal.RECORD_SIZE <= segment.limit(); position += SQLJournal.RECORD_SIZE) {
+      long time = segment.getLong(position);
+      if (time == 0) break;
+      if (time < from || time >= to) continue;
+      long statement = segment.getInt(position + 8);
+      long key = byAction ? statement << 32 | segment.getInt(position + 12) & 0xFFFFFFFFL : statement;
+      long durationNanos = segment.getLong(position + 16);
+      long[] sum = sumsById.computeIfAbsent(key, k -> new long[3]);
+      sum[0]++;
+      sum[1] += durationNanos;
+      sum[2] = Math.max(sum[2], durationNanos);
+    }
+    if (sumsById.isEmpty()) return;
+
+    Map<Integer, String> statements = new HashMap<>();
+    Map<Integer, String> actions = new HashMap<>();
+    SQLJournal.readDictionary(file, (kind, id, text) -> (kind == SQLJournal.STATEMENT ? statements : actions).put(id, text));
+    for (Map.Entry<Long, long[]> entry : sumsById.entrySet()) {
+      long key = entry.getKey();
+      int statement = (int) (byAction ? key >>> 32 : key);
+      String sql = statements.getOrDefault(statement, "other");
+      if (byAction) sql = actions.getOrDefault((int) key, "other") + ": " + sql;
+      long[] segmentSum = entry.getValue();
+      long[] sum = sums.computeIfAbsent(sql, k -> new long[3]);
+      sum[0] += segmentSum[0];
+      sum[1] += segmentSum[1];
+      sum[2] = Math.max(sum[2], segmentSum[2]);
+    }
+  }
+
+  private static long parseTime(String value) {
+    if (value.matches("\\d+")) return Long.parseLong(value);
+    return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+}
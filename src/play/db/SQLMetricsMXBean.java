@@ -0,0 +1,22 @@
+package play.db;
+
+import java.util.List;
+
+/**
+ * JMX view of SQL executions tracked by {@link SlowSQLHelper}.
+ */
+public interface SQLMetricsMXBean {
+  long getDroppedEvents();
+
+  int getStatementCount();
+
+  List<StatementMetrics> getStatements();
+
+  long getResultCacheHits();
+
+  long getResultCacheMisses();
+
+  long getResultCacheEvictions();
+
+  long getResultCacheSize();
+}
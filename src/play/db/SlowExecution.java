@@ -0,0 +1,26 @@
+package play.db;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * One of the slowest executions of a {@link LogEntry}, with its bound parameters.
+ *
+ * @see BindCapture
+ */
+public final class SlowExecution {
+  public final long durationNanos;
+  public final List<String> binds;
+
+  SlowExecution(long durationNanos, String[] binds) {
+    this.durationNanos = durationNanos;
+    this.binds = Collections.unmodifiableList(Arrays.asList(binds));
+  }
+
+  @Override public String toString() {
+    return NANOSECONDS.toMillis(durationNanos) + " ms " + binds;
+  }
+}
@@ -2,60 +2,193 @@ package play.db;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import play.mvc.Http;
 import play.mvc.Scope;
 
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.function.Predicate;
-import java.util.stream.Stream;
+import java.util.Properties;
 
+import static java.lang.Integer.parseInt;
 import static java.util.concurrent.TimeUnit.MINUTES;
-import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
 
 public class SlowSQLHelper {
-  private static final Cache<String, LogEntry> logs = CacheBuilder.newBuilder()
+  private static final Logger logger = LoggerFactory.getLogger(SlowSQLHelper.class);
+
+  private static final Cache<LogKey, NPlusOneQuery> nPlusOneQueries = CacheBuilder.newBuilder()
       .expireAfterWrite(10, MINUTES)
-      .maximumSize(10000)
+      .maximumSize(1000)
       .build();
-  
-  public static void addSlowSQLLog(String sql, long duration) throws ExecutionException {
+
+  private static final SlowSQLStore logs = new SlowSQLStore(MINUTES.toNanos(10), 10000);
+
+  private static final RollingStatementStats rollingStats = new RollingStatementStats(System::currentTimeMillis, StatementMetrics.MAX_STATEMENTS);
+
+  /**
+   * Read slow SQL thresholds, N+1 query threshold ("trackSlowSQL.nPlusOne.threshold")
+   * adaptive fetch size, query result cache, automatic batching, execution plan, bind capture and journal settings from given configuration.
+   *
+   * @see SlowSQLThresholds
+   * @see NPlusOneQuery
+   * @see AdaptiveFetchSize
+   * @see QueryResultCache
+   * @see AutoBatching
+   * @see ExecutionPlans
+   * @see BindCapture
+   * @see SQLJournal
+   */
+  public static void configure(Properties configuration) {
+    SlowSQLThresholds.current = SlowSQLThresholds.load(configuration);
+    ExecutionPlans.current = ExecutionPlans.load(configuration);
+    BindCapture.current = BindCapture.load(configuration);
+    SQLJournal.configure(configuration);
+    logs.thresholdsChanged();
+    InvocationSQLLog.nPlusOneThreshold = parseInt(configuration.getProperty("trackSlowSQL.nPlusOne.threshold", "20").trim());
+  }
+
+  /**
+   * Executions are aggregated by {@link SqlFingerprint fingerprint} of the SQL.
+   * The calling thread only publishes an event, aggregation happens in background
+   * (see {@link SQLEventAggregator}). If executions are published faster than they can be
+   * aggregated, they are dropped and counted in {@link #droppedSQLCount()}.
+   */
+  public static void addSlowSQLLog(String sql, long durationNanos) {
+    addSlowSQLLog(sql, durationNanos, null);
+  }
+
+  /**
+   * @param binds formatted parameters of a slow execution, or null
+   * @see BindCapture
+   */
+  static void addSlowSQLLog(String sql, long durationNanos, String[] binds) {
+    sql = SqlFingerprint.of(sql);
+    InvocationSQLLog invocationLog = InvocationSQLLog.current();
+    if (invocationLog != null) {
+      invocationLog.add(sql, durationNanos, binds);
+    }
+    else {
+      SQLEventAggregator.publish(sql, currentRequestId(), currentSessionId(), durationNanos, binds);
+    }
+  }
+
+  /**
+   * Start tracking SQL executions of the Play invocation running in the current thread.
+   */
+  public static void startInvocation() {
+    InvocationSQLLog.start();
+  }
+
+  /**
+   * Stop tracking SQL executions of the Play invocation running in the current thread.
+   */
+  public static void endInvocation() {
+    InvocationSQLLog.end();
+  }
+
+  /**
+   * @return number of SQL executions not aggregated because the event buffer was full
+   */
+  public static long droppedSQLCount() {
+    return SQLEventAggregator.droppedCount();
+  }
+
+  /**
+   * @return network round-trips made to fetch rows of queries with adaptive fetch size
+   */
+  public static long fetchRoundTrips() {
+    return AdaptiveFetchSize.roundTrips();
+  }
+
+  /**
+   * @return network round-trips the same queries would have needed with fetch size of the driver minus {@link #fetchRoundTrips()}
+   */
+  public static long fetchRoundTripsSaved() {
+    return AdaptiveFetchSize.roundTripsSaved();
+  }
+
+  static void addExecution(String sql, String requestId, String sessionId, long durationNanos, String[] binds) {
+    sql = rollingStats.record(sql, durationNanos);
+    SQLJournal.current.record(sql, requestId, durationNanos);
+    StatementMetrics.record(sql, durationNanos);
+    LogEntry log = logs.addExecution(sql, requestId, sessionId, durationNanos);
+    if (binds != null) log.addSlowExecution(durationNanos, binds, BindCapture.current.worst);
+  }
+
+  static void addNPlusOneQuery(NPlusOneQuery query) {
+    logger.warn(query.toString());
+    nPlusOneQueries.put(new LogKey(query.sessionId, query.request, query.sql), query);
+  }
+
+  static String currentRequestId() {
     Http.Request request = Http.Request.current();
-    String requestId = request != null ? "[" + request.args.get("requestId") + "] " + request.action : "[job]";
-    String sessionId = Scope.Session.current() != null ? Scope.Session.current().getId() : "job";
+    return request != null ? "[" + request.args.get("requestId") + "] " + request.action : "[job]";
+  }
 
-    String key = String.format("%s|%s|%s", sessionId, requestId, sql);
-    LogEntry log = logs.get(key, () -> new LogEntry(sql, requestId, sessionId));
-    log.addExecution(duration);
+  /**
+   * @return action of the current request, "unknown" if it's not routed (yet), or "job"
+   */
+  static String currentAction() {
+    Http.Request request = Http.Request.current();
+    if (request == null) return "job";
+    return request.action != null ? request.action : "unknown";
   }
-  
-  private static Stream<LogEntry> sessionLogs(String sessionId) {
-    return logs.asMap().values().stream().filter(userSessionOrJob(sessionId));
+
+  static String currentSessionId() {
+    return Scope.Session.current() != null ? Scope.Session.current().getId() : SlowSQLStore.JOB;
   }
 
   public static long slowSQLCount(String sessionId) {
-    return sessionLogs(sessionId).filter(LogEntry::isSlow).map(log -> log.sql).distinct().count();
+    SQLEventAggregator.drain();
+    return logs.slowSQLCount(sessionId);
   }
 
   public static long uniqueSQLCount(String sessionId) {
-    return sessionLogs(sessionId).map(log -> log.sql).distinct().count();
+    SQLEventAggregator.drain();
+    return logs.uniqueSQLCount(sessionId);
   }
 
   public static Map<String, List<LogEntry>> logsByRequest(String sessionId) {
-    return sessionLogs(sessionId).collect(groupingBy(log -> log.request));
+    SQLEventAggregator.drain();
+    return logs.logsByRequest(sessionId);
+  }
+
+  /**
+   * @param minutes number of minutes up to 60, including the current one
+   * @return executions of every statement in the last minutes, in all sessions and jobs, by decreasing total duration
+   */
+  public static List<StatementWindow> statementsOfLastMinutes(int minutes) {
+    SQLEventAggregator.drain();
+    return rollingStats.lastMinutes(minutes);
+  }
+
+  /**
+   * @param hours number of hours up to 24, including the current one
+   * @return executions of every statement in the last hours, in all sessions and jobs, by decreasing total duration
+   */
+  public static List<StatementWindow> statementsOfLastHours(int hours) {
+    SQLEventAggregator.drain();
+    return rollingStats.lastHours(hours);
+  }
+
+  /**
+   * @return N+1 queries detected in requests of given session and in jobs
+   */
+  public static List<NPlusOneQuery> nPlusOneQueries(String sessionId) {
+    return nPlusOneQueries.asMap().values().stream()
+        .filter(query -> isUserSessionOrJob(query.sessionId, sessionId))
+        .collect(toList());
   }
 
   public static void reset(String sessionId) {
-    Predicate<LogEntry> predicate = userSessionOrJob(sessionId);
-    for (Map.Entry<String, LogEntry> entry : logs.asMap().entrySet()) {
-      if (predicate.test(entry.getValue())) {
-        logs.asMap().remove(entry.getKey());
-      }
-    }
+    SQLEventAggregator.drain();
+    logs.reset(sessionId);
+    nPlusOneQueries.asMap().values().removeIf(query -> isUserSessionOrJob(query.sessionId, sessionId));
   }
 
-  private static Predicate<LogEntry> userSessionOrJob(String sessionId) {
-    return log -> log.sessionId.equals(sessionId) || "job".equals(log.sessionId);
+  private static boolean isUserSessionOrJob(String logSessionId, String sessionId) {
+    return logSessionId.equals(sessionId) || SlowSQLStore.JOB.equals(logSessionId);
   }
 }
@@ -0,0 +1,204 @@
+package play.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link LogEntry Log entries} of {@link SlowSQLHelper}, indexed by session: entries of every
+ * session, and of jobs, are kept apart together with their numbers of distinct and slow SQL,
+ * maintained as executions are added. Queries and reset of a session cost in proportion to the
+ * entries of that session and of jobs instead of all entries.
+ *
+ * <p>Entries expire "ttl" after their last execution; beyond "maxSize" entries, the least recently
+ * executed are evicted.
+ * Methods are synchronized: entries are added by the single aggregator thread,
+ * so the lock is contended only by queries.
+ */
+final class SlowSQLStore {
+  static final String JOB = "job";
+
+  private final long ttlNanos;
+  private final int maxSize;
+  // in order of last execution, the least recent first
+  private final LinkedHashMap<LogKey, Slot> slots = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<String, SessionLogs> sessions = new HashMap<>();
+
+  SlowSQLStore(long ttlNanos, int maxSize) {
+    this.ttlNanos = ttlNanos;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return entry the execution was added to
+   */
+  synchronized LogEntry addExecution(String sql, String requestId, String sessionId, long durationNanos) {
+    long now = System.nanoTime();
+    expire(now);
+    LogKey key = new LogKey(sessionId, requestId, sql);
+    Slot slot = slots.get(key);
+    if (slot == null) {
+      if (slots.size() >= maxSize) remove(slots.values().iterator().next());
+      slot = new Slot(key, new LogEntry(sql, requestId, sessionId));
+      slots.put(key, slot);
+      sessions.computeIfAbsent(sessionId, id -> new SessionLogs()).add(slot);
+    }
+    slot.lastExecutionNanos = now;
+    slot.entry.addExecution(durationNanos);
+    updateSlow(slot);
+    return slot.entry;
+  }
+
+  /**
+   * @return number of distinct slow SQL in given session and in jobs
+   */
+  synchronized long slowSQLCount(String sessionId) {
+    return distinctSQLCount(sessionId, true);
+  }
+
+  /**
+   * @return number of distinct SQL in given session and in jobs
+   */
+  synchronized long uniqueSQLCount(String sessionId) {
+    return distinctSQLCount(sessionId, false);
+  }
+
+  synchronized Map<String, List<LogEntry>> logsByRequest(String sessionId) {
+    expire(System.nanoTime());
+    Map<String, List<LogEntry>> result = new HashMap<>();
+    for (SessionLogs session : sessionAndJobs(sessionId)) {
+      if (session == null) continue;
+      for (Slot slot : session.slots.values()) {
+        result.computeIfAbsent(slot.entry.request, request -> new ArrayList<>()).add(slot.entry);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Remove entries of given session and of jobs.
+   */
+  synchronized void reset(String sessionId) {
+    for (String id : new String[] {sessionId, JOB}) {
+      SessionLogs session = sessions.remove(id);
+      if (session == null) continue;
+      for (LogKey key : session.slots.keySet()) slots.remove(key);
+    }
+  }
+
+  /**
+   * Recompute slow SQL counts after {@link SlowSQLThresholds} changed.
+   */
+  synchronized void thresholdsChanged() {
+    for (Slot slot : slots.values()) updateSlow(slot);
+  }
+
+  synchronized int size() {
+    return slots.size();
+  }
+
+  private long distinctSQLCount(String sessionId, boolean slow) {
+    expire(System.nanoTime());
+    SessionLogs[] sessionAndJobs = sessionAndJobs(sessionId);
+    SessionLogs session = sessionAndJobs[0], jobs = sessionAndJobs[1];
+    if (session == null || jobs == null) {
+      SessionLogs only = session != null ? session : jobs;
+      return only == null ? 0 : only.distinctSQLCount(slow);
+    }
+    // count the union by looking up SQL of the smaller side in the larger one
+    SessionLogs smaller = session.sqls.size() <= jobs.sqls.size() ? session : jobs;
+    SessionLogs larger = smaller == session ? jobs : session;
+    long result = larger.distinctSQLCount(slow);
+    for (Map.Entry<String, SqlCount> sql : smaller.sqls.entrySet()) {
+      if (slow && sql.getValue().slowEntries == 0) continue;
+      SqlCount other = larger.sqls.get(sql.getKey());
+      if (other == null || slow && other.slowEntries == 0) result++;
+    }
+    return result;
+  }
+
+  private SessionLogs[] sessionAndJobs(String sessionId) {
+    return new SessionLogs[] {JOB.equals(sessionId) ? null : sessions.get(sessionId), sessions.get(JOB)};
+  }
+
+  private void updateSlow(Slot slot) {
+    boolean slow = slot.entry.isSlow();
+    if (slow == slot.slow) return;
+    slot.slow = slow;
+    sessions.get(slot.entry.sessionId).slowChanged(slot);
+  }
+
+  private void expire(long now) {
+    Iterator<Slot> oldest = slots.values().iterator();
+    while (oldest.hasNext()) {
+      Slot slot = oldest.next();
+      if (now - slot.lastExecutionNanos < ttlNanos) break;
+      oldest.remove();
+      removeFromSession(slot);
+    }
+  }
+
+  private void remove(Slot slot) {
+    slots.remove(slot.key);
+    removeFromSession(slot);
+  }
+
+  private void removeFromSession(Slot slot) {
+    SessionLogs session = sessions.get(slot.entry.sessionId);
+    if (session != null && session.remove(slot)) sessions.remove(slot.entry.sessionId);
+  }
+
+  private static final class Slot {
+    final LogKey key;
+    final LogEntry entry;
+    long lastExecutionNanos;
+    boolean slow;
+
+    Slot(LogKey key, LogEntry entry) {
+      this.key = key;
+      this.entry = entry;
+    }
+  }
+
+  private static final class SqlCount {
+    int entries;
+    int slowEntries;
+  }
+
+  private static final class SessionLogs {
+    final Map<LogKey, Slot> slots = new HashMap<>();
+    final Map<String, SqlCount> sqls = new HashMap<>();
+    int slowSQLCount;
+
+    void add(Slot slot) {
+      slots.put(slot.key, slot);
+      sqls.computeIfAbsent(slot.entry.sql, sql -> new SqlCount()).entries++;
+    }
+
+    /**
+     * @return true if the session has no entries left
+     */
+    boolean remove(Slot slot) {
+      slots.remove(slot.key);
+      SqlCount count = sqls.get(slot.entry.sql);
+      if (slot.slow && --count.slowEntries == 0) slowSQLCount--;
+      if (--count.entries == 0) sqls.remove(slot.entry.sql);
+      return slots.isEmpty();
+    }
+
+    void slowChanged(Slot slot) {
+      SqlCount count = sqls.get(slot.entry.sql);
+      if (slot.slow) {
+        if (count.slowEntries++ == 0) slowSQLCount++;
+      }
+      else if (--count.slowEntries == 0) slowSQLCount--;
+    }
+
+    long distinctSQLCount(boolean slow) {
+      return slow ? slowSQLCount : sqls.size();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package play.db;
+
+import java.util.Properties;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.lang.StringUtils.isBlank;
+import static play.libs.Time.parseDuration;
+
+/**
+ * Thresholds of {@link LogEntry#isSlow()}, configurable in application.conf:
+ * <pre>
+ * trackSlowSQL.threshold.total=200ms
+ * trackSlowSQL.threshold.average=100ms
+ * trackSlowSQL.threshold.p50=
+ * trackSlowSQL.threshold.p90=
+ * trackSlowSQL.threshold.p99=
+ * trackSlowSQL.threshold.max=
+ * </pre>
+ * Values are milliseconds ("200" or "200ms") or Play durations ("1s"). Empty value disables the threshold.
+ * SQL is slow if any of the enabled thresholds is exceeded.
+ */
+final class SlowSQLThresholds {
+  private static final String PREFIX = "trackSlowSQL.threshold.";
+
+  static volatile SlowSQLThresholds current = load(new Properties());
+
+  final long totalNanos;
+  final long averageNanos;
+  final long p50Nanos;
+  final long p90Nanos;
+  final long p99Nanos;
+  final long maxNanos;
+  /**
+   * enabled percentile thresholds, ascending, so that they are all evaluated with one scan of the histogram
+   */
+  private final double[] percentiles;
+  private final long[] percentileThresholdsNanos;
+
+  private SlowSQLThresholds(Properties configuration) {
+    totalNanos = nanos(configuration, "total", "200ms");
+    averageNanos = nanos(configuration, "average", "100ms");
+    p50Nanos = nanos(configuration, "p50", null);
+    p90Nanos = nanos(configuration, "p90", null);
+    p99Nanos = nanos(configuration, "p99", null);
+    maxNanos = nanos(configuration, "max", null);
+
+    long[] thresholds = {p50Nanos, p90Nanos, p99Nanos};
+    double[] of = {50, 90, 99};
+    int enabled = 0;
+    for (long threshold : thresholds) if (threshold >= 0) enabled++;
+    percentiles = new double[enabled];
+    percentileThresholdsNanos = new long[enabled];
+    for (int i = 0, j = 0; i < thresholds.length; i++) {
+      if (thresholds[i] < 0) continue;
+      percentiles[j] = of[i];
+      percentileThresholdsNanos[j++] = thresholds[i];
+    }
+  }
+
+  static SlowSQLThresholds load(Properties configuration) {
+    return new SlowSQLThresholds(configuration);
+  }
+
+  boolean isSlow(LogEntry log) {
+    long count = log.getCount();
+    if (exceeds(log.getTotalDurationNanos(), totalNanos) ||
+        count > 0 && exceeds(log.getTotalDurationNanos() / count, averageNanos) ||
+        exceeds(log.getMaxNanos(), maxNanos)) {
+      return true;
+    }
+    if (percentiles.length == 0) return false;
+    long[] values = log.getPercentilesNanos(percentiles);
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] > percentileThresholdsNanos[i]) return true;
+    }
+    return false;
+  }
+
+  private static boolean exceeds(long valueNanos, long thresholdNanos) {
+    return thresholdNanos >= 0 && valueNanos > thresholdNanos;
+  }
+
+  private static long nanos(Properties configuration, String name, String defaultValue) {
+    return parseNanos(configuration.getProperty(PREFIX + name, defaultValue));
+  }
+
+  /**
+   * @return nanoseconds of milliseconds ("200" or "200ms") or Play duration ("1s"), -1 if blank
+   */
+  static long parseNanos(String value) {
+    if (isBlank(value)) return -1;
+    value = value.trim();
+    if (value.endsWith("ms")) return MILLISECONDS.toNanos(Long.parseLong(value.substring(0, value.length() - 2).trim()));
+    if (value.chars().allMatch(Character::isDigit)) return MILLISECONDS.toNanos(Long.parseLong(value));
+    return SECONDS.toNanos(parseDuration(value));
+  }
+}
@@ -0,0 +1,257 @@
+package play.db;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Normalizes SQL to the shape of the statement, so that executions differing only
+ * in inlined literals, length of IN lists or formatting are aggregated together:
+ *
+ * <pre>
+ * select * from person where id in (1, 2, 3)   and name = 'John'  -- comment
+ * select * from person where id in (?) and name = ?
+ * </pre>
+ *
+ * <ul>
+ *   <li>string and numeric literals, as well as JPA-style {@code ?1} parameters become {@code ?}</li>
+ *   <li>IN lists consisting only of literals and parameters become {@code (?)}</li>
+ *   <li>comments are removed, except for Oracle hints {@code /*+ ... *}{@code /}</li>
+ *   <li>whitespace runs become a single space</li>
+ * </ul>
+ *
+ * The fingerprint is computed in a single pass over the text. {@link #shorten(String)} is a separate pass,
+ * only done for display, once per {@link LogEntry}.
+ * Fingerprints of recently seen SQL are memoized, so repeated lookups of the same SQL do not allocate.
+ */
+final class SqlFingerprint {
+  static final int MAX_MEMO_SIZE = 5000;
+
+  private static final ConcurrentMap<String, String> memo = new ConcurrentHashMap<>();
+
+  private SqlFingerprint() {
+  }
+
+  /**
+   * @return fingerprint of given SQL, memoized
+   */
+  static String of(String sql) {
+    String fingerprint = memo.get(sql);
+    if (fingerprint == null) {
+      fingerprint = normalize(sql);
+      if (memo.size() >= MAX_MEMO_SIZE) {
+        // keep it cheap: SQL built with inlined values would otherwise evict the hot statements one by one
+        memo.clear();
+      }
+      memo.put(sql, fingerprint);
+    }
+    return fingerprint;
+  }
+
+  static String normalize(String sql) {
+    int length = sql.length();
+    StringBuilder result = new StringBuilder(length);
+    boolean pendingSpace = false;
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (isWhitespace(c)) {
+        pendingSpace = true;
+        i++;
+        continue;
+      }
+      if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        int end = sql.indexOf('\n', i);
+        i = end < 0 ? length : end + 1;
+        pendingSpace = true;
+        continue;
+      }
+      if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        int end = sql.indexOf("*/", i + 2);
+        end = end < 0 ? length : end + 2;
+        if (i + 2 < length && sql.charAt(i + 2) == '+') {
+          appendSpace(result, pendingSpace);
+          result.append(sql, i, end);
+        }
+        pendingSpace = true;
+        i = end;
+        continue;
+      }
+
+      appendSpace(result, pendingSpace);
+      pendingSpace = false;
+
+      if (c == '\'') {
+        result.append('?');
+        i = skipString(sql, i);
+      }
+      else if (c == '"') {
+        int end = sql.indexOf('"', i + 1);
+        end = end < 0 ? length : end + 1;
+        result.append(sql, i, end);
+        i = end;
+      }
+      else if (c == '?') {
+        result.append('?');
+        i = skipDigits(sql, i + 1);
+      }
+      else if (isDigit(c) && (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))) {
+        result.append('?');
+        i = skipNumber(sql, i);
+      }
+      else if (c == '(' && endsWithKeyword(result, "in")) {
+        int end = skipInList(sql, i);
+        if (end > 0) {
+          result.append("(?)");
+          i = end;
+        }
+        else {
+          result.append(c);
+          i++;
+        }
+      }
+      else {
+        result.append(c);
+        i++;
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * Replaces selected columns and updated values by "...":
+   * <pre>
+   * select id, name from person where id = ?      ->  select ... from person where id = ?
+   * update person set name = ? where id = ?       ->  update person set ... where id = ?
+   * </pre>
+   */
+  static String shorten(String sql) {
+    int length = sql.length();
+    StringBuilder result = new StringBuilder(length);
+    int i = 0;
+    while (i < length) {
+      if (isKeywordFollowedBySpace(sql, i, "select")) {
+        int from = indexOfKeyword(sql, "from", i + 8);
+        if (from >= 0) {
+          result.append("select ... from ");
+          i = from + 6;
+          continue;
+        }
+      }
+      else if (isKeywordFollowedBySpace(sql, i, "update")) {
+        int set = indexOfKeyword(sql, "set", i + 8);
+        int where = set < 0 ? -1 : indexOfKeyword(sql, "where", set + 6);
+        if (where >= 0) {
+          result.append(sql, i, set + 4).append(" ... where ");
+          i = where + 7;
+          continue;
+        }
+      }
+      result.append(sql.charAt(i++));
+    }
+    return result.toString().trim();
+  }
+
+  private static void appendSpace(StringBuilder result, boolean pendingSpace) {
+    if (pendingSpace && result.length() > 0) result.append(' ');
+  }
+
+  private static int skipString(String sql, int start) {
+    int i = start + 1;
+    while (i < sql.length()) {
+      if (sql.charAt(i) == '\'') {
+        if (i + 1 < sql.length() && sql.charAt(i + 1) == '\'') i += 2;
+        else return i + 1;
+      }
+      else i++;
+    }
+    return i;
+  }
+
+  private static int skipDigits(String sql, int i) {
+    while (i < sql.length() && isDigit(sql.charAt(i))) i++;
+    return i;
+  }
+
+  private static int skipNumber(String sql, int start) {
+    int i = skipDigits(sql, start);
+    if (i < sql.length() && sql.charAt(i) == '.') i = skipDigits(sql, i + 1);
+    if (i + 1 < sql.length() && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+      int exponent = i + 1;
+      if (sql.charAt(exponent) == '+' || sql.charAt(exponent) == '-') exponent++;
+      if (exponent < sql.length() && isDigit(sql.charAt(exponent))) i = skipDigits(sql, exponent);
+    }
+    return i;
+  }
+
+  /**
+   * @return position after the closing parenthesis of a list of literals and parameters starting at {@code start},
+   * or -1 if it's not such a list (e.g. a subquery)
+   */
+  private static int skipInList(String sql, int start) {
+    int length = sql.length();
+    int i = start + 1;
+    while (true) {
+      while (i < length && isWhitespace(sql.charAt(i))) i++;
+      if (i >= length) return -1;
+      char c = sql.charAt(i);
+      if (c == '?') i = skipDigits(sql, i + 1);
+      else if (c == '\'') i = skipString(sql, i);
+      else if (isDigit(c)) i = skipNumber(sql, i);
+      else if ((c == '-' || c == '+') && i + 1 < length && isDigit(sql.charAt(i + 1))) i = skipNumber(sql, i + 1);
+      else return -1;
+      while (i < length && isWhitespace(sql.charAt(i))) i++;
+      if (i >= length) return -1;
+      c = sql.charAt(i++);
+      if (c == ')') return i;
+      if (c != ',') return -1;
+    }
+  }
+
+  private static boolean endsWithKeyword(StringBuilder sql, String keyword) {
+    int end = sql.length();
+    if (end > 0 && sql.charAt(end - 1) == ' ') end--;
+    int start = end - keyword.length();
+    if (start < 0 || (start > 0 && isIdentifierPart(sql.charAt(start - 1)))) return false;
+    for (int i = 0; i < keyword.length(); i++) {
+      if (Character.toLowerCase(sql.charAt(start + i)) != keyword.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return whether {@code keyword} followed by whitespace starts at word boundary {@code i}
+   */
+  private static boolean isKeywordFollowedBySpace(String sql, int i, String keyword) {
+    int end = i + keyword.length();
+    return end < sql.length() && sql.startsWith(keyword, i) && isWhitespace(sql.charAt(end)) &&
+        (i == 0 || !isWordChar(sql.charAt(i - 1)));
+  }
+
+  /**
+   * @return position of the first whitespace that is followed by {@code keyword} and whitespace, searching from {@code from}
+   */
+  private static int indexOfKeyword(String sql, String keyword, int from) {
+    for (int i = from; i + keyword.length() + 1 < sql.length(); i++) {
+      if (isWhitespace(sql.charAt(i)) && sql.startsWith(keyword, i + 1) && isWhitespace(sql.charAt(i + 1 + keyword.length()))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0x0B;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isWordChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return isWordChar(c) || c == '$' || c == '#' || c == '.';
+  }
+}
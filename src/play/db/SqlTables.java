@@ -0,0 +1,270 @@
+package play.db;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Finds names of tables read or modified by SQL, without a full parser:
+ *
+ * <pre>
+ * select * from person p, address a join city c on ... where ...   ->  [person, address, city]
+ * update hr.person set name = ? where id = ?                        ->  person
+ * </pre>
+ * and columns bound to parameters:
+ * <pre>
+ * update person set name = ? where id in (?, ?)                    ->  [name, id, id]
+ * insert into person (id, name) values (?, upper(?))               ->  [id, name]
+ * </pre>
+ *
+ * Names are lower-cased and stripped of schema and quotes, so different schemas may collide;
+ * that only makes {@link QueryResultCache} invalidate more than necessary.
+ */
+final class SqlTables {
+  private static final String[] NONE = new String[0];
+
+  private SqlTables() {
+  }
+
+  /**
+   * @return tables following "from" (including comma-separated lists) and "join" keywords,
+   * or an empty array if there are none
+   */
+  static String[] queried(String sql) {
+    Set<String> tables = new LinkedHashSet<>();
+    String lower = sql.toLowerCase(Locale.ROOT);
+    for (int i = 0; i < lower.length(); i++) {
+      if (isKeywordAt(lower, i, "from") || isKeywordAt(lower, i, "join")) {
+        int position = i + 4;
+        while (true) {
+          position = skipWhitespace(lower, position);
+          int end = identifierEnd(lower, position);
+          if (end == position) break;
+          tables.add(tableName(lower, position, end));
+          position = skipAlias(lower, end);
+          if (position >= lower.length() || lower.charAt(position) != ',') break;
+          position++;
+        }
+      }
+    }
+    return tables.isEmpty() ? NONE : tables.toArray(NONE);
+  }
+
+  /**
+   * @return table changed by insert, update, delete, merge or truncate statement, or null for other statements
+   */
+  static String modified(String sql) {
+    String lower = sql.toLowerCase(Locale.ROOT);
+    int i = skipWhitespace(lower, 0);
+    int position;
+    if (isKeywordAt(lower, i, "insert") || isKeywordAt(lower, i, "merge")) position = afterKeyword(lower, i, "into");
+    else if (isKeywordAt(lower, i, "delete")) position = afterOptionalKeyword(lower, i + 6, "from");
+    else if (isKeywordAt(lower, i, "update")) position = i + 6;
+    else if (isKeywordAt(lower, i, "truncate")) position = afterOptionalKeyword(lower, i + 8, "table");
+    else return null;
+    if (position < 0) return null;
+
+    position = skipWhitespace(lower, position);
+    int end = identifierEnd(lower, position);
+    return end == position ? null : tableName(lower, position, end);
+  }
+
+  /**
+   * @return column compared with, assigned to or inserted into by each {@code ?} parameter,
+   * null for parameters used otherwise
+   */
+  static String[] parameterColumns(String sql) {
+    String lower = sql.toLowerCase(Locale.ROOT);
+    List<String> result = new ArrayList<>();
+    List<String> insertColumns = null;
+    Deque<Group> groups = new ArrayDeque<>();
+    String lastIdentifier = null;
+    String comparedColumn = null;
+    String previousToken = "";
+    boolean insert = isKeywordAt(lower, skipWhitespace(lower, 0), "insert");
+
+    int i = 0;
+    while (i < lower.length()) {
+      char c = lower.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+        continue;
+      }
+      String token;
+      if (c == '\'') {
+        int end = lower.indexOf('\'', i + 1);
+        i = end < 0 ? lower.length() : end + 1;
+        token = "literal";
+      }
+      else if (c == '"' || c == '`' || isIdentifierPart(c)) {
+        int end = identifierEnd(lower, i);
+        if (end == i) end = i + 1;
+        String word = lower.substring(i, end);
+        i = end;
+        if (isOperatorKeyword(word)) {
+          if (!"not".equals(word)) comparedColumn = lastIdentifier;
+          token = word;
+        }
+        else if ("values".equals(word) || "and".equals(word) || "or".equals(word)) {
+          token = word;
+        }
+        else {
+          lastIdentifier = tableName(word, 0, word.length());
+          if (groups.peek() != null && groups.peek().kind == Group.COLUMNS) insertColumns.add(lastIdentifier);
+          token = "identifier";
+        }
+      }
+      else if (c == '=' || c == '<' || c == '>' || c == '!') {
+        comparedColumn = lastIdentifier;
+        while (i < lower.length() && "=<>!".indexOf(lower.charAt(i)) >= 0) i++;
+        token = "=";
+      }
+      else if (c == '(') {
+        int kind = "in".equals(previousToken) ? Group.IN :
+            "values".equals(previousToken) ? Group.VALUES :
+            insert && insertColumns == null && "identifier".equals(previousToken) ? Group.COLUMNS : Group.OTHER;
+        if (kind == Group.COLUMNS) insertColumns = new ArrayList<>();
+        boolean afterOperator = "=".equals(previousToken) || isOperatorKeyword(previousToken);
+        groups.push(new Group(kind, kind == Group.IN || afterOperator ? comparedColumn : null));
+        i++;
+        token = "(";
+      }
+      else if (c == ')') {
+        groups.poll();
+        i++;
+        token = ")";
+      }
+      else if (c == ',') {
+        if (groups.peek() != null) groups.peek().index++;
+        i++;
+        token = ",";
+      }
+      else if (c == '?') {
+        Group group = groups.peek();
+        String column = null;
+        if ("=".equals(previousToken) || isOperatorKeyword(previousToken)) column = comparedColumn;
+        else if (group != null && group.kind == Group.VALUES) {
+          column = insertColumns != null && group.index < insertColumns.size() ? insertColumns.get(group.index) : null;
+        }
+        else if (group != null) column = group.column;
+        if (group != null && group.kind == Group.OTHER && column == null && groups.size() > 1) {
+          // function call in values, e.g. values (?, upper(?))
+          Group outer = groups.toArray(new Group[0])[1];
+          if (outer.kind == Group.VALUES && insertColumns != null && outer.index < insertColumns.size()) column = insertColumns.get(outer.index);
+        }
+        result.add(column);
+        i = skipDigits(lower, i + 1);
+        token = "?";
+      }
+      else {
+        i++;
+        token = String.valueOf(c);
+      }
+      previousToken = token;
+    }
+    return result.toArray(NONE);
+  }
+
+  private static boolean isOperatorKeyword(String word) {
+    return "like".equals(word) || "in".equals(word) || "not".equals(word) || "between".equals(word);
+  }
+
+  private static int skipDigits(String sql, int i) {
+    while (i < sql.length() && Character.isDigit(sql.charAt(i))) i++;
+    return i;
+  }
+
+  private static final class Group {
+    static final int OTHER = 0;
+    static final int IN = 1;
+    static final int VALUES = 2;
+    static final int COLUMNS = 3;
+
+    final int kind;
+    final String column;
+    int index;
+
+    Group(int kind, String column) {
+      this.kind = kind;
+      this.column = column;
+    }
+  }
+
+  private static String tableName(String sql, int start, int end) {
+    int dot = sql.lastIndexOf('.', end - 1);
+    if (dot >= start) start = dot + 1;
+    if (sql.charAt(start) == '"' || sql.charAt(start) == '`') start++;
+    if (end > start && (sql.charAt(end - 1) == '"' || sql.charAt(end - 1) == '`')) end--;
+    return sql.substring(start, end);
+  }
+
+  /**
+   * @return position after identifier (possibly quoted and qualified by schema) starting at {@code start}
+   */
+  private static int identifierEnd(String sql, int start) {
+    int i = start;
+    while (i < sql.length()) {
+      char c = sql.charAt(i);
+      if (c == '"' || c == '`') {
+        int end = sql.indexOf(c, i + 1);
+        i = end < 0 ? sql.length() : end + 1;
+      }
+      else if (isIdentifierPart(c) || c == '.' && i > start) i++;
+      else break;
+    }
+    return i;
+  }
+
+  /**
+   * @return position after optional table alias ("person p", "person as p"), at the next non-whitespace character
+   */
+  private static int skipAlias(String sql, int i) {
+    i = skipWhitespace(sql, i);
+    if (isKeywordAt(sql, i, "as")) i = skipWhitespace(sql, i + 2);
+    int end = identifierEnd(sql, i);
+    if (end > i && !isReservedWord(sql.substring(i, end))) i = skipWhitespace(sql, end);
+    return i;
+  }
+
+  private static boolean isReservedWord(String word) {
+    switch (word) {
+      case "where": case "join": case "inner": case "left": case "right": case "full": case "cross": case "natural":
+      case "on": case "using": case "group": case "order": case "having": case "union": case "minus": case "except":
+      case "intersect": case "for": case "limit": case "offset": case "fetch": case "connect": case "start": case "set":
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static int afterKeyword(String sql, int i, String keyword) {
+    int position = sql.indexOf(keyword, i);
+    while (position >= 0 && !isKeywordAt(sql, position, keyword)) position = sql.indexOf(keyword, position + 1);
+    return position < 0 ? -1 : position + keyword.length();
+  }
+
+  private static int afterOptionalKeyword(String sql, int i, String keyword) {
+    int position = skipWhitespace(sql, i);
+    return isKeywordAt(sql, position, keyword) ? position + keyword.length() : i;
+  }
+
+  private static boolean isKeywordAt(String sql, int i, String keyword) {
+    int end = i + keyword.length();
+    return sql.startsWith(keyword, i) &&
+        (i == 0 || !isIdentifierPart(sql.charAt(i - 1))) &&
+        (end == sql.length() || !isIdentifierPart(sql.charAt(end)));
+  }
+
+  private static int skipWhitespace(String sql, int i) {
+    while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) i++;
+    return i;
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#';
+  }
+}
@@ -0,0 +1,94 @@
+package play.db;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executions of a statement {@link SqlFingerprint fingerprint} across all requests and jobs,
+ * aggregated as they are recorded so that exporting metrics does not scan the slow SQL log.
+ *
+ * <p>At most {@link #MAX_STATEMENTS} fingerprints are tracked, executions of others are
+ * aggregated under SQL "other".
+ */
+public class StatementMetrics {
+  static final int MAX_STATEMENTS = 1000;
+
+  private static final ConcurrentMap<String, StatementMetrics> statements = new ConcurrentHashMap<>();
+  private static final StatementMetrics other = new StatementMetrics("other");
+
+  private final String sql;
+  private final String id;
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalDurationNanos = new AtomicLong();
+  private final LatencyHistogram histogram = new LatencyHistogram();
+
+  private StatementMetrics(String sql) {
+    this.sql = sql;
+    this.id = String.format("%08x", sql.hashCode());
+  }
+
+  static void record(String sql, long durationNanos) {
+    StatementMetrics metrics = statements.get(sql);
+    if (metrics == null) {
+      metrics = statements.size() < MAX_STATEMENTS ? statements.computeIfAbsent(sql, StatementMetrics::new) : other;
+    }
+    metrics.count.incrementAndGet();
+    metrics.totalDurationNanos.addAndGet(durationNanos);
+    metrics.histogram.record(durationNanos);
+  }
+
+  /**
+   * @return metrics of all tracked statements, including "other" if there were too many
+   */
+  public static Collection<StatementMetrics> all() {
+    if (other.count.get() == 0) return Collections.unmodifiableCollection(statements.values());
+    ConcurrentMap<String, StatementMetrics> result = new ConcurrentHashMap<>(statements);
+    result.put(other.sql, other);
+    return result.values();
+  }
+
+  static void reset() {
+    statements.clear();
+    other.count.set(0);
+    other.totalDurationNanos.set(0);
+    other.histogram.reset();
+  }
+
+  public String getSql() {
+    return sql;
+  }
+
+  /**
+   * @return short stable identifier of the SQL (hex of its hash)
+   */
+  public String getId() {
+    return id;
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getTotalDurationNanos() {
+    return totalDurationNanos.get();
+  }
+
+  public long getP50Nanos() {
+    return histogram.getPercentileNanos(50);
+  }
+
+  public long getP90Nanos() {
+    return histogram.getPercentileNanos(90);
+  }
+
+  public long getP99Nanos() {
+    return histogram.getPercentileNanos(99);
+  }
+
+  public long getMaxNanos() {
+    return histogram.getMaxNanos();
+  }
+}
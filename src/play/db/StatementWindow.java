@@ -0,0 +1,42 @@
+package play.db;
+
+/**
+ * Executions of a statement in a time window of {@link RollingStatementStats} or {@link SQLJournalReader}.
+ */
+public final class StatementWindow {
+  private final String sql;
+  private final long count;
+  private final long totalDurationNanos;
+  private final long maxNanos;
+
+  StatementWindow(String sql, long count, long totalDurationNanos, long maxNanos) {
+    this.sql = sql;
+    this.count = count;
+    this.totalDurationNanos = totalDurationNanos;
+    this.maxNanos = maxNanos;
+  }
+
+  public String getSql() {
+    return sql;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getTotalDurationNanos() {
+    return totalDurationNanos;
+  }
+
+  public long getAverageNanos() {
+    return count == 0 ? 0 : totalDurationNanos / count;
+  }
+
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  @Override public String toString() {
+    return count + " executions, " + totalDurationNanos / 1000000 + " ms: " + sql;
+  }
+}
@@ -0,0 +1,209 @@
+package play.db;
+
+import java.sql.CallableStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * CallableStatement that reports how long its executions took to an {@link ExecutionTimeListener}.
+ *
+ * @see TimedStatement
+ */
+class TimedCallableStatement extends DelegatingCallableStatement {
+  private final ExecutionTimeListener listener;
+
+  TimedCallableStatement(ExecutionTimeListener listener, CallableStatement statement) {
+    super(statement);
+    this.listener = listener;
+  }
+
+  @Override public ResultSet executeQuery() throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeQuery();
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public int executeUpdate() throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeUpdate();
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public boolean execute() throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.execute();
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public long executeLargeUpdate() throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeUpdate();
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public ResultSet executeQuery(String sql) throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeQuery(sql);
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public int executeUpdate(String sql) throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeUpdate(sql);
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public boolean execute(String sql) throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.execute(sql);
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public int[] executeBatch() throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeBatch();
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeUpdate(sql, autoGeneratedKeys);
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeUpdate(sql, columnIndexes);
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeUpdate(sql, columnNames);
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.execute(sql, autoGeneratedKeys);
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.execute(sql, columnIndexes);
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public boolean execute(String sql, String[] columnNames) throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.execute(sql, columnNames);
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public long[] executeLargeBatch() throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeBatch();
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public long executeLargeUpdate(String sql) throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeUpdate(sql);
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeUpdate(sql, autoGeneratedKeys);
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeUpdate(sql, columnIndexes);
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+
+  @Override public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeUpdate(sql, columnNames);
+    }
+    finally {
+      listener.executed(System.nanoTime() - start);
+    }
+  }
+}
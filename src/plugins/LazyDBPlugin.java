@@ -5,20 +5,51 @@ import com.zaxxer.hikari.HikariDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import play.Play;
+import play.db.ConcurrencyLimiter;
+import play.db.Configuration;
 import play.db.DB;
 import play.db.DBPlugin;
+import play.db.DataSourceStatus;
+import play.db.MetricsExporter;
 import play.db.LazyConnectionDataSourceProxy;
+import play.db.OptimizingConnectionDecorator;
+import play.db.OracleEndToEndMetrics;
+import play.db.ReplicaSelection;
+import play.db.RequestDeadline;
+import play.db.SlowSQLHelper;
+import play.exceptions.DatabaseException;
+import play.mvc.Http;
 
 import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.apache.commons.lang.StringUtils.isNotEmpty;
 import static play.db.LoggingConnectionDecorator.loggingConnectionDataSourceProxy;
+import static play.db.OptimizingConnectionDecorator.optimizingConnectionDataSourceProxy;
 
 public class LazyDBPlugin extends DBPlugin {
   private static final Logger logger = LoggerFactory.getLogger(LazyDBPlugin.class);
   private DBModifier dbModifier = new DBModifier();
+  private boolean trackSlowSQL;
+  private boolean asyncStartup;
+  private final Map<String, List<DataSource>> replicas = new HashMap<>();
+  private OracleEndToEndMetrics endToEndMetrics;
 
   @Override public void onLoad() {
     // disable built-in DBPlugin (if it's not already disabled)
@@ -29,23 +60,81 @@ public class LazyDBPlugin extends DBPlugin {
   }
 
   @Override public void onApplicationStart() {
+    trackSlowSQL = "true".equals(Play.configuration.getProperty("trackSlowSQL", "false"));
+    SlowSQLHelper.configure(Play.configuration);
+    OptimizingConnectionDecorator.configure(Play.configuration);
+    RequestDeadline.configure(Play.configuration);
     if (DB.datasource != null) {
       logger.warn("Not rebuilding DB connection pool on restart");
       return;
     }
 
+    asyncStartup = "true".equals(Play.configuration.getProperty("db.startup.async", "false"));
     super.onApplicationStart();
     setPreferredTestQueryForConnectionPool();
     dbModifier.makeDataSourceLazyAndTrackable();
     stopUselessMySqlCleanupThread();
+    if (!"false".equals(Play.configuration.getProperty("db.metrics.jmx", "true"))) {
+      MetricsExporter.registerMBeans(dbModifier.dataSources());
+    }
   }
 
   @Override public void onApplicationStop() {
+    MetricsExporter.unregisterMBeans();
     DB.destroyAll();
+    destroyReplicas();
+  }
+
+  /**
+   * Serves metrics in Prometheus format at path configured by "db.metrics.path", e.g. "/@metrics/db".
+   */
+  @Override public boolean rawInvocation(Http.Request request, Http.Response response) throws Exception {
+    String metricsPath = Play.configuration.getProperty("db.metrics.path");
+    if (metricsPath == null || !metricsPath.equals(request.path)) return false;
+
+    response.contentType = "text/plain; version=0.0.4; charset=utf-8";
+    response.status = Http.StatusCode.OK;
+    response.print(MetricsExporter.prometheus(dbModifier.dataSources()));
+    return true;
+  }
+
+  @Override public void beforeInvocation() {
+    if (trackSlowSQL) {
+      SlowSQLHelper.startInvocation();
+    }
+  }
+
+  @Override public void invocationFinally() {
+    try {
+      super.invocationFinally();
+    }
+    finally {
+      if (trackSlowSQL) {
+        SlowSQLHelper.endInvocation();
+      }
+    }
   }
 
   @Override public String getStatus() {
-    return null; // wrapped DataSource is not supported by DBPlugin, but we have ConnectionMonitoringPlugin for that
+    StringWriter sw = new StringWriter();
+    PrintWriter out = new PrintWriter(sw);
+    out.println("Datasources:");
+    out.println("~~~~~~~~~~~~");
+    for (Map.Entry<String, DataSource> entry : dbModifier.dataSources().entrySet()) {
+      DataSourceStatus.print(out, entry.getKey(), entry.getValue());
+    }
+    return sw.toString();
+  }
+
+  /**
+   * Play connects to every db after creating its pool, one db after another. With "db.startup.async"
+   * the pool is started and validated in background instead, see {@link DBModifier#makeDataSourceLazyAndTrackable()}.
+   * Before creating the pools Play still checks every db with DriverManager.getConnection one after another,
+   * so an unreachable db still delays startup by its driver's connect timeout.
+   */
+  @Override protected String testDataSource(DataSource ds) throws SQLException {
+    if (!asyncStartup || !(ds instanceof HikariDataSource)) return super.testDataSource(ds);
+    return ((HikariDataSource) ds).getJdbcUrl();
   }
 
   private void setPreferredTestQueryForConnectionPool() {
@@ -53,31 +142,160 @@ public class LazyDBPlugin extends DBPlugin {
     String testQuery = Play.configuration.getProperty("db.testquery");
     if (Play.mode.isProd() && isNotEmpty(testQuery) && ds.getJdbcUrl().contains("oracle")) {
       ds.setConnectionTestQuery(testQuery);
-//      ds.setConnectionCustomizerClassName(OracleConnectionCustomizer.class.getName());
     }
   }
   
   private class DBModifier extends DB {
-    void makeDataSourceLazyAndTrackable() {
-      // use Lazy connections with Play datasource to avoid getting connections for read-only requests
-      datasource = wrapDataSource(datasource);
+    Map<String, DataSource> dataSources() {
+      Map<String, DataSource> result = new TreeMap<>();
+      for (Map.Entry<String, ExtendedDatasource> entry : datasources.entrySet()) {
+        result.put(entry.getKey(), entry.getValue().getDataSource());
+      }
+      return result;
+    }
 
-      Map<String, ExtendedDatasource> originalDataSources = new HashMap<>(datasources);
-      for (Map.Entry<String, ExtendedDatasource> entry : originalDataSources.entrySet()) {
-        DataSource lazyDataSource = wrapDataSource(entry.getValue().getDataSource());
-        datasources.put(entry.getKey(), new ExtendedDatasource(lazyDataSource, destroyMethod));
+    /**
+     * With "db.startup.async", connections to all dbs are made in parallel in background: they validate the db,
+     * start its pool (which then fills up to its minimum size) and determine default transaction isolation.
+     * Default auto-commit is taken from the pool configuration. Startup does not wait for the pools to connect.
+     */
+    void makeDataSourceLazyAndTrackable() {
+      ExecutorService startup = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "db-startup");
+        thread.setDaemon(true);
+        return thread;
+      });
+      try {
+        // use Lazy connections with Play datasource to avoid getting connections for read-only requests;
+        // the default datasource is also in datasources, it gets the same lazy proxy (and concurrency limiter)
+        Map<DataSource, DataSource> wrapped = new IdentityHashMap<>();
+        Map<String, ExtendedDatasource> originalDataSources = new HashMap<>(datasources);
+        for (Map.Entry<String, ExtendedDatasource> entry : originalDataSources.entrySet()) {
+          DataSource lazyDataSource = wrapped.computeIfAbsent(entry.getValue().getDataSource(),
+              original -> wrapDataSource(entry.getKey(), original, startup));
+          datasources.put(entry.getKey(), new ExtendedDatasource(lazyDataSource, destroyMethod));
+        }
+        datasource = wrapped.computeIfAbsent(datasource, original -> wrapDataSource(DEFAULT, original, startup));
+      }
+      finally {
+        // started tasks still run to completion
+        startup.shutdown();
       }
     }
 
-    private DataSource wrapDataSource(DataSource originalDataSource) {
-      DataSource dataSource = new LazyConnectionDataSourceProxy(originalDataSource);
-      if ("true".equals(Play.configuration.getProperty("trackSlowSQL", "false"))) {
+    private DataSource wrapDataSource(String dbName, DataSource originalDataSource, ExecutorService startup) {
+      LazyConnectionDataSourceProxy lazyDataSource = new LazyConnectionDataSourceProxy();
+      lazyDataSource.setTargetDataSource(originalDataSource);
+      if (asyncStartup) {
+        if (originalDataSource instanceof HikariDataSource) {
+          setDefaultsFromPool(lazyDataSource, (HikariDataSource) originalDataSource);
+        }
+        lazyDataSource.afterPropertiesSetAsync(startup).whenComplete((result, e) -> {
+          if (e == null) logger.info("Connected to db {}", dbName);
+          else logger.error("Cannot connect to db " + dbName, e.getCause() != null ? e.getCause() : e);
+        });
+      }
+      else {
+        lazyDataSource.afterPropertiesSet();
+      }
+      lazyDataSource.setUseDynamicProxy("true".equals(Play.configuration.getProperty("db.lazyConnection.dynamicProxy", "false")));
+      lazyDataSource.setReleaseTargetEarly("true".equals(Play.configuration.getProperty("db.lazyConnection.releaseEarly", "false")));
+      List<DataSource> dbReplicas = replicas.computeIfAbsent(dbName, LazyDBPlugin.this::createReplicas);
+      if (!dbReplicas.isEmpty()) {
+        String selection = Play.configuration.getProperty("db." + dbName + ".replica.selection", "roundRobin");
+        lazyDataSource.setReplicaDataSources(dbReplicas,
+            "leastInUse".equals(selection) ? ReplicaSelection.LEAST_IN_USE : ReplicaSelection.ROUND_ROBIN);
+        logger.info("Read-only connections of db " + dbName + " go to " + dbReplicas.size() + " replica(s), selection: " + selection);
+      }
+      if (isOracle(originalDataSource) && "true".equals(Play.configuration.getProperty("db.oracle.endToEndMetrics", "true"))) {
+        if (endToEndMetrics == null) endToEndMetrics = OracleEndToEndMetrics.create();
+        lazyDataSource.setEndToEndMetrics(endToEndMetrics);
+      }
+      if ("true".equals(Play.configuration.getProperty("db.lazyConnection.limiter", "false"))) {
+        lazyDataSource.setConcurrencyLimiter(createConcurrencyLimiter(originalDataSource));
+      }
+      DataSource dataSource = lazyDataSource;
+      if (trackSlowSQL) {
         dataSource = loggingConnectionDataSourceProxy(dataSource);
       }
+      // outside of logging, so that executions of batches are logged, but not cached results
+      if (OptimizingConnectionDecorator.isEnabled()) {
+        dataSource = optimizingConnectionDataSourceProxy(dataSource);
+      }
       return dataSource;
     }
   }
 
+  /**
+   * Hikari applies its auto-commit and transaction isolation, if configured, to every connection it hands out.
+   */
+  private static void setDefaultsFromPool(LazyConnectionDataSourceProxy lazyDataSource, HikariDataSource pool) {
+    lazyDataSource.setDefaultAutoCommit(pool.isAutoCommit());
+    String isolation = pool.getTransactionIsolation();
+    if (isolation == null) return;
+    try {
+      lazyDataSource.setDefaultTransactionIsolation(Connection.class.getField(isolation).getInt(null));
+    }
+    catch (NoSuchFieldException | IllegalAccessException e) {
+      logger.warn("Unknown transaction isolation {}", isolation);
+    }
+  }
+
+  private static boolean isOracle(DataSource dataSource) {
+    return dataSource instanceof HikariDataSource && String.valueOf(((HikariDataSource) dataSource).getJdbcUrl()).contains("oracle");
+  }
+
+  private ConcurrencyLimiter createConcurrencyLimiter(DataSource dataSource) {
+    int poolSize = dataSource instanceof HikariDataSource ? ((HikariDataSource) dataSource).getMaximumPoolSize() : 100;
+    int max = Integer.parseInt(Play.configuration.getProperty("db.lazyConnection.limiter.max", String.valueOf(poolSize)));
+    int min = Integer.parseInt(Play.configuration.getProperty("db.lazyConnection.limiter.min", String.valueOf(Math.min(4, max))));
+    int initial = Integer.parseInt(Play.configuration.getProperty("db.lazyConnection.limiter.initial", String.valueOf(max)));
+    return new ConcurrencyLimiter(initial, min, max);
+  }
+
+  /**
+   * Replicas of db are configured like dbs themselves, e.g. for the default db:
+   * <pre>
+   * db.default.replica.1.url=...
+   * db.default.replica.1.user=...
+   * db.default.replica.1.pass=...
+   * db.default.replica.1.driver=...
+   * </pre>
+   */
+  private List<DataSource> createReplicas(String dbName) {
+    Pattern urlKey = Pattern.compile("db\\." + Pattern.quote(dbName) + "\\.replica\\.([^.]+)\\.url");
+    List<DataSource> result = new ArrayList<>();
+    for (String key : new TreeSet<>(Play.configuration.stringPropertyNames())) {
+      Matcher matcher = urlKey.matcher(key);
+      if (matcher.matches()) {
+        Configuration replicaConfig = new Configuration(dbName + ".replica." + matcher.group(1));
+        try {
+          result.add(factory(replicaConfig).createDataSource(replicaConfig));
+        }
+        catch (Exception e) {
+          throw new DatabaseException("Cannot connect to replica " + matcher.group(1) + " of db " + dbName, e);
+        }
+      }
+    }
+    return result;
+  }
+
+  private void destroyReplicas() {
+    for (List<DataSource> dbReplicas : replicas.values()) {
+      for (DataSource replica : dbReplicas) {
+        if (replica instanceof Closeable) {
+          try {
+            ((Closeable) replica).close();
+          }
+          catch (IOException e) {
+            logger.warn("Failed to close replica " + replica, e);
+          }
+        }
+      }
+    }
+    replicas.clear();
+  }
+
   private void stopUselessMySqlCleanupThread() {
     if (!"com.mysql.jdbc.Driver".equals(Play.configuration.getProperty("db.driver"))) {
       AbandonedConnectionCleanupThread.uncheckedShutdown();
@@ -0,0 +1,98 @@
+package play.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.stubbing.OngoingStubbing;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class AdaptiveFetchSizeTest {
+  Connection connection = mock(Connection.class);
+  PreparedStatement statement = mock(PreparedStatement.class);
+  ResultSet resultSet = mock(ResultSet.class);
+  Connection optimizingConnection = new OptimizingConnectionDecorator(connection);
+
+  @Before
+  public void setUp() throws SQLException {
+    Properties configuration = new Properties();
+    configuration.setProperty("db.fetchSize.adaptive", "true");
+    configuration.setProperty("db.fetchSize.max", "200");
+    OptimizingConnectionDecorator.configure(configuration);
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    when(statement.getFetchSize()).thenReturn(10);
+    when(statement.executeQuery()).thenReturn(resultSet);
+  }
+
+  @After
+  public void tearDown() {
+    OptimizingConnectionDecorator.configure(new Properties());
+    SlowSQLHelper.reset("session");
+    AdaptiveFetchSize.reset();
+  }
+
+  @Test
+  public void usesFetchSizeOfDriverUntilRowsOfTheQueryAreKnown() throws SQLException {
+    readRows("select * from person where id in (1, 2)", 95);
+    verify(statement, never()).setFetchSize(anyInt());
+    assertEquals(10, SlowSQLHelper.fetchRoundTrips());
+    assertEquals(0, SlowSQLHelper.fetchRoundTripsSaved());
+
+    readRows("select * from person where id in (3, 4, 5)", 95);
+    verify(statement).setFetchSize(96);
+    assertEquals(11, SlowSQLHelper.fetchRoundTrips());
+    assertEquals(9, SlowSQLHelper.fetchRoundTripsSaved());
+  }
+
+  @Test
+  public void keepsFetchSizeWithinBounds() throws SQLException {
+    readRows("select * from person", 1000);
+    readRows("select * from person", 1000);
+    verify(statement).setFetchSize(200);
+
+    readRows("select * from company", 0);
+    readRows("select * from company", 0);
+    verify(statement, never()).setFetchSize(1);
+  }
+
+  @Test
+  public void doesNotOverrideFetchSizeSetByApplication() throws SQLException {
+    readRows("select * from person", 95);
+
+    PreparedStatement optimizingStatement = optimizingConnection.prepareStatement("select * from person");
+    optimizingStatement.setFetchSize(1000);
+    optimizingStatement.executeQuery().close();
+
+    verify(statement).setFetchSize(1000);
+    verify(statement, never()).setFetchSize(96);
+  }
+
+  @Test
+  public void keepsFetchingAllRowsAtOnceWhenThatIsDriverDefault() throws SQLException {
+    when(statement.getFetchSize()).thenReturn(0);
+    readRows("select * from person", 1000);
+    readRows("select * from person", 1000);
+
+    verify(statement, never()).setFetchSize(anyInt());
+    assertEquals(0, SlowSQLHelper.fetchRoundTripsSaved());
+  }
+
+  private void readRows(String sql, int rows) throws SQLException {
+    OngoingStubbing<Boolean> next = when(resultSet.next());
+    for (int i = 0; i < rows; i++) next = next.thenReturn(true);
+    next.thenReturn(false);
+
+    try (PreparedStatement optimizingStatement = optimizingConnection.prepareStatement(sql);
+         ResultSet optimizingResultSet = optimizingStatement.executeQuery()) {
+      while (optimizingResultSet.next()) {
+      }
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package play.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class AutoBatchingTest {
+  private static final String INSERT = "insert into person (id, name) values (?, ?)";
+
+  Connection connection = mock(Connection.class);
+  PreparedStatement statement = mock(PreparedStatement.class);
+  PreparedStatement query = mock(PreparedStatement.class);
+
+  @Before
+  public void setUp() throws SQLException {
+    Properties configuration = new Properties();
+    configuration.setProperty("db.batching.enabled", "true");
+    configuration.setProperty("db.batching.size", "3");
+    configuration.setProperty("db.batching.ignoreUpdateCount", "(?i)^update audit_log");
+    OptimizingConnectionDecorator.configure(configuration);
+    when(connection.prepareStatement(INSERT)).thenReturn(statement);
+    when(connection.prepareStatement("select count(*) from person")).thenReturn(query);
+  }
+
+  @After
+  public void tearDown() {
+    OptimizingConnectionDecorator.configure(new Properties());
+    SlowSQLHelper.reset("session");
+  }
+
+  @Test
+  public void batchesInsertsPreparedAgainForEachRowUntilCommit() throws SQLException {
+    Connection optimizingConnection = new OptimizingConnectionDecorator(new LoggingConnectionDecorator(connection));
+    for (int id = 1; id <= 2; id++) {
+      try (PreparedStatement insert = optimizingConnection.prepareStatement(INSERT)) {
+        insert.setLong(1, id);
+        assertEquals(1, insert.executeUpdate());
+      }
+    }
+    verify(connection, times(1)).prepareStatement(INSERT);
+    verify(statement, times(2)).addBatch();
+    verify(statement, never()).executeBatch();
+    verify(statement, never()).close();
+
+    optimizingConnection.commit();
+    verify(statement).executeBatch();
+    verify(statement).close();
+    verify(statement, never()).executeUpdate();
+    // logged as one execution of the batch
+    assertEquals(1, SlowSQLHelper.logsByRequest("session").get("[job]").get(0).getCount());
+  }
+
+  @Test
+  public void executesBatchBeforeOtherStatementsAndWhenFull() throws SQLException {
+    Connection optimizingConnection = new OptimizingConnectionDecorator(connection);
+    PreparedStatement insert = optimizingConnection.prepareStatement(INSERT);
+    insert.executeUpdate();
+    optimizingConnection.prepareStatement("select count(*) from person").executeQuery();
+    verify(statement).executeBatch();
+
+    insert.executeUpdate();
+    insert.executeUpdate();
+    insert.executeUpdate();
+    verify(statement, times(2)).executeBatch();
+    verify(query).executeQuery();
+  }
+
+  @Test
+  public void rollbackDiscardsBatch() throws SQLException {
+    Connection optimizingConnection = new OptimizingConnectionDecorator(connection);
+    optimizingConnection.prepareStatement(INSERT).executeUpdate();
+    optimizingConnection.rollback();
+    verify(statement).clearBatch();
+    verify(statement, never()).executeBatch();
+  }
+
+  @Test
+  public void doesNotBatchInAutoCommitModeOrAfterPlainStatements() throws SQLException {
+    when(connection.getAutoCommit()).thenReturn(true);
+    Connection optimizingConnection = new OptimizingConnectionDecorator(connection);
+    optimizingConnection.prepareStatement(INSERT).executeUpdate();
+    verify(statement).executeUpdate();
+
+    when(connection.getAutoCommit()).thenReturn(false);
+    optimizingConnection.createStatement();
+    optimizingConnection.prepareStatement(INSERT).executeUpdate();
+    verify(statement, times(2)).executeUpdate();
+    verify(statement, never()).addBatch();
+  }
+
+  @Test
+  public void rowsOfBatchAreVisibleToQueriesAndErrorsThrownOnCommit() throws SQLException {
+    try (Connection h2 = DriverManager.getConnection("jdbc:h2:mem:autoBatching")) {
+      try (Statement ddl = h2.createStatement()) {
+        ddl.execute("create table person (id int primary key, name varchar(100))");
+      }
+      Connection optimizingConnection = new OptimizingConnectionDecorator(DriverManager.getConnection("jdbc:h2:mem:autoBatching"));
+      optimizingConnection.setAutoCommit(false);
+      insert(optimizingConnection, 1, "Anna");
+      insert(optimizingConnection, 2, "O'Brien");
+      try (PreparedStatement count = optimizingConnection.prepareStatement("select count(*) from person")) {
+        ResultSet resultSet = count.executeQuery();
+        assertTrue(resultSet.next());
+        assertEquals(2, resultSet.getInt(1));
+      }
+
+      insert(optimizingConnection, 2, "Duplicate");
+      try {
+        optimizingConnection.commit();
+        fail("expected BatchUpdateException");
+      }
+      catch (BatchUpdateException expected) {
+      }
+      optimizingConnection.rollback();
+      optimizingConnection.close();
+    }
+  }
+
+  @Test
+  public void batchesOnlySingleRowInsertsAndWhitelistedUpdates() {
+    AutoBatching batching = AutoBatching.current;
+    assertTrue(batching.isBatchable(INSERT));
+    assertTrue(batching.isBatchable("INSERT INTO person VALUES (?, 'a (b)', 'it''s')"));
+    assertTrue(batching.isBatchable("update audit_log set seen = 1 where id = ?"));
+    assertFalse(batching.isBatchable("insert into person values (?, ?), (?, ?)"));
+    assertFalse(batching.isBatchable("insert into person select * from employee"));
+    assertFalse(batching.isBatchable("insert into person (id) values (?) on conflict do nothing"));
+    assertFalse(batching.isBatchable("insert into person (id) values (?) on duplicate key update id = id"));
+    assertFalse(batching.isBatchable("insert ignore into person (id) values (?)"));
+    assertFalse(batching.isBatchable("insert or ignore into person (id) values (?)"));
+    assertFalse(batching.isBatchable("insert low_priority ignore into person (id) values (?)"));
+    assertFalse(batching.isBatchable("update person set name = ? where id = ?"));
+    assertFalse(batching.isBatchable("select * from audit_log"));
+  }
+
+  private static void insert(Connection connection, int id, String name) throws SQLException {
+    try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+      insert.setInt(1, id);
+      insert.setString(2, name);
+      assertEquals(1, insert.executeUpdate());
+    }
+  }
+}
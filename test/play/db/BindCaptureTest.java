@@ -0,0 +1,91 @@
+package play.db;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class BindCaptureTest {
+  private static final String SQL = "select * from users where login = ? and password = ? and status in (?, ?)";
+
+  Connection connection = mock(Connection.class);
+  PreparedStatement statement = mock(PreparedStatement.class);
+
+  @After
+  public void tearDown() {
+    SlowSQLHelper.configure(new Properties());
+    SlowSQLHelper.reset("session");
+  }
+
+  @Test
+  public void keepsTruncatedAndMaskedParametersOfSlowExecutions() throws SQLException {
+    configure("0ms");
+    execute("administrator", "secret");
+
+    List<SlowExecution> executions = logEntry().getSlowestExecutions();
+    assertEquals(1, executions.size());
+    assertEquals(asList("'admin...'", "***", "1", "null"), executions.get(0).binds);
+    verify(statement).setString(1, "administrator");
+    verify(statement).setString(2, "secret");
+  }
+
+  @Test
+  public void doesNotKeepParametersOfFastExecutions() throws SQLException {
+    configure("1mn");
+    execute("admin", "secret");
+    assertTrue(logEntry().getSlowestExecutions().isEmpty());
+  }
+
+  @Test
+  public void keepsWorstExecutions() {
+    LogEntry logEntry = new LogEntry("sql", "request", "session");
+    for (long duration : new long[] {1, 5, 3, 4, 2}) {
+      logEntry.addSlowExecution(duration, new String[] {String.valueOf(duration)}, 2);
+    }
+    List<SlowExecution> executions = logEntry.getSlowestExecutions();
+    assertEquals(2, executions.size());
+    assertEquals(5, executions.get(0).durationNanos);
+    assertEquals(4, executions.get(1).durationNanos);
+  }
+
+  @Test
+  public void findsColumnsOfParameters() {
+    assertEquals(asList("login", "password", "status", "status"), asList(SqlTables.parameterColumns(SQL)));
+    assertEquals(asList("name", "id"), asList(SqlTables.parameterColumns("update person p set p.name = ? where \"ID\" = ?")));
+    assertEquals(asList("id", "name", "card"), asList(SqlTables.parameterColumns(
+        "insert into person (id, name, card) values (?, upper(?), ?)")));
+    assertEquals(asList("name", null), asList(SqlTables.parameterColumns("select * from person where name not like ? limit ?")));
+  }
+
+  private void configure(String threshold) {
+    Properties configuration = new Properties();
+    configuration.setProperty("trackSlowSQL.binds", "true");
+    configuration.setProperty("trackSlowSQL.binds.threshold", threshold);
+    configuration.setProperty("trackSlowSQL.binds.maxLength", "5");
+    configuration.setProperty("trackSlowSQL.binds.mask", "password, card");
+    SlowSQLHelper.configure(configuration);
+  }
+
+  private void execute(String login, String password) throws SQLException {
+    when(connection.prepareStatement(SQL)).thenReturn(statement);
+    try (PreparedStatement loggingStatement = new LoggingConnectionDecorator(connection).prepareStatement(SQL)) {
+      loggingStatement.setString(1, login);
+      loggingStatement.setString(2, password);
+      loggingStatement.setInt(3, 1);
+      loggingStatement.setObject(4, null);
+      loggingStatement.executeQuery();
+    }
+  }
+
+  private static LogEntry logEntry() {
+    return SlowSQLHelper.logsByRequest("session").get("[job]").get(0);
+  }
+}
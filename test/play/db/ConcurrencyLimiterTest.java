@@ -0,0 +1,142 @@
+package play.db;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ConcurrencyLimiterTest {
+  private DataSource targetDataSource = mock(DataSource.class);
+  private LazyConnectionDataSourceProxy dataSource;
+  private ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10);
+
+  @Before
+  public void setUp() throws SQLException {
+    when(targetDataSource.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+    dataSource = new LazyConnectionDataSourceProxy();
+    dataSource.setTargetDataSource(targetDataSource);
+    dataSource.setDefaultAutoCommit(true);
+    dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+    dataSource.setConcurrencyLimiter(limiter);
+  }
+
+  @Test
+  public void shedsConnectionFetchesOverLimit() throws SQLException {
+    Connection first = dataSource.getConnection();
+    Connection second = dataSource.getConnection();
+    Connection third = dataSource.getConnection();
+    first.prepareStatement("select 1");
+    second.prepareStatement("select 1");
+
+    try {
+      third.prepareStatement("select 1");
+      fail("expected SQLTransientException");
+    }
+    catch (SQLTransientException expected) {
+      assertEquals("Too many concurrent database connections: limit 2 reached", expected.getMessage());
+    }
+    assertEquals(1, limiter.getShedCount());
+    assertEquals(2, limiter.getInFlight());
+    verify(targetDataSource, times(2)).getConnection();
+
+    first.close();
+    third.prepareStatement("select 1");
+    assertEquals(2, limiter.getInFlight());
+    second.close();
+    third.close();
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  public void handlesWithoutStatementsDoNotTakePermits() throws SQLException {
+    for (int i = 0; i < 5; i++) {
+      Connection connection = dataSource.getConnection();
+      connection.setAutoCommit(false);
+      connection.commit();
+      connection.close();
+    }
+    assertEquals(0, limiter.getInFlight());
+    assertEquals(0, limiter.getShedCount());
+  }
+
+  @Test
+  public void releasesPermitIfFetchFails() throws SQLException {
+    when(targetDataSource.getConnection()).thenThrow(new SQLException("down"));
+    try {
+      dataSource.getConnection().prepareStatement("select 1");
+      fail("expected SQLException");
+    }
+    catch (SQLException expected) {
+      assertEquals("down", expected.getMessage());
+    }
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  public void limitShrinksWhenLatencyGrowsAndRecoversAfterwards() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 2, 20);
+    for (int i = 0; i < 100; i++) sample(limiter, 20, 10);
+    assertEquals(20, limiter.getLimit());
+
+    for (int i = 0; i < 60; i++) sample(limiter, limiter.getLimit(), 100);
+    assertTrue(limiter.getLimit() <= 5);
+
+    for (int i = 0; i < 100; i++) sample(limiter, limiter.getLimit(), 10);
+    assertEquals(20, limiter.getLimit());
+  }
+
+  @Test
+  public void limitDoesNotGrowWhileMostPermitsAreUnused() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 100);
+    for (int i = 0; i < 100; i++) sample(limiter, 1, 10);
+    assertEquals(10, limiter.getLimit());
+  }
+
+  @Test
+  public void limitFollowsExecutionTimeOfStatementsNotHoldTime() throws Exception {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10);
+    dataSource.setConcurrencyLimiter(limiter);
+    for (int i = 0; i < 20; i++) sample(limiter, 10, 10);
+
+    Connection target = mock(Connection.class);
+    PreparedStatement statement = mock(PreparedStatement.class);
+    when(targetDataSource.getConnection()).thenReturn(target);
+    when(target.prepareStatement(anyString())).thenReturn(statement);
+    when(statement.executeQuery()).thenAnswer(invocation -> {
+      Thread.sleep(1);
+      return null;
+    });
+    leaseWhileOthersHoldPermits(limiter, 100);
+    assertEquals(10, limiter.getLimit());
+
+    when(statement.executeQuery()).thenAnswer(invocation -> {
+      Thread.sleep(100);
+      return null;
+    });
+    leaseWhileOthersHoldPermits(limiter, 0);
+    assertTrue(limiter.getLimit() < 10);
+  }
+
+  private void leaseWhileOthersHoldPermits(ConcurrencyLimiter limiter, long idleMillis) throws Exception {
+    for (int i = 1; i < limiter.getLimit(); i++) assertTrue(limiter.tryAcquire());
+    Connection connection = dataSource.getConnection();
+    connection.prepareStatement("select 1").executeQuery();
+    Thread.sleep(idleMillis);
+    connection.close();
+    while (limiter.getInFlight() > 0) limiter.release();
+  }
+
+  private static void sample(ConcurrencyLimiter limiter, int inFlight, long rttMillis) {
+    for (int i = 0; i < inFlight; i++) assertTrue(limiter.tryAcquire());
+    limiter.release(MILLISECONDS.toNanos(rttMillis));
+    for (int i = 1; i < inFlight; i++) limiter.release();
+  }
+}
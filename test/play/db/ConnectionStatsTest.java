@@ -0,0 +1,94 @@
+package play.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.mvc.Http;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static java.util.Collections.singleton;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class ConnectionStatsTest {
+  private DataSource targetDataSource = mock(DataSource.class);
+  private LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+
+  @Before
+  public void setUp() throws SQLException {
+    when(targetDataSource.getConnection()).thenAnswer(invocation -> {
+      Thread.sleep(2);
+      return mock(Connection.class);
+    });
+    dataSource.setTargetDataSource(targetDataSource);
+    dataSource.setDefaultAutoCommit(true);
+    dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+    ConnectionStats.reset();
+  }
+
+  @After
+  public void tearDown() {
+    Http.Request.current.remove();
+    ConnectionStats.reset();
+  }
+
+  @Test
+  public void recordsAcquireAndHoldTimePerAction() throws SQLException, InterruptedException {
+    Connection connection = dataSource.getConnection();
+    connection.createStatement();
+    Thread.sleep(5);
+    connection.close();
+    connection.close();
+
+    assertEquals(singleton("job"), ConnectionStats.byAction().keySet());
+    ConnectionStats stats = ConnectionStats.byAction().get("job");
+    assertEquals(1, stats.getAcquireTime().getCount());
+    assertTrue(stats.getAcquireTime().getMaxNanos() >= 2_000_000);
+    assertEquals(1, stats.getHoldTime().getCount());
+    assertTrue(stats.getAverageHoldNanos() >= 5_000_000);
+    assertEquals(0, stats.getUnusedHandles());
+    assertEquals(1, ConnectionStats.total().getHoldTime().getCount());
+  }
+
+  @Test
+  public void countsHandlesClosedWithoutFetchingConnection() throws SQLException {
+    dataSource.getConnection().close();
+    Connection connection = dataSource.getConnection();
+    connection.setAutoCommit(false);
+    connection.commit();
+    connection.close();
+    connection.close();
+
+    assertEquals(2, ConnectionStats.total().getUnusedHandles());
+    assertEquals(2, ConnectionStats.byAction().get("job").getUnusedHandles());
+    assertEquals(0, ConnectionStats.total().getAcquireTime().getCount());
+  }
+
+  @Test
+  public void dynamicProxiesAreCountedToo() throws SQLException {
+    dataSource.setUseDynamicProxy(true);
+    dataSource.getConnection().close();
+    Connection connection = dataSource.getConnection();
+    connection.createStatement();
+    connection.close();
+
+    assertEquals(1, ConnectionStats.total().getUnusedHandles());
+    assertEquals(1, ConnectionStats.total().getAcquireTime().getCount());
+    assertEquals(1, ConnectionStats.total().getHoldTime().getCount());
+  }
+
+  @Test
+  public void requestsWithoutActionAreCountedAsUnknown() throws SQLException {
+    Http.Request.current.set(new Http.Request());
+    Connection connection = dataSource.getConnection();
+    connection.createStatement();
+    connection.close();
+
+    assertEquals(singleton("unknown"), ConnectionStats.byAction().keySet());
+    assertEquals(1, ConnectionStats.byAction().get("unknown").getHoldTime().getCount());
+  }
+}
@@ -0,0 +1,41 @@
+package play.db;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertEquals;
+import static play.db.LoggingConnectionDecorator.loggingConnectionDataSourceProxy;
+
+public class DataSourceStatusTest {
+  @Test
+  public void printsPoolAndLazyConnectionCounters() throws SQLException {
+    HikariConfig config = new HikariConfig();
+    config.setJdbcUrl("jdbc:h2:mem:status");
+    config.setPoolName("status");
+    config.setMaximumPoolSize(3);
+    config.setMinimumIdle(1);
+    try (HikariDataSource pool = new HikariDataSource(config)) {
+      LazyConnectionDataSourceProxy lazyDataSource = new LazyConnectionDataSourceProxy(pool);
+      DataSource dataSource = loggingConnectionDataSourceProxy(lazyDataSource);
+      dataSource.getConnection().close();
+      Connection connection = dataSource.getConnection();
+      connection.createStatement().close();
+
+      StringWriter status = new StringWriter();
+      DataSourceStatus.print(new PrintWriter(status), "default", dataSource);
+      connection.close();
+
+      String[] lines = status.toString().split("\\R");
+      assertEquals("Datasource default:", lines[0]);
+      assertEquals("  pool: status active=1, idle=0, waiting=0, total=1/3", lines[1]);
+      assertEquals("  lazy connections: created=2, fetched=1, fetches avoided=1, average hold=0 ms", lines[2]);
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package play.db;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+public class EarlyReleaseTest {
+  private DataSource targetDataSource = mock(DataSource.class);
+  private Connection target1 = mock(Connection.class);
+  private Connection target2 = mock(Connection.class);
+  private PreparedStatement statement = mock(PreparedStatement.class);
+  private LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+
+  @Before
+  public void setUp() throws SQLException {
+    when(targetDataSource.getConnection()).thenReturn(target1, target2);
+    when(target1.getAutoCommit()).thenReturn(true);
+    when(target2.getAutoCommit()).thenReturn(true);
+    when(target1.prepareStatement(anyString())).thenReturn(statement);
+    when(target2.prepareStatement(anyString())).thenReturn(statement);
+    dataSource.setTargetDataSource(targetDataSource);
+    dataSource.setDefaultAutoCommit(true);
+    dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+    dataSource.setReleaseTargetEarly(true);
+  }
+
+  @Test
+  public void releasesTargetAfterCommitWhenStatementsAreClosed() throws SQLException {
+    Connection connection = dataSource.getConnection();
+    connection.setAutoCommit(false);
+    connection.setReadOnly(true);
+    PreparedStatement query = connection.prepareStatement("select 1");
+    connection.commit();
+    verify(target1, never()).close();
+
+    when(statement.isClosed()).thenReturn(true);
+    query.close();
+    connection.commit();
+    verify(target1).close();
+    assertFalse(connection.isClosed());
+
+    connection.prepareStatement("select 2");
+    verify(target2).setAutoCommit(false);
+    verify(target2).setReadOnly(true);
+    connection.close();
+    verify(target2).close();
+  }
+
+  @Test
+  public void releasesTargetWhenAutoCommitStatementIsClosed() throws SQLException {
+    when(statement.isClosed()).thenReturn(true);
+    Connection connection = dataSource.getConnection();
+    PreparedStatement query = connection.prepareStatement("select 1");
+    assertSame(connection, query.getConnection());
+
+    query.close();
+    verify(statement).close();
+    verify(target1).close();
+
+    connection.prepareStatement("select 2");
+    verify(targetDataSource, times(2)).getConnection();
+  }
+
+  @Test
+  public void releasesTargetWhenAutoCommitStatementOrCallIsClosed() throws SQLException {
+    Statement plain = mock(Statement.class);
+    CallableStatement call = mock(CallableStatement.class);
+    when(plain.isClosed()).thenReturn(true);
+    when(call.isClosed()).thenReturn(true);
+    when(target1.createStatement()).thenReturn(plain);
+    when(target2.prepareCall(anyString())).thenReturn(call);
+    Connection connection = dataSource.getConnection();
+
+    Statement query = connection.createStatement();
+    assertSame(connection, query.getConnection());
+    query.close();
+    verify(plain).close();
+    verify(target1).close();
+
+    connection.prepareCall("{call p}").close();
+    verify(call).close();
+    verify(target2).close();
+  }
+
+  @Test
+  public void releasesTargetWhenStatementOfResultSetIsClosed() throws SQLException {
+    ResultSet rows = mock(ResultSet.class);
+    when(rows.getStatement()).thenReturn(statement);
+    when(statement.executeQuery()).thenReturn(rows);
+    when(statement.isClosed()).thenReturn(true);
+    Connection connection = dataSource.getConnection();
+
+    ResultSet resultSet = connection.prepareStatement("select 1").executeQuery();
+    resultSet.getStatement().close();
+    verify(statement).close();
+    verify(target1).close();
+  }
+
+  @Test
+  public void forgetsClosedStatements() throws SQLException {
+    PreparedStatement open = mock(PreparedStatement.class);
+    when(target1.prepareStatement("select 2")).thenReturn(open);
+    when(statement.isClosed()).thenReturn(true);
+    LazyConnection connection = (LazyConnection) dataSource.getConnection();
+    connection.setAutoCommit(false);
+    for (int i = 0; i < 10; i++) connection.prepareStatement("select 1").close();
+    connection.prepareStatement("select 2");
+
+    assertEquals(1, connection.trackedStatementCount());
+  }
+
+  @Test
+  public void doesNotTrackStatementsOfPinnedTarget() throws SQLException {
+    when(target1.setSavepoint()).thenReturn(mock(Savepoint.class));
+    LazyConnection connection = (LazyConnection) dataSource.getConnection();
+    connection.prepareStatement("select 1");
+    connection.setSavepoint();
+    PreparedStatement query = connection.prepareStatement("select 1");
+
+    assertSame(statement, query);
+    assertEquals(0, connection.trackedStatementCount());
+  }
+
+  @Test
+  public void keepsTargetWithStateThatCannotBeTransferred() throws SQLException {
+    when(statement.isClosed()).thenReturn(true);
+    when(target1.setSavepoint()).thenReturn(mock(Savepoint.class));
+    Connection connection = dataSource.getConnection();
+    connection.setAutoCommit(false);
+    connection.prepareStatement("select 1").close();
+    connection.setSavepoint();
+    connection.commit();
+
+    verify(target1, never()).close();
+  }
+
+  @Test
+  public void keepsTargetWhenDisabled() throws SQLException {
+    dataSource.setReleaseTargetEarly(false);
+    when(statement.isClosed()).thenReturn(true);
+    Connection connection = dataSource.getConnection();
+    PreparedStatement query = connection.prepareStatement("select 1");
+    assertSame(statement, query);
+    query.close();
+    connection.commit();
+
+    verify(target1, never()).close();
+  }
+}
@@ -0,0 +1,99 @@
+package play.db;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class ExecutionPlansTest {
+  private JdbcDataSource dataSource = new JdbcDataSource();
+  private Connection connection;
+
+  @Before
+  public void setUp() throws SQLException {
+    dataSource.setURL("jdbc:h2:mem:plans;DB_CLOSE_DELAY=-1");
+    connection = new LoggingConnectionDecorator(dataSource.getConnection(), dataSource);
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table person (id int primary key, name varchar(100))");
+    }
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("drop table person");
+    }
+    connection.close();
+    SlowSQLHelper.configure(new Properties());
+    SlowSQLHelper.reset("session");
+  }
+
+  @Test
+  public void capturesPlanOfSlowStatementInBackground() throws Exception {
+    configure("0ms", "0ms");
+    query("select name from person where id = ?");
+
+    String plan = awaitPlan("select name from person where id = ?");
+    assertTrue(plan, plan.contains("PUBLIC.PERSON"));
+    assertTrue(plan, plan.contains("PRIMARY_KEY"));
+    assertEquals(plan, SlowSQLHelper.logsByRequest("session").get("[job]").get(0).getExecutionPlan());
+  }
+
+  @Test
+  public void capturesAtMostOnePlanPerInterval() throws Exception {
+    configure("0ms", "1mn");
+    query("select name from person where id = ?");
+    awaitPlan("select name from person where id = ?");
+
+    query("select id from person where name = ?");
+    Thread.sleep(200);
+    assertNull(ExecutionPlans.current.get("select id from person where name = ?"));
+  }
+
+  @Test
+  public void fastStatementsAreNotSampled() throws Exception {
+    configure("1s", "0ms");
+    query("select name from person where id = ?");
+    Thread.sleep(200);
+    assertNull(ExecutionPlans.current.get("select name from person where id = ?"));
+  }
+
+  @Test
+  public void oracleSqlIdOfTextSentByDriver() {
+    assertEquals("select * from person where id = :1 and name = '?' and city = :2",
+        ExecutionPlans.oracleBinds("select * from person where id = ? and name = '?' and city = ?"));
+    assertEquals("a5ks9fhw2v9s1", ExecutionPlans.oracleSqlId("select * from dual"));
+  }
+
+  private void configure(String threshold, String interval) {
+    Properties configuration = new Properties();
+    configuration.setProperty("trackSlowSQL.plans", "true");
+    configuration.setProperty("trackSlowSQL.plans.threshold", threshold);
+    configuration.setProperty("trackSlowSQL.plans.interval", interval);
+    SlowSQLHelper.configure(configuration);
+  }
+
+  private void query(String sql) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setObject(1, 1);
+      statement.executeQuery().close();
+    }
+  }
+
+  private static String awaitPlan(String fingerprint) throws InterruptedException {
+    for (int i = 0; i < 100; i++) {
+      String plan = ExecutionPlans.current.get(fingerprint);
+      if (plan != null) return plan;
+      Thread.sleep(50);
+    }
+    throw new AssertionError("Plan of " + fingerprint + " not captured");
+  }
+}
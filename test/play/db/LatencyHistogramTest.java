@@ -0,0 +1,85 @@
+package play.db;
+
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+  LatencyHistogram histogram = new LatencyHistogram();
+
+  @Test
+  public void emptyHistogram() {
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentileNanos(99));
+    assertEquals(0, histogram.getMaxNanos());
+  }
+
+  @Test
+  public void percentilesAreWithinBucketPrecision() {
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(MILLISECONDS.toNanos(i));
+    }
+    assertEquals(1000, histogram.getCount());
+    assertWithinPrecision(MILLISECONDS.toNanos(500), histogram.getPercentileNanos(50));
+    assertWithinPrecision(MILLISECONDS.toNanos(900), histogram.getPercentileNanos(90));
+    assertWithinPrecision(MILLISECONDS.toNanos(990), histogram.getPercentileNanos(99));
+    assertEquals(MILLISECONDS.toNanos(1000), histogram.getPercentileNanos(100));
+    assertEquals(MILLISECONDS.toNanos(1000), histogram.getMaxNanos());
+  }
+
+  @Test
+  public void percentilesOfOneScanAreTheSameAsEachPercentile() {
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(MILLISECONDS.toNanos(i));
+    }
+    assertArrayEquals(new long[] {histogram.getPercentileNanos(50), histogram.getPercentileNanos(90), histogram.getPercentileNanos(99), histogram.getMaxNanos()},
+        histogram.getPercentilesNanos(50, 90, 99, 100));
+    assertArrayEquals(new long[] {0, 0}, new LatencyHistogram().getPercentilesNanos(50, 99));
+  }
+
+  @Test
+  public void tailLatencyIsVisible() {
+    for (int i = 0; i < 98; i++) histogram.record(MILLISECONDS.toNanos(5));
+    histogram.record(SECONDS.toNanos(3));
+    histogram.record(SECONDS.toNanos(3));
+
+    assertWithinPrecision(MILLISECONDS.toNanos(5), histogram.getPercentileNanos(50));
+    assertWithinPrecision(SECONDS.toNanos(3), histogram.getPercentileNanos(99));
+  }
+
+  @Test
+  public void hugeDurationsGoToLastBucket() {
+    histogram.record(SECONDS.toNanos(3600));
+    histogram.record(-1);
+    assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(SECONDS.toNanos(3600)));
+    assertEquals(SECONDS.toNanos(3600), histogram.getPercentileNanos(99));
+    assertEquals(0, LatencyHistogram.bucket(-1));
+  }
+
+  @Test
+  public void bucketsCoverAllValuesInOrder() {
+    for (int bucket = 0; bucket < LatencyHistogram.BUCKETS - 1; bucket++) {
+      long upperBound = LatencyHistogram.upperBoundNanos(bucket);
+      assertEquals(bucket, LatencyHistogram.bucket(upperBound));
+      assertEquals(bucket + 1, LatencyHistogram.bucket(upperBound + 1));
+    }
+  }
+
+  @Test
+  public void addsOtherHistogram() {
+    LatencyHistogram other = new LatencyHistogram();
+    histogram.record(1000);
+    other.record(MILLISECONDS.toNanos(10));
+    histogram.add(other);
+    assertEquals(2, histogram.getCount());
+    assertEquals(MILLISECONDS.toNanos(10), histogram.getMaxNanos());
+  }
+
+  private static void assertWithinPrecision(long expected, long actual) {
+    assertTrue("expected " + expected + " but was " + actual, actual >= expected && actual <= expected * 1.125 + 1024);
+  }
+}
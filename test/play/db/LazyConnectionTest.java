@@ -0,0 +1,178 @@
+package play.db;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(Parameterized.class)
+public class LazyConnectionTest {
+  @Parameterized.Parameters(name = "dynamicProxy={0}")
+  public static Collection<Object[]> modes() {
+    return Arrays.asList(new Object[][] {{false}, {true}});
+  }
+
+  private final boolean dynamicProxy;
+  private DataSource targetDataSource = mock(DataSource.class);
+  private Connection target = mock(Connection.class);
+  private LazyConnectionDataSourceProxy dataSource;
+
+  public LazyConnectionTest(boolean dynamicProxy) {
+    this.dynamicProxy = dynamicProxy;
+  }
+
+  @Before
+  public void setUp() throws SQLException {
+    when(targetDataSource.getConnection()).thenReturn(target);
+    when(target.getAutoCommit()).thenReturn(true);
+    dataSource = new LazyConnectionDataSourceProxy();
+    dataSource.setTargetDataSource(targetDataSource);
+    dataSource.setDefaultAutoCommit(true);
+    dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+    dataSource.setUseDynamicProxy(dynamicProxy);
+  }
+
+  @Test
+  public void transactionDemarcationDoesNotFetchConnection() throws SQLException {
+    Connection connection = dataSource.getConnection();
+    connection.setAutoCommit(false);
+    connection.setReadOnly(true);
+    assertFalse(connection.getAutoCommit());
+    assertTrue(connection.isReadOnly());
+    assertEquals(Connection.TRANSACTION_READ_COMMITTED, connection.getTransactionIsolation());
+    connection.commit();
+    connection.rollback();
+    connection.close();
+    assertTrue(connection.isClosed());
+
+    verify(targetDataSource, never()).getConnection();
+  }
+
+  @Test
+  public void appliesKeptSettingsWhenStatementIsPrepared() throws SQLException {
+    PreparedStatement statement = mock(PreparedStatement.class);
+    when(target.prepareStatement("select 1")).thenReturn(statement);
+
+    Connection connection = dataSource.getConnection();
+    connection.setAutoCommit(false);
+    connection.setReadOnly(true);
+
+    assertSame(statement, connection.prepareStatement("select 1"));
+    verify(target).setReadOnly(true);
+    verify(target).setAutoCommit(false);
+
+    connection.commit();
+    connection.close();
+    verify(target).commit();
+    verify(target).close();
+    verify(targetDataSource, times(1)).getConnection();
+  }
+
+  @Test
+  public void failsOnStatementAfterCloseWithoutFetching() throws SQLException {
+    Connection connection = dataSource.getConnection();
+    connection.close();
+    try {
+      connection.prepareStatement("select 1");
+      fail("expected SQLException");
+    }
+    catch (SQLException expected) {
+      assertEquals("Illegal operation: connection is closed", expected.getMessage());
+    }
+    verify(targetDataSource, never()).getConnection();
+  }
+
+  @Test
+  public void equalsAndHashCodeDoNotDependOnTarget() throws SQLException {
+    Connection connection = dataSource.getConnection();
+    Connection other = dataSource.getConnection();
+    int hashCode = connection.hashCode();
+
+    assertEquals(connection, connection);
+    assertNotEquals(connection, other);
+    verify(targetDataSource, never()).getConnection();
+
+    connection.prepareStatement("select 1");
+    assertEquals(hashCode, connection.hashCode());
+    assertEquals(System.identityHashCode(connection), hashCode);
+  }
+
+  @Test
+  public void unwrapsToItselfOrTarget() throws SQLException {
+    Connection connection = dataSource.getConnection();
+    assertSame(connection, connection.unwrap(ConnectionProxy.class));
+    assertTrue(connection.isWrapperFor(Connection.class));
+    verify(targetDataSource, never()).getConnection();
+
+    assertSame(target, ((ConnectionProxy) connection).getTargetConnection());
+  }
+
+  @Test
+  public void describesItselfWithoutTarget() throws SQLException {
+    assertTrue(dataSource.getConnection().toString().startsWith("Lazy Connection proxy for target DataSource"));
+  }
+
+  @Test
+  public void determinesUnknownDefaultsInBackground() throws SQLException {
+    when(target.getTransactionIsolation()).thenReturn(Connection.TRANSACTION_SERIALIZABLE);
+    dataSource = new LazyConnectionDataSourceProxy();
+    dataSource.setTargetDataSource(targetDataSource);
+    dataSource.setDefaultAutoCommit(false);
+    dataSource.setUseDynamicProxy(dynamicProxy);
+
+    dataSource.afterPropertiesSetAsync(Runnable::run).join();
+    verify(target).close();
+
+    Connection connection = dataSource.getConnection();
+    assertFalse(connection.getAutoCommit());
+    assertEquals(Connection.TRANSACTION_SERIALIZABLE, connection.getTransactionIsolation());
+    verify(targetDataSource, times(1)).getConnection();
+  }
+
+  @Test
+  public void backgroundInitializationReportsUnreachableDatabase() throws SQLException {
+    when(targetDataSource.getConnection()).thenThrow(new SQLException("Connection refused"));
+
+    CompletableFuture<Void> initialization = dataSource.afterPropertiesSetAsync(Runnable::run);
+    assertTrue(initialization.isCompletedExceptionally());
+    assertTrue(dataSource.getConnection().getAutoCommit());
+  }
+
+  @Test(timeout = 5000)
+  public void backgroundInitializationDoesNotWaitForUnresponsiveDatabase() throws Exception {
+    CountDownLatch answer = new CountDownLatch(1);
+    when(targetDataSource.getConnection()).thenAnswer(invocation -> {
+      answer.await();
+      return target;
+    });
+    ExecutorService startup = Executors.newSingleThreadExecutor();
+    try {
+      CompletableFuture<Void> initialization = dataSource.afterPropertiesSetAsync(startup);
+      assertFalse(initialization.isDone());
+      Connection connection = dataSource.getConnection();
+      assertTrue(connection.getAutoCommit());
+      connection.close();
+
+      answer.countDown();
+      initialization.join();
+      verify(target).close();
+    }
+    finally {
+      startup.shutdownNow();
+    }
+  }
+}
@@ -1,10 +1,22 @@
 package play.db;
 
+import org.junit.After;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Properties;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class LogEntryTest {
+  @After
+  public void tearDown() {
+    SlowSQLHelper.configure(new Properties());
+  }
+
   @Test
   public void getShortenedSQL() {
     assertEquals("select ... from table1", logEntry("select * from table1").getShortenedSQL());
@@ -19,6 +31,52 @@ public class LogEntryTest {
     assertEquals("update\ntable1\nset ... where field3=?", logEntry("\nupdate\ntable1\nset\nfield1=?1,\nfield2=?\nwhere\nfield3=?").getShortenedSQL());
   }
 
+  @Test
+  public void isSlowByTotalOrAverageDurationByDefault() {
+    assertFalse(logEntry(50, 50, 50).isSlow());
+    assertTrue(logEntry(50, 50, 50, 60).isSlow());
+    assertTrue(logEntry(150).isSlow());
+  }
+
+  @Test
+  public void isSlowByConfiguredPercentile() {
+    Properties configuration = new Properties();
+    configuration.setProperty("trackSlowSQL.threshold.total", "");
+    configuration.setProperty("trackSlowSQL.threshold.average", "");
+    configuration.setProperty("trackSlowSQL.threshold.p99", "1s");
+    SlowSQLHelper.configure(configuration);
+
+    long[] fastWithOneSlow = new long[100];
+    Arrays.fill(fastWithOneSlow, 5);
+    assertFalse(logEntry(fastWithOneSlow).isSlow());
+    fastWithOneSlow[0] = fastWithOneSlow[1] = 3000;
+    assertTrue(logEntry(fastWithOneSlow).isSlow());
+  }
+
+  @Test
+  public void percentilesAreComputedAgainAfterNewExecutions() {
+    Properties configuration = new Properties();
+    configuration.setProperty("trackSlowSQL.threshold.total", "");
+    configuration.setProperty("trackSlowSQL.threshold.average", "");
+    configuration.setProperty("trackSlowSQL.threshold.p50", "100ms");
+    configuration.setProperty("trackSlowSQL.threshold.p90", "1s");
+    SlowSQLHelper.configure(configuration);
+
+    LogEntry logEntry = logEntry(5, 5, 5);
+    assertFalse(logEntry.isSlow());
+    assertFalse(logEntry.isSlow());
+    for (int i = 0; i < 4; i++) logEntry.addExecution(MILLISECONDS.toNanos(500));
+    assertTrue(logEntry.isSlow());
+  }
+
+  private LogEntry logEntry(long... durationsMs) {
+    LogEntry logEntry = logEntry("select 1");
+    for (long duration : durationsMs) {
+      logEntry.addExecution(MILLISECONDS.toNanos(duration));
+    }
+    return logEntry;
+  }
+
   private LogEntry logEntry(String sql) {
     return new LogEntry(sql, null, null);
   }
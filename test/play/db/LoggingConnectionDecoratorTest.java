@@ -0,0 +1,55 @@
+package play.db;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class LoggingConnectionDecoratorTest {
+  Connection connection = mock(Connection.class);
+  PreparedStatement statement = mock(PreparedStatement.class);
+
+  @After
+  public void tearDown() {
+    SlowSQLHelper.reset("session");
+  }
+
+  @Test
+  public void logsExecutionsOfPreparedStatements() throws SQLException {
+    when(connection.prepareStatement("select * from table1 where id=?")).thenReturn(statement);
+    Connection loggingConnection = new LoggingConnectionDecorator(connection);
+
+    PreparedStatement loggingStatement = loggingConnection.prepareStatement("select * from table1 where id=?");
+    loggingStatement.setLong(1, 42L);
+    loggingStatement.executeQuery();
+    loggingStatement.setLong(1, 43L);
+    loggingStatement.executeQuery();
+    loggingStatement.close();
+
+    verify(statement).setLong(1, 42L);
+    verify(statement).setLong(1, 43L);
+    verify(statement, times(2)).executeQuery();
+    verify(statement).close();
+    assertSame(loggingConnection, loggingStatement.getConnection());
+
+    List<LogEntry> logs = SlowSQLHelper.logsByRequest("session").get("[job]");
+    assertEquals(1, logs.size());
+    assertEquals("select * from table1 where id=?", logs.get(0).sql);
+    assertEquals(2, logs.get(0).getCount());
+    assertTrue(logs.get(0).getTotalDurationNanos() > 0);
+  }
+
+  @Test
+  public void unwrapsToTargetConnection() throws SQLException {
+    Connection loggingConnection = new LoggingConnectionDecorator(connection);
+    assertSame(loggingConnection, loggingConnection.unwrap(LoggingConnectionDecorator.class));
+    loggingConnection.unwrap(String.class);
+    verify(connection).unwrap(String.class);
+  }
+}
@@ -0,0 +1,103 @@
+package play.db;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class MetricsExporterTest {
+  private LazyConnectionDataSourceProxy lazyDataSource = new LazyConnectionDataSourceProxy();
+  private Map<String, DataSource> dataSources = singletonMap("default", lazyDataSource);
+
+  @After
+  public void tearDown() {
+    MetricsExporter.unregisterMBeans();
+    SlowSQLHelper.reset("session");
+    StatementMetrics.reset();
+  }
+
+  @Test
+  public void exportsPrometheusTextFromAggregatedCounters() throws Exception {
+    lazyDataSource.setTargetDataSource(mock(DataSource.class));
+    lazyDataSource.setDefaultAutoCommit(true);
+    lazyDataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+    lazyDataSource.getConnection().close();
+    SlowSQLHelper.addSlowSQLLog("select * from person where name = 'John'", 2_000_000);
+    SlowSQLHelper.addSlowSQLLog("select * from person where name = 'Mary'", 4_000_000);
+    SlowSQLHelper.uniqueSQLCount("session");
+
+    String metrics = MetricsExporter.prometheus(dataSources);
+
+    String sql = "select * from person where name = ?";
+    String labels = "{id=\"" + String.format("%08x", sql.hashCode()) + "\"";
+    assertTrue(metrics, metrics.contains("playdb_sql_info" + labels + ",sql=\"" + sql + "\"} 1\n"));
+    assertTrue(metrics, metrics.contains("playdb_sql_executions_total" + labels + "} 2\n"));
+    assertTrue(metrics, metrics.contains("playdb_sql_duration_seconds_sum" + labels + "} 0.006\n"));
+    assertTrue(metrics, metrics.contains("playdb_sql_duration_seconds" + labels + ",quantile=\"0.99\"} "));
+    assertTrue(metrics, metrics.contains("playdb_lazy_connections_created_total{datasource=\"default\"} 1\n"));
+    assertTrue(metrics, metrics.contains("playdb_lazy_connections_unused_total{datasource=\"default\"} 1\n"));
+    assertFalse("no pool gauges without Hikari", metrics.contains("playdb_pool_connections{"));
+    assertTrue(metrics, metrics.contains("# TYPE playdb_sql_executions_total counter\n"));
+    assertFalse("SQL text only in info metric", metrics.contains("playdb_sql_executions_total{id=\"" + String.format("%08x", sql.hashCode()) + "\",sql="));
+  }
+
+  @Test
+  public void printsEveryMetricFamilyAsOneGroup() throws Exception {
+    Map<String, DataSource> dataSources = new LinkedHashMap<>();
+    dataSources.put("default", lazyDataSource);
+    dataSources.put("other", new LazyConnectionDataSourceProxy());
+    SlowSQLHelper.addSlowSQLLog("select 1", 1000);
+    SlowSQLHelper.addSlowSQLLog("select 2 from dual", 1000);
+    SlowSQLHelper.uniqueSQLCount("session");
+
+    String family = null;
+    Set<String> families = new HashSet<>();
+    for (String line : MetricsExporter.prometheus(dataSources).split("\n")) {
+      if (line.startsWith("# TYPE ")) {
+        family = line.split(" ")[2];
+        assertTrue("family printed once: " + family, families.add(family));
+      }
+      else if (!line.startsWith("#")) {
+        assertTrue(line + " in family " + family, line.startsWith(family + "{") || line.startsWith(family + " ") || line.startsWith(family + "_"));
+      }
+    }
+    assertTrue(families.contains("playdb_lazy_connections_created_total"));
+  }
+
+  @Test
+  public void escapesLabelValues() {
+    assertEquals("select \\\"a\\\\b\\\"\\nfrom t", MetricsExporter.escape("select \"a\\b\"\nfrom t"));
+  }
+
+  @Test
+  public void registersMBeans() throws Exception {
+    SlowSQLHelper.addSlowSQLLog("select 1", 1000);
+    SlowSQLHelper.uniqueSQLCount("session");
+    MetricsExporter.registerMBeans(dataSources);
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    assertEquals(-1, server.getAttribute(new ObjectName("play.db:type=DataSource,name=\"default\""), "ActiveConnections"));
+    CompositeData[] statements = (CompositeData[]) server.getAttribute(new ObjectName("play.db:type=SQL"), "Statements");
+    assertEquals(1, statements.length);
+    assertEquals("select ?", statements[0].get("sql"));
+    assertEquals(1L, statements[0].get("count"));
+
+    MetricsExporter.unregisterMBeans();
+    assertFalse(server.isRegistered(new ObjectName("play.db:type=SQL")));
+  }
+}
@@ -0,0 +1,47 @@
+package play.db;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class OracleEndToEndMetricsTest {
+  FakeOracleConnection oracleConnection = mock(FakeOracleConnection.class);
+  Connection pooledConnection = mock(Connection.class);
+
+  @Test
+  public void setsMetricsOnUnwrappedConnectionOnlyWhenChanged() throws Exception {
+    when(pooledConnection.unwrap(FakeOracleConnection.class)).thenReturn(oracleConnection);
+    OracleEndToEndMetrics metrics = new OracleEndToEndMetrics(FakeOracleConnection.class);
+
+    metrics.apply(pooledConnection, "request1", "IBANK/thread", "user");
+    metrics.apply(pooledConnection, "request1", "IBANK/thread", "user");
+    verify(oracleConnection).setEndToEndMetrics(new String[] {"request1", "IBANK/thread", null, "user"}, (short) 0);
+
+    metrics.apply(pooledConnection, "request2", "IBANK/thread", null);
+    verify(oracleConnection).setEndToEndMetrics(new String[] {"request2", "IBANK/thread", null, null}, (short) 0);
+    verify(oracleConnection, times(2)).setEndToEndMetrics(any(), anyShort());
+  }
+
+  @Test
+  public void failuresAreNotThrown() throws Exception {
+    doThrow(new SQLException("closed")).when(oracleConnection).setEndToEndMetrics(any(), anyShort());
+    OracleEndToEndMetrics metrics = new OracleEndToEndMetrics(FakeOracleConnection.class);
+    metrics.apply(oracleConnection, "request1", "IBANK/thread", "user");
+    metrics.apply(oracleConnection, "request1", "IBANK/thread", "user");
+    verify(oracleConnection, times(2)).setEndToEndMetrics(any(), anyShort());
+  }
+
+  public interface FakeOracleConnection extends Connection {
+    int END_TO_END_ACTION_INDEX = 0;
+    int END_TO_END_MODULE_INDEX = 1;
+    int END_TO_END_ECID_INDEX = 2;
+    int END_TO_END_CLIENTID_INDEX = 3;
+    int END_TO_END_STATE_INDEX_MAX = 4;
+
+    void setEndToEndMetrics(String[] metrics, short sequenceNumber) throws SQLException;
+  }
+}
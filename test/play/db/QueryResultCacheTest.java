@@ -0,0 +1,286 @@
+package play.db;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Properties;
+import java.util.TimeZone;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+import static play.db.OptimizingConnectionDecorator.optimizingConnectionDataSourceProxy;
+
+public class QueryResultCacheTest {
+  private Connection connection;
+  private Connection other;
+  private Connection optimizingConnection;
+
+  @Before
+  public void setUp() throws SQLException {
+    Properties configuration = new Properties();
+    configuration.setProperty("db.resultCache.sql", "(?i)from currency");
+    configuration.setProperty("db.resultCache.maxRows", "3");
+    OptimizingConnectionDecorator.configure(configuration);
+
+    connection = DriverManager.getConnection("jdbc:h2:mem:resultCache;DB_CLOSE_DELAY=-1");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table currency (code varchar(3) primary key, rate decimal(10, 4), digits int, updated timestamp)");
+      statement.execute("insert into currency values ('EUR', 1, 2, null), ('USD', 1.1234, 2, null)");
+    }
+    other = DriverManager.getConnection("jdbc:h2:mem:resultCache");
+    optimizingConnection = new OptimizingConnectionDecorator(DriverManager.getConnection("jdbc:h2:mem:resultCache"));
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    optimizingConnection.close();
+    other.close();
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("drop table currency");
+    }
+    connection.close();
+    QueryResultCache.current.clear();
+    OptimizingConnectionDecorator.configure(new Properties());
+    SlowSQLHelper.reset("session");
+  }
+
+  @Test
+  public void returnsCachedRowsForSameSqlAndParameters() throws SQLException {
+    assertEquals(asList("USD 1.1234 2 null"), query("USD"));
+    changeRateBehindTheCache("USD", "2");
+
+    assertEquals(asList("USD 1.1234 2 null"), query("USD"));
+    assertEquals(asList("EUR 1.0000 2 null"), query("EUR"));
+    assertEquals(1, QueryResultCache.current.hits());
+    assertEquals(2, QueryResultCache.current.misses());
+  }
+
+  @Test
+  public void cachedResultSetBehavesLikeTheOriginal() throws SQLException {
+    query("USD");
+    try (PreparedStatement statement = optimizingConnection.prepareStatement("select * from currency where code = ?")) {
+      statement.setString(1, "USD");
+      ResultSet resultSet = statement.executeQuery();
+      assertTrue(resultSet instanceof CachedResultSet);
+      assertSame(statement, resultSet.getStatement());
+      assertEquals(4, resultSet.getMetaData().getColumnCount());
+      assertEquals("RATE", resultSet.getMetaData().getColumnLabel(2));
+
+      assertTrue(resultSet.next());
+      assertEquals("USD", resultSet.getObject("code"));
+      assertEquals(new BigDecimal("1.1234"), resultSet.getObject(2));
+      assertEquals(1.1234, resultSet.getDouble("rate"), 0);
+      assertEquals(Integer.valueOf(2), resultSet.getObject("DIGITS"));
+      assertEquals(2L, resultSet.getLong(3));
+      assertEquals("2", resultSet.getString(3));
+      assertFalse(resultSet.wasNull());
+      assertNull(resultSet.getTimestamp(4));
+      assertTrue(resultSet.wasNull());
+      assertFalse(resultSet.next());
+    }
+  }
+
+  @Test
+  public void temporalValuesAreTheSameAsFromTheDriver() throws SQLException {
+    String sql = "select updated, cast(updated as date), cast(updated as time) from currency where code = ?";
+    changeUpdatedBehindTheCache("USD", "2018-03-01 23:30:00.123456789");
+    Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("Asia/Kathmandu"));
+    List<Object> expected = temporalValues(other, sql, calendar);
+
+    assertEquals(expected, temporalValues(optimizingConnection, sql, calendar));
+    assertEquals(expected, temporalValues(optimizingConnection, sql, calendar));
+    assertEquals(1, QueryResultCache.current.hits());
+  }
+
+  @Test
+  public void parametersChangedAfterExecutionDoNotChangeCachedResults() throws SQLException {
+    changeUpdatedBehindTheCache("USD", "2018-03-01 00:00:00");
+    Timestamp updatedBefore = Timestamp.valueOf("2019-01-01 00:00:00");
+    assertEquals(asList("USD"), codesUpdatedBefore(updatedBefore));
+
+    updatedBefore.setTime(Timestamp.valueOf("2017-01-01 00:00:00").getTime());
+    assertEquals(asList("USD"), codesUpdatedBefore(Timestamp.valueOf("2019-01-01 00:00:00")));
+    assertEquals(1, QueryResultCache.current.hits());
+  }
+
+  @Test
+  public void updateThroughThisNodeInvalidatesCachedResultsOfTheTable() throws SQLException {
+    query("USD");
+    try (PreparedStatement update = optimizingConnection.prepareStatement("update currency set rate = ? where code = ?")) {
+      update.setBigDecimal(1, new BigDecimal("1.5"));
+      update.setString(2, "EUR");
+      assertEquals(1, update.executeUpdate());
+    }
+    changeRateBehindTheCache("USD", "2");
+
+    assertEquals(asList("USD 2.0000 2 null"), query("USD"));
+  }
+
+  @Test
+  public void uncommittedChangesAreNotCachedAndInvalidateOnCommit() throws SQLException {
+    query("USD");
+    optimizingConnection.setAutoCommit(false);
+    try (PreparedStatement update = optimizingConnection.prepareStatement("update currency set rate = 3 where code = 'USD'")) {
+      update.executeUpdate();
+    }
+    assertEquals(asList("USD 3.0000 2 null"), query("USD"));
+    assertEquals(asList("USD 3.0000 2 null"), query("USD"));
+    assertEquals(0, QueryResultCache.current.hits());
+
+    optimizingConnection.rollback();
+    assertEquals(asList("USD 1.1234 2 null"), query("USD"));
+    assertEquals(asList("USD 1.1234 2 null"), query("USD"));
+    assertEquals(1, QueryResultCache.current.hits());
+  }
+
+  @Test
+  public void doesNotCacheResultsOverMaxRows() throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("insert into currency values ('GBP', 0.9, 2, null), ('JPY', 150, 0, null)");
+    }
+    List<String> rows = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      try (PreparedStatement statement = optimizingConnection.prepareStatement("select code from currency order by code")) {
+        ResultSet resultSet = statement.executeQuery();
+        assertFalse(resultSet instanceof CachedResultSet);
+        while (resultSet.next()) rows.add(resultSet.getString(1));
+      }
+    }
+    assertEquals(asList("EUR", "GBP", "JPY", "USD", "EUR", "GBP", "JPY", "USD"), rows);
+  }
+
+  @Test
+  public void onlyWhitelistedQueriesAreCached() throws SQLException {
+    try (PreparedStatement statement = optimizingConnection.prepareStatement("select 1 from dual")) {
+      assertFalse(statement.executeQuery() instanceof CachedResultSet);
+      assertFalse(statement.executeQuery() instanceof CachedResultSet);
+    }
+    assertEquals(0, QueryResultCache.current.misses());
+  }
+
+  @Test
+  public void cachesResultsOfEveryDatabaseSeparately() throws SQLException {
+    try (Connection second = DriverManager.getConnection("jdbc:h2:mem:resultCache2;DB_CLOSE_DELAY=-1");
+         Statement statement = second.createStatement()) {
+      statement.execute("create table currency (code varchar(3) primary key, rate decimal(10, 4), digits int, updated timestamp)");
+      statement.execute("insert into currency values ('USD', 0.5, 2, null)");
+      try (Connection first = optimizingConnectionDataSourceProxy(h2("resultCache")).getConnection();
+           Connection other = optimizingConnectionDataSourceProxy(h2("resultCache2")).getConnection()) {
+        assertEquals(asList("USD 1.1234 2 null"), query(first, "USD"));
+        assertEquals(asList("USD 0.5000 2 null"), query(other, "USD"));
+        assertEquals(asList("USD 1.1234 2 null"), query(first, "USD"));
+        assertEquals(asList("USD 0.5000 2 null"), query(other, "USD"));
+      }
+      assertEquals(2, QueryResultCache.current.hits());
+      statement.execute("drop table currency");
+    }
+  }
+
+  @Test
+  public void doesNotCacheResultsOfReplicas() throws SQLException {
+    LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+    dataSource.setTargetDataSource(h2("resultCache"));
+    dataSource.afterPropertiesSet();
+    dataSource.setReplicaDataSources(asList(h2("resultCache")), ReplicaSelection.ROUND_ROBIN);
+    try (Connection replicated = optimizingConnectionDataSourceProxy(dataSource).getConnection()) {
+      replicated.setReadOnly(true);
+      query(replicated, "USD");
+      query(replicated, "USD");
+      replicated.setReadOnly(false);
+      query(replicated, "USD");
+    }
+    assertEquals(0, QueryResultCache.current.hits());
+    assertEquals(0, QueryResultCache.current.misses());
+
+    try (Connection primary = optimizingConnectionDataSourceProxy(dataSource).getConnection()) {
+      query(primary, "USD");
+      query(primary, "USD");
+    }
+    assertEquals(1, QueryResultCache.current.hits());
+  }
+
+  @Test
+  public void findsTablesOfQueriesAndUpdates() {
+    assertEquals(asList("person", "address", "city"), asList(SqlTables.queried(
+        "select * from hr.Person p, \"ADDRESS\" as a join city c on c.id = a.city_id where p.id = ?")));
+    assertEquals(asList("person", "orders"), asList(SqlTables.queried(
+        "select * from person where id in (select person_id from orders)")));
+    assertEquals("person", SqlTables.modified("update hr.person set name = ? where id = ?"));
+    assertEquals("person", SqlTables.modified("  insert into person (id) values (?)"));
+    assertEquals("person", SqlTables.modified("delete person where id = ?"));
+    assertEquals("person", SqlTables.modified("truncate table person"));
+    assertNull(SqlTables.modified("select * from person"));
+  }
+
+  private List<String> query(String code) throws SQLException {
+    return query(optimizingConnection, code);
+  }
+
+  private static List<String> query(Connection optimizingConnection, String code) throws SQLException {
+    List<String> rows = new ArrayList<>();
+    try (PreparedStatement statement = optimizingConnection.prepareStatement("select * from currency where code = ?")) {
+      statement.setString(1, code);
+      ResultSet resultSet = statement.executeQuery();
+      while (resultSet.next()) {
+        rows.add(resultSet.getString(1) + " " + resultSet.getBigDecimal(2) + " " + resultSet.getInt(3) + " " + resultSet.getTimestamp(4));
+      }
+      resultSet.close();
+    }
+    return rows;
+  }
+
+  private List<String> codesUpdatedBefore(Timestamp updated) throws SQLException {
+    List<String> codes = new ArrayList<>();
+    try (PreparedStatement statement = optimizingConnection.prepareStatement("select code from currency where updated < ?")) {
+      statement.setTimestamp(1, updated);
+      ResultSet resultSet = statement.executeQuery();
+      while (resultSet.next()) codes.add(resultSet.getString(1));
+      resultSet.close();
+    }
+    return codes;
+  }
+
+  private static List<Object> temporalValues(Connection connection, String sql, Calendar calendar) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setString(1, "USD");
+      ResultSet resultSet = statement.executeQuery();
+      assertTrue(resultSet.next());
+      List<Object> values = asList(resultSet.getObject(1), resultSet.getTimestamp(1), resultSet.getTimestamp(1, calendar),
+          resultSet.getDate(2), resultSet.getDate(2, calendar), resultSet.getTime(3), resultSet.getTime(3, calendar));
+      resultSet.close();
+      return values;
+    }
+  }
+
+  private static DataSource h2(String name) {
+    JdbcDataSource dataSource = new JdbcDataSource();
+    dataSource.setURL("jdbc:h2:mem:" + name);
+    return dataSource;
+  }
+
+  private void changeUpdatedBehindTheCache(String code, String timestamp) throws SQLException {
+    try (Statement statement = other.createStatement()) {
+      statement.executeUpdate("update currency set updated = timestamp '" + timestamp + "' where code = '" + code + "'");
+    }
+  }
+
+  private void changeRateBehindTheCache(String code, String rate) throws SQLException {
+    try (Statement statement = other.createStatement()) {
+      statement.executeUpdate("update currency set rate = " + rate + " where code = '" + code + "'");
+    }
+  }
+}
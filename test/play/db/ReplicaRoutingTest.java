@@ -0,0 +1,108 @@
+package play.db;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+public class ReplicaRoutingTest {
+  private DataSource primary = mock(DataSource.class);
+  private DataSource replica1 = mock(DataSource.class);
+  private DataSource replica2 = mock(DataSource.class);
+  private Connection primaryConnection = mock(Connection.class);
+  private Connection replica1Connection = mock(Connection.class);
+  private Connection replica2Connection = mock(Connection.class);
+  private LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+
+  @Before
+  public void setUp() throws SQLException {
+    when(primary.getConnection()).thenReturn(primaryConnection);
+    when(replica1.getConnection()).thenReturn(replica1Connection);
+    when(replica2.getConnection()).thenReturn(replica2Connection);
+    dataSource.setTargetDataSource(primary);
+    dataSource.setDefaultAutoCommit(true);
+    dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+  }
+
+  @Test
+  public void readOnlyConnectionsGoToReplicasRoundRobin() throws SQLException {
+    dataSource.setReplicaDataSources(asList(replica1, replica2), ReplicaSelection.ROUND_ROBIN);
+
+    assertSame(replica1Connection, target(readOnlyConnection()));
+    assertSame(replica2Connection, target(readOnlyConnection()));
+    assertSame(replica1Connection, target(readOnlyConnection()));
+    verify(replica1Connection, times(2)).setReadOnly(true);
+  }
+
+  @Test
+  public void otherConnectionsGoToPrimary() throws SQLException {
+    dataSource.setReplicaDataSources(asList(replica1, replica2), ReplicaSelection.ROUND_ROBIN);
+
+    assertSame(primaryConnection, target(dataSource.getConnection()));
+
+    Connection connection = dataSource.getConnection();
+    connection.setReadOnly(true);
+    connection.setReadOnly(false);
+    assertSame(primaryConnection, target(connection));
+    verifyZeroInteractions(replica1, replica2);
+  }
+
+  @Test
+  public void readOnlyConnectionsGoToLeastUsedReplica() throws SQLException {
+    dataSource.setReplicaDataSources(asList(replica1, replica2), ReplicaSelection.LEAST_IN_USE);
+
+    Connection first = readOnlyConnection();
+    first.createStatement();
+    Connection second = readOnlyConnection();
+    second.createStatement();
+    first.close();
+    readOnlyConnection().createStatement();
+    readOnlyConnection().createStatement();
+
+    verify(replica1Connection, times(2)).createStatement();
+    verify(replica2Connection, times(2)).createStatement();
+    verify(replica1Connection).close();
+  }
+
+  @Test
+  public void fallsBackToOtherReplicaAndPrimary() throws SQLException {
+    dataSource.setReplicaDataSources(asList(replica1, replica2), ReplicaSelection.ROUND_ROBIN);
+    when(replica1.getConnection()).thenThrow(new SQLException("replica1 is down"));
+
+    assertSame(replica2Connection, target(readOnlyConnection()));
+
+    when(replica2.getConnection()).thenThrow(new SQLException("replica2 is down"));
+    assertSame(primaryConnection, target(readOnlyConnection()));
+  }
+
+  @Test
+  public void countsReplicaConnectionsInUse() throws SQLException {
+    ReplicaRouter router = new ReplicaRouter(asList(replica1, replica2), ReplicaSelection.LEAST_IN_USE);
+    Connection connection = router.getConnection(null, null);
+    router.getConnection(null, null);
+    router.getConnection(null, null);
+    assertArrayEquals(new int[] {2, 1}, router.inUse());
+
+    connection.close();
+    connection.close();
+    assertArrayEquals(new int[] {1, 1}, router.inUse());
+  }
+
+  private Connection readOnlyConnection() throws SQLException {
+    Connection connection = dataSource.getConnection();
+    connection.setReadOnly(true);
+    return connection;
+  }
+
+  private Connection target(Connection connection) throws SQLException {
+    Connection target = ((ConnectionProxy) connection).getTargetConnection();
+    return target instanceof DelegatingConnection ? ((DelegatingConnection) target).getTargetConnection() : target;
+  }
+}
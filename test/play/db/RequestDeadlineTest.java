@@ -0,0 +1,117 @@
+package play.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import play.Play;
+import play.mvc.Http;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(Parameterized.class)
+public class RequestDeadlineTest {
+  @Parameterized.Parameters(name = "dynamicProxy={0}")
+  public static Collection<Object[]> modes() {
+    return Arrays.asList(new Object[][] {{false}, {true}});
+  }
+
+  private final boolean dynamicProxy;
+  private DataSource targetDataSource = mock(DataSource.class);
+  private Connection target = mock(Connection.class);
+  private PreparedStatement statement = mock(PreparedStatement.class);
+  private LazyConnectionDataSourceProxy dataSource;
+  private Http.Request request = new Http.Request();
+
+  public RequestDeadlineTest(boolean dynamicProxy) {
+    this.dynamicProxy = dynamicProxy;
+  }
+
+  @Before
+  public void setUp() throws SQLException {
+    Properties configuration = new Properties();
+    configuration.setProperty("db.deadline.default", "10s");
+    configuration.setProperty("db.deadline.Reports.export", "2mn");
+    RequestDeadline.configure(configuration);
+
+    when(targetDataSource.getConnection()).thenReturn(target);
+    when(target.prepareStatement("select 1 from dual")).thenReturn(statement);
+    dataSource = new LazyConnectionDataSourceProxy();
+    dataSource.setTargetDataSource(targetDataSource);
+    dataSource.setDefaultAutoCommit(true);
+    dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+    dataSource.setUseDynamicProxy(dynamicProxy);
+
+    request.action = "Application.index";
+    Http.Request.current.set(request);
+  }
+
+  @After
+  public void tearDown() {
+    Http.Request.current.remove();
+    RequestDeadline.configure(new Properties());
+  }
+
+  @Test
+  public void queryTimeoutIsRemainingBudgetOfRequest() throws SQLException {
+    request.date = new Date(System.currentTimeMillis() - 6500);
+    dataSource.getConnection().prepareStatement("select 1 from dual");
+    verify(statement).setQueryTimeout(4);
+  }
+
+  @Test
+  public void actionCanOverrideDefaultDeadline() throws SQLException {
+    request.action = "Reports.export";
+    request.date = new Date(System.currentTimeMillis() - 60000);
+    dataSource.getConnection().prepareStatement("select 1 from dual");
+    verify(statement).setQueryTimeout(60);
+  }
+
+  @Test
+  public void connectionIsNotFetchedAfterDeadline() throws SQLException {
+    request.date = new Date(System.currentTimeMillis() - 11000);
+    Connection connection = dataSource.getConnection();
+    try {
+      connection.prepareStatement("select 1 from dual");
+      fail("expected SQLTimeoutException");
+    }
+    catch (SQLTimeoutException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().startsWith("Deadline of request Application.index exceeded by "));
+    }
+    verify(targetDataSource, never()).getConnection();
+  }
+
+  @Test
+  public void deadlinesAreNotTakenForDbs() {
+    try {
+      Play.configuration.setProperty("db.url", "jdbc:h2:mem:play");
+      Set<String> dbNames = Configuration.getDbNames();
+      Play.configuration.setProperty("db.deadline.default", "10s");
+      Play.configuration.setProperty("db.deadline.Reports.export", "2mn");
+      assertEquals(dbNames, Configuration.getDbNames());
+    }
+    finally {
+      Play.configuration.clear();
+    }
+  }
+
+  @Test
+  public void jobsHaveNoDeadline() throws SQLException {
+    Http.Request.current.remove();
+    dataSource.getConnection().prepareStatement("select 1 from dual");
+    verify(statement, never()).setQueryTimeout(anyInt());
+  }
+}
@@ -0,0 +1,84 @@
+package play.db;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RollingStatementStatsTest {
+  private long now = HOURS.toMillis(1000);
+  private RollingStatementStats stats = new RollingStatementStats(() -> now, 3);
+
+  @Test
+  public void aggregatesExecutionsInMinuteAndHourWindows() {
+    stats.record("select 1", 1000);
+    now += MINUTES.toMillis(5);
+    stats.record("select 1", 3000);
+    stats.record("select 2", 5000);
+
+    List<StatementWindow> lastMinute = stats.lastMinutes(1);
+    assertEquals(2, lastMinute.size());
+    assertEquals("select 2", lastMinute.get(0).getSql());
+    assertEquals(1, lastMinute.get(1).getCount());
+
+    StatementWindow lastHour = stats.lastMinutes(60).get(1);
+    assertEquals("select 1", lastHour.getSql());
+    assertEquals(2, lastHour.getCount());
+    assertEquals(4000, lastHour.getTotalDurationNanos());
+    assertEquals(3000, lastHour.getMaxNanos());
+    assertEquals(2000, lastHour.getAverageNanos());
+    assertEquals(2, stats.lastHours(1).size());
+  }
+
+  @Test
+  public void executionsLeaveWindowsAsTimePasses() {
+    stats.record("select 1", 1000);
+    now += MINUTES.toMillis(61);
+    assertTrue(stats.lastMinutes(60).isEmpty());
+    assertEquals(1, stats.lastHours(2).get(0).getCount());
+
+    now += HOURS.toMillis(24);
+    assertTrue(stats.lastHours(24).isEmpty());
+  }
+
+  @Test
+  public void reusesBucketsOfPastPeriods() {
+    stats.record("select 1", 1000);
+    now += MINUTES.toMillis(60);
+    stats.record("select 1", 2000);
+
+    StatementWindow lastHour = stats.lastMinutes(60).get(0);
+    assertEquals(1, lastHour.getCount());
+    assertEquals(2000, lastHour.getTotalDurationNanos());
+  }
+
+  @Test
+  public void storesSQLTextOncePerStatement() {
+    String sql = stats.record("select 1", 1000);
+    assertSame(sql, stats.record(new String("select 1"), 1000));
+  }
+
+  @Test
+  public void countsStatementsBeyondMaximumAsOther() {
+    for (int i = 1; i <= 4; i++) stats.record("select " + i, 1000);
+
+    assertEquals(3, stats.statementCount());
+    assertEquals(4, stats.lastMinutes(1).size());
+    assertTrue(stats.lastMinutes(1).stream().anyMatch(window -> window.getSql().equals("other")));
+  }
+
+  @Test
+  public void forgetsStatementsIdleForADay() {
+    for (int i = 1; i <= 3; i++) stats.record("select " + i, 1000);
+    now += HOURS.toMillis(24);
+    stats.record("select 4", 1000);
+
+    assertEquals(1, stats.statementCount());
+    assertEquals("select 4", stats.lastHours(1).get(0).getSql());
+  }
+}
@@ -0,0 +1,66 @@
+package play.db;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class SQLEventBufferTest {
+  @Test
+  public void roundsCapacityUpToPowerOfTwo() {
+    assertEquals(8, new SQLEventBuffer(5).capacity());
+    assertEquals(8, new SQLEventBuffer(8).capacity());
+  }
+
+  @Test
+  public void consumesEventsInOrderOfPublishing() {
+    SQLEventBuffer buffer = new SQLEventBuffer(4);
+    List<String> events = new ArrayList<>();
+    for (int round = 0; round < 3; round++) {
+      buffer.publish("sql1", "request", "session", 1);
+      buffer.publish("sql2", "request", "session", 2);
+      buffer.drain((sql, requestId, sessionId, durationNanos, binds) -> events.add(sql + ":" + durationNanos));
+    }
+    assertEquals(asList("sql1:1", "sql2:2", "sql1:1", "sql2:2", "sql1:1", "sql2:2"), events);
+  }
+
+  @Test
+  public void dropsEventsWhenFull() {
+    SQLEventBuffer buffer = new SQLEventBuffer(2);
+    assertTrue(buffer.publish("sql1", "request", "session", 1));
+    assertTrue(buffer.publish("sql2", "request", "session", 2));
+    assertFalse(buffer.publish("sql3", "request", "session", 3));
+    assertEquals(1, buffer.droppedCount());
+
+    assertEquals(2, buffer.drain((sql, requestId, sessionId, durationNanos, binds) -> {}));
+    assertTrue(buffer.publish("sql4", "request", "session", 4));
+  }
+
+  @Test
+  public void doesNotLoseEventsOfConcurrentProducers() throws InterruptedException {
+    SQLEventBuffer buffer = new SQLEventBuffer(1024);
+    AtomicLong total = new AtomicLong();
+    Thread[] producers = new Thread[4];
+    for (int i = 0; i < producers.length; i++) {
+      producers[i] = new Thread(() -> {
+        for (int j = 0; j < 100000; j++) {
+          while (!buffer.publish("sql", "request", "session", 1)) Thread.yield();
+        }
+      });
+      producers[i].start();
+    }
+
+    long consumed = 0;
+    while (consumed < 400000) {
+      consumed += buffer.drain((sql, requestId, sessionId, durationNanos, binds) -> total.addAndGet(durationNanos));
+    }
+    for (Thread producer : producers) producer.join();
+
+    assertEquals(400000, total.get());
+    assertEquals(0, buffer.drain((sql, requestId, sessionId, durationNanos, binds) -> {}));
+  }
+}
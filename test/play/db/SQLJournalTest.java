@@ -0,0 +1,124 @@
+package play.db;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SQLJournalTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private SQLJournal journal;
+
+  @After
+  public void tearDown() {
+    if (journal != null) journal.close();
+  }
+
+  @Test
+  public void reportsTopStatementsOfTimeRange() throws IOException {
+    journal = open("1MB", 4);
+    journal.record("select 1", "[1] Orders.list", 1000, 1000);
+    journal.record("select 1", "[1] Orders.list", 3000, 2000);
+    journal.record("select 2", "[2] Orders.show", 5000, 2000);
+    journal.record("select 3", "[job]", 9000, 3000);
+
+    List<StatementWindow> top = SQLJournalReader.top(folder.getRoot(), 1000, 3000, 10, false);
+    assertEquals(2, top.size());
+    assertEquals("select 2", top.get(0).getSql());
+    assertEquals("select 1", top.get(1).getSql());
+    assertEquals(2, top.get(1).getCount());
+    assertEquals(4000, top.get(1).getTotalDurationNanos());
+    assertEquals(3000, top.get(1).getMaxNanos());
+
+    assertEquals(1, SQLJournalReader.top(folder.getRoot(), 0, Long.MAX_VALUE, 1, false).size());
+    assertEquals("job: select 3", SQLJournalReader.top(folder.getRoot(), 0, Long.MAX_VALUE, 10, true).get(0).getSql());
+  }
+
+  @Test
+  public void aggregatesStatementsAcrossRestarts() throws IOException {
+    journal = open("1MB", 4);
+    journal.record("select 1", "[1] Orders.list", 1000, 1000);
+    journal.close();
+
+    journal = open("1MB", 4);
+    journal.record("select 1", "[2] Orders.list", 2000, 2000);
+    journal.record("select 2", "[2] Orders.list", 500, 2000);
+
+    List<StatementWindow> top = SQLJournalReader.top(folder.getRoot(), 0, Long.MAX_VALUE, 10, true);
+    assertEquals(2, top.size());
+    assertEquals("Orders.list: select 1", top.get(0).getSql());
+    assertEquals(2, top.get(0).getCount());
+  }
+
+  @Test
+  public void rotatesSegmentsWithinBoundedDiskUsage() throws IOException {
+    journal = open("1KB", 3);
+    for (int i = 1; i <= 1000; i++) journal.record("select 1", "[job]", 1000, i);
+
+    File[] segments = SQLJournal.segmentFiles(folder.getRoot());
+    assertEquals(3, segments.length);
+    for (File segment : segments) assertEquals(1024, segment.length());
+
+    StatementWindow statement = SQLJournalReader.top(folder.getRoot(), 0, Long.MAX_VALUE, 10, false).get(0);
+    int recordsPerSegment = (1024 - SQLJournal.HEADER_SIZE) / SQLJournal.RECORD_SIZE;
+    assertTrue(statement.getCount() > 2 * recordsPerSegment);
+    assertTrue(statement.getCount() <= 3 * recordsPerSegment);
+  }
+
+  @Test
+  public void deletesDictionariesWithSegmentsPastMaximum() throws IOException {
+    journal = open("1KB", 3);
+    for (int i = 0; i < 1000; i++) journal.record("select " + i / 10, "[" + i + "] Orders.action" + i / 20, 1000, i + 1);
+
+    File[] segments = SQLJournal.segmentFiles(folder.getRoot());
+    assertEquals(3, segments.length);
+    assertEquals(6, folder.getRoot().list().length);
+    for (File segment : segments) assertTrue(SQLJournal.dictionaryFile(segment).exists());
+
+    List<StatementWindow> top = SQLJournalReader.top(folder.getRoot(), 0, Long.MAX_VALUE, 1000, true);
+    assertFalse(top.isEmpty());
+    assertFalse(top.stream().anyMatch(statement -> statement.getSql().startsWith("select 0")));
+    for (StatementWindow statement : top) {
+      String sql = statement.getSql();
+      int i = Integer.parseInt(sql.substring(sql.lastIndexOf(' ') + 1));
+      assertEquals("Orders.action" + i / 2 + ": select " + i, sql);
+      assertTrue(statement.getCount() <= 10);
+    }
+    assertEquals(10, top.stream().filter(statement -> statement.getSql().endsWith("select 99")).findFirst().get().getCount());
+  }
+
+  @Test
+  public void disabledByDefault() {
+    journal = SQLJournal.load(new Properties());
+    assertFalse(journal.isEnabled());
+  }
+
+  @Test
+  public void actionOfRequest() {
+    assertEquals("Orders.list", SQLJournal.action("[12] Orders.list"));
+    assertEquals("job", SQLJournal.action("[job]"));
+    assertEquals(64L << 20, SQLJournal.parseBytes("64MB"));
+    assertEquals(1000, SQLJournal.parseBytes("1000"));
+  }
+
+  private SQLJournal open(String segmentSize, int segments) {
+    Properties configuration = new Properties();
+    configuration.setProperty("trackSlowSQL.journal", "true");
+    configuration.setProperty("trackSlowSQL.journal.dir", folder.getRoot().getPath());
+    configuration.setProperty("trackSlowSQL.journal.segmentSize", segmentSize);
+    configuration.setProperty("trackSlowSQL.journal.segments", String.valueOf(segments));
+    SQLJournal result = SQLJournal.load(configuration);
+    assertTrue(result.isEnabled());
+    return result;
+  }
+}
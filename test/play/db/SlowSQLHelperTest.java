@@ -0,0 +1,91 @@
+package play.db;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Properties;
+
+import static java.util.Collections.singleton;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SlowSQLHelperTest {
+  @After
+  public void tearDown() {
+    SlowSQLHelper.endInvocation();
+    SlowSQLHelper.reset("session");
+    SlowSQLHelper.configure(new Properties());
+  }
+
+  @Test
+  public void aggregatesExecutionsOfInvocation() {
+    SlowSQLHelper.startInvocation();
+    SlowSQLHelper.addSlowSQLLog("select * from table1", 1000);
+    SlowSQLHelper.addSlowSQLLog("select * from table1", 2000);
+    SlowSQLHelper.addSlowSQLLog("select * from table2", 3000);
+    SlowSQLHelper.endInvocation();
+
+    List<LogEntry> logs = SlowSQLHelper.logsByRequest("session").get("[job]");
+    assertEquals(2, logs.size());
+    LogEntry table1 = logs.stream().filter(log -> log.sql.equals("select * from table1")).findFirst().get();
+    assertEquals(2, table1.getCount());
+    assertEquals(3000, table1.getTotalDurationNanos());
+  }
+
+  @Test
+  public void mergesExecutionsOfSubsequentInvocations() {
+    SlowSQLHelper.startInvocation();
+    SlowSQLHelper.addSlowSQLLog("select * from table1", 1000);
+    SlowSQLHelper.endInvocation();
+    SlowSQLHelper.startInvocation();
+    SlowSQLHelper.addSlowSQLLog("select * from table1", 2000);
+    SlowSQLHelper.endInvocation();
+
+    assertEquals(singleton("[job]"), SlowSQLHelper.logsByRequest("session").keySet());
+    LogEntry log = SlowSQLHelper.logsByRequest("session").get("[job]").get(0);
+    assertEquals(2, log.getCount());
+    assertEquals(3000, log.getTotalDurationNanos());
+  }
+
+  @Test
+  public void aggregatesExecutionsOutsideOfInvocation() {
+    SlowSQLHelper.addSlowSQLLog("select * from table1", 1000);
+    assertEquals(1, SlowSQLHelper.uniqueSQLCount("session"));
+  }
+
+  @Test
+  public void queriesSeeExecutionsPublishedBeforeThem() {
+    SlowSQLHelper.startInvocation();
+    SlowSQLHelper.addSlowSQLLog("select * from table1", 1000);
+    assertEquals(1, SlowSQLHelper.uniqueSQLCount("session"));
+    SlowSQLHelper.addSlowSQLLog("select * from table1", 1000);
+    assertEquals(2, SlowSQLHelper.logsByRequest("session").get("[job]").get(0).getCount());
+  }
+
+  @Test
+  public void detectsStatementExecutedTooManyTimesInOneInvocation() {
+    Properties configuration = new Properties();
+    configuration.setProperty("trackSlowSQL.nPlusOne.threshold", "3");
+    SlowSQLHelper.configure(configuration);
+
+    SlowSQLHelper.startInvocation();
+    for (int id = 1; id <= 3; id++) SlowSQLHelper.addSlowSQLLog("select * from child where parent_id=" + id, 1000);
+    SlowSQLHelper.addSlowSQLLog("select * from parent", 1000);
+    SlowSQLHelper.endInvocation();
+    assertTrue(SlowSQLHelper.nPlusOneQueries("session").isEmpty());
+
+    SlowSQLHelper.startInvocation();
+    for (int id = 1; id <= 4; id++) SlowSQLHelper.addSlowSQLLog("select * from child where parent_id=" + id, 1000);
+    SlowSQLHelper.endInvocation();
+
+    List<NPlusOneQuery> queries = SlowSQLHelper.nPlusOneQueries("session");
+    assertEquals(1, queries.size());
+    NPlusOneQuery query = queries.get(0);
+    assertEquals("select * from child where parent_id=?", query.sql);
+    assertEquals("[job]", query.request);
+    assertEquals(4, query.getCount());
+    assertEquals(4000, query.getTotalDurationNanos());
+    assertTrue(query.getCallSite().length > 0);
+  }
+}
@@ -0,0 +1,106 @@
+package play.db;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SlowSQLStoreTest {
+  private SlowSQLStore store = new SlowSQLStore(MINUTES.toNanos(10), 100);
+
+  @After
+  public void tearDown() {
+    SlowSQLThresholds.current = SlowSQLThresholds.load(new Properties());
+  }
+
+  @Test
+  public void countsDistinctSQLOfSessionAndJobs() {
+    store.addExecution("select 1", "[1] A.a", "s1", 1000);
+    store.addExecution("select 1", "[2] A.b", "s1", 1000);
+    store.addExecution("select 2", "[1] A.a", "s1", 1000);
+    store.addExecution("select 3", "[3] A.a", "s2", 1000);
+    store.addExecution("select 2", "[job]", "job", 1000);
+    store.addExecution("select 4", "[job]", "job", 1000);
+
+    assertEquals(3, store.uniqueSQLCount("s1"));
+    assertEquals(3, store.uniqueSQLCount("s2"));
+    assertEquals(2, store.uniqueSQLCount("job"));
+    assertEquals(2, store.uniqueSQLCount("s3"));
+    assertEquals(3, store.logsByRequest("s1").size());
+    assertEquals(2, store.logsByRequest("s1").get("[1] A.a").size());
+  }
+
+  @Test
+  public void countsSlowSQLAsExecutionsAreAdded() {
+    store.addExecution("select 1", "[1] A.a", "s1", MILLISECONDS.toNanos(150));
+    store.addExecution("select 2", "[1] A.a", "s1", MILLISECONDS.toNanos(50));
+    store.addExecution("select 1", "[job]", "job", MILLISECONDS.toNanos(300));
+    assertEquals(1, store.slowSQLCount("s1"));
+
+    store.addExecution("select 2", "[job]", "job", MILLISECONDS.toNanos(300));
+    assertEquals(2, store.slowSQLCount("s1"));
+    assertEquals(2, store.slowSQLCount("job"));
+  }
+
+  @Test
+  public void recountsSlowSQLWhenThresholdsChange() {
+    store.addExecution("select 1", "[1] A.a", "s1", MILLISECONDS.toNanos(150));
+    assertEquals(1, store.slowSQLCount("s1"));
+
+    Properties configuration = new Properties();
+    configuration.setProperty("trackSlowSQL.threshold.average", "");
+    SlowSQLThresholds.current = SlowSQLThresholds.load(configuration);
+    store.thresholdsChanged();
+    assertEquals(0, store.slowSQLCount("s1"));
+  }
+
+  @Test
+  public void resetRemovesOnlyEntriesOfSessionAndJobs() {
+    store.addExecution("select 1", "[1] A.a", "s1", 1000);
+    store.addExecution("select 2", "[2] A.a", "s2", 1000);
+    store.addExecution("select 3", "[job]", "job", 1000);
+
+    store.reset("s1");
+    assertEquals(1, store.size());
+    assertEquals(0, store.uniqueSQLCount("s1"));
+    assertEquals(1, store.uniqueSQLCount("s2"));
+  }
+
+  @Test
+  public void evictsOldestEntriesBeyondMaxSize() {
+    store = new SlowSQLStore(MINUTES.toNanos(10), 2);
+    store.addExecution("select 1", "[1] A.a", "s1", MILLISECONDS.toNanos(300));
+    store.addExecution("select 2", "[1] A.a", "s1", 1000);
+    store.addExecution("select 3", "[1] A.a", "s1", 1000);
+
+    assertEquals(2, store.size());
+    assertEquals(2, store.uniqueSQLCount("s1"));
+    assertEquals(0, store.slowSQLCount("s1"));
+    assertNull(store.logsByRequest("s1").get("[1] A.a").stream().filter(log -> log.sql.equals("select 1")).findFirst().orElse(null));
+  }
+
+  @Test
+  public void evictsLeastRecentlyExecutedEntries() {
+    store = new SlowSQLStore(MINUTES.toNanos(10), 2);
+    store.addExecution("select 1", "[1] A.a", "s1", 1000);
+    store.addExecution("select 2", "[1] A.a", "s1", 1000);
+    store.addExecution("select 1", "[1] A.a", "s1", 1000);
+    store.addExecution("select 3", "[1] A.a", "s1", 1000);
+
+    assertEquals(2, store.logsByRequest("s1").get("[1] A.a").stream().filter(log -> !log.sql.equals("select 2")).count());
+  }
+
+  @Test
+  public void expiresEntriesAfterTtl() {
+    store = new SlowSQLStore(0, 100);
+    store.addExecution("select 1", "[1] A.a", "s1", 1000);
+
+    assertEquals(0, store.uniqueSQLCount("s1"));
+    assertEquals(0, store.size());
+  }
+}
@@ -0,0 +1,47 @@
+package play.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SqlFingerprintTest {
+  @Test
+  public void replacesLiteralsWithParameters() {
+    assertEquals("select * from table1 where name=? and id=? and amount>?",
+        SqlFingerprint.normalize("select * from table1 where name='O''Hara' and id=42 and amount>1.5e3"));
+    assertEquals("select * from table1 where field1=? and field2=?", SqlFingerprint.normalize("select * from table1 where field1=?1 and field2=?2"));
+    assertEquals("select person0_.id from person person0_ where person0_.id=?", SqlFingerprint.normalize("select person0_.id from person person0_ where person0_.id=1"));
+    assertEquals("select \"Column 1\" from table1", SqlFingerprint.normalize("select \"Column 1\" from table1"));
+  }
+
+  @Test
+  public void collapsesInLists() {
+    assertEquals("select * from table1 where id in (?) and type IN(?)",
+        SqlFingerprint.normalize("select * from table1 where id in (?, ?, ?) and type IN('A','B')"));
+    assertEquals("select * from table1 where id in (select id from table2 where x in (?))",
+        SqlFingerprint.normalize("select * from table1 where id in (select id from table2 where x in (1, 2))"));
+    assertEquals("select min(?, ?) from table1", SqlFingerprint.normalize("select min(1, 2) from table1"));
+  }
+
+  @Test
+  public void collapsesWhitespaceAndRemovesComments() {
+    assertEquals("select * from table1 where id=?",
+        SqlFingerprint.normalize("\n/* load Person */ select *\n  from table1 -- all of them\n\twhere id=?  "));
+    assertEquals("select /*+ INDEX(table1) */ * from table1", SqlFingerprint.normalize("select /*+ INDEX(table1) */ *  from table1"));
+  }
+
+  @Test
+  public void memoizesFingerprints() {
+    String sql = "select * from table1 where id=" + System.nanoTime();
+    assertSame(SqlFingerprint.of(sql), SqlFingerprint.of(sql));
+  }
+
+  @Test
+  public void shortensFingerprints() {
+    assertEquals("select ... from table1 where id in (?)", SqlFingerprint.shorten(SqlFingerprint.normalize("select a, b from table1 where id in (1, 2)")));
+    assertEquals("update table1 set ... where id in (select ... from table2)",
+        SqlFingerprint.shorten("update table1 set a=?, b=? where id in (select id from table2)"));
+    assertEquals("insert into table1 (a, b) values (?, ?)", SqlFingerprint.shorten("insert into table1 (a, b) values (?, ?)"));
+  }
+}